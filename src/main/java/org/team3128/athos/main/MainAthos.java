@@ -24,6 +24,7 @@ import org.team3128.common.vision.CmdHorizontalOffsetFeedbackDrive;
 import org.team3128.athos.subsystems.Constants;
 import org.team3128.common.utility.Log;
 import org.team3128.common.utility.RobotMath;
+import org.team3128.common.utility.TelemetryRecorder;
 import org.team3128.common.utility.datatypes.PIDConstants;
 import org.team3128.common.narwhaldashboard.NarwhalDashboard;
 import org.team3128.common.listener.ListenerManager;
@@ -54,6 +55,7 @@ import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.concurrent.*;
 
@@ -65,6 +67,7 @@ import com.ctre.phoenix.motorcontrol.can.VictorSPX;
 import org.team3128.common.drive.DriveSignal;
 import org.team3128.common.utility.test_suite.*;
 import org.team3128.common.drive.Drive;
+import org.team3128.common.drive.Odometry;
 
 import org.team3128.athos.subsystems.bounce;
 
@@ -100,7 +103,14 @@ public class MainAthos extends NarwhalRobot {
 
     public double startTime = 0;
     public static PowerDistributionPanel pdp;
-    public String trackerCSV = "Time, X, Y, Theta, Xdes, Ydes";
+    // 3 minutes of rows at 50 Hz
+    public TelemetryRecorder tracker = new TelemetryRecorder("tracker", 9000, "Time", "X", "Y", "Theta", "Xdes", "Ydes");
+    private static final int TRACKER_TIME = 0;
+    private static final int TRACKER_X = 1;
+    private static final int TRACKER_Y = 2;
+    private static final int TRACKER_THETA = 3;
+    private static final int TRACKER_XDES = 4;
+    private static final int TRACKER_YDES = 5;
 
     public ArrayList<Pose2D> waypoints = new ArrayList<Pose2D>();
     public Trajectory trajectory;
@@ -122,7 +132,8 @@ public class MainAthos extends NarwhalRobot {
 
     private double[] inputArray = new double[4];
     private double[] kinematicArray = new double[6];
-    private double[] outputArray;
+    private double[] outputArray = new double[5];
+    private double[] trackerPose = new double[4];
     private double currentTime, previousTime, printerTime, initTime;
 
     public CmdAutoBall ballCommand;
@@ -153,6 +164,9 @@ public class MainAthos extends NarwhalRobot {
 
     @Override
     protected void constructHardware() {
+        NarwhalDashboard.addTelemetry(tracker);
+        registerPeriodic("Odometry", robotTracker::updateOdometry, RobotTracker.ODOMETRY_PERIOD, 0);
+
 
         // Instatiator if we're using the NavX
         gyro = new NavX();
@@ -292,10 +306,10 @@ public class MainAthos extends NarwhalRobot {
             drive.resetGyro();
         });
         lmRight.addButtonDownListener("PrintCSV", () -> {
-            Log.info("MainAthos", trackerCSV);
+            tracker.save(new File("/home/lvuser/tracker.csv"), TelemetryRecorder.Format.CSV);
         });
         lmRight.addButtonDownListener("ClearCSV", () -> {
-            trackerCSV = "Time, X, Y, Theta, Xdes, Ydes";
+            tracker.clear();
             Log.info("MainAthos", "CSV CLEARED");
             startTime = Timer.getFPGATimestamp();
         });
@@ -320,7 +334,7 @@ public class MainAthos extends NarwhalRobot {
         inputArray[2] = drive.getRightSpeed() * 0.0254;
         inputArray[3] = currentTime-previousTime;
        // where EKF is run
-        outputArray = ekf.runFilter(inputArray);
+        ekf.runFilter(currentTime, inputArray, outputArray);
 
         xList.add(outputArray[0]);
         yList.add(outputArray[1]);
@@ -340,7 +354,7 @@ public class MainAthos extends NarwhalRobot {
         kinematicArray[4] = drive.getRightSpeed() * 0.0254;
         kinematicArray[5] = currentTime-previousTime;
 
-        outputArray = ekf.testFunction(kinematicArray);
+        ekf.testFunction(kinematicArray, outputArray);
 
         KxList.add(outputArray[0]);
         KyList.add(outputArray[1]);
@@ -369,7 +383,7 @@ public class MainAthos extends NarwhalRobot {
         inputArray[2] = drive.getRightSpeed() * 0.0254;
         inputArray[3] = currentTime-previousTime;
        // where EKF is run
-        outputArray = ekf.runFilter(inputArray);
+        ekf.runFilter(currentTime, inputArray, outputArray);
 
         xList.add(outputArray[0]);
         yList.add(outputArray[1]);
@@ -389,7 +403,7 @@ public class MainAthos extends NarwhalRobot {
         kinematicArray[4] = drive.getRightSpeed() * 0.0254;
         kinematicArray[5] = currentTime-previousTime;
 
-        outputArray = ekf.testFunction(kinematicArray);
+        ekf.testFunction(kinematicArray, outputArray);
 
         KxList.add(outputArray[0]);
         KyList.add(outputArray[1]);
@@ -445,9 +459,10 @@ public class MainAthos extends NarwhalRobot {
 
         SmartDashboard.putNumber("Velocity", drive.getSpeed());
 
-        SmartDashboard.putNumber("RobotTracker - x:", robotTracker.getOdometry().getTranslation().getX());
-        SmartDashboard.putNumber("RobotTracker - y:", robotTracker.getOdometry().getTranslation().getY());
-        SmartDashboard.putNumber("RobotTracker - theta:", robotTracker.getOdometry().getRotation().getDegrees());
+        robotTracker.getOdometry(trackerPose);
+        SmartDashboard.putNumber("RobotTracker - x:", trackerPose[Odometry.X]);
+        SmartDashboard.putNumber("RobotTracker - y:", trackerPose[Odometry.Y]);
+        SmartDashboard.putNumber("RobotTracker - theta:", trackerPose[Odometry.HEADING]);
 
         maxLeftSpeed = Math.max(maxLeftSpeed, currentLeftSpeed);
         maxRightSpeed = Math.max(maxRightSpeed, currentRightSpeed);
@@ -486,12 +501,13 @@ public class MainAthos extends NarwhalRobot {
             drive.setDualVelocityPID(kP, kD, kF);
         }
 
-        trackerCSV += "\n" + String.valueOf(Timer.getFPGATimestamp() - startTime) + ","
-                + String.valueOf(robotTracker.getOdometry().translationMat.getX()) + ","
-                + String.valueOf(robotTracker.getOdometry().translationMat.getY()) + ","
-                + String.valueOf(robotTracker.getOdometry().rotationMat.getDegrees()) + ","
-                + String.valueOf(robotTracker.trajOdometry.translationMat.getX()) + ","
-                + String.valueOf(robotTracker.trajOdometry.translationMat.getY());
+        tracker.set(TRACKER_TIME, Timer.getFPGATimestamp() - startTime);
+        tracker.set(TRACKER_X, trackerPose[Odometry.X]);
+        tracker.set(TRACKER_Y, trackerPose[Odometry.Y]);
+        tracker.set(TRACKER_THETA, trackerPose[Odometry.HEADING]);
+        tracker.set(TRACKER_XDES, robotTracker.trajOdometry.translationMat.getX());
+        tracker.set(TRACKER_YDES, robotTracker.trajOdometry.translationMat.getY());
+        tracker.endRow();
     }
 
     @Override
@@ -516,7 +532,7 @@ public class MainAthos extends NarwhalRobot {
 
     @Override
     protected void autonomousInit() {
-        trackerCSV = "Time, X, Y, Theta, Xdes, Ydes";
+        tracker.clear();
         Log.info("MainAthos", "going into autonomousinit");
         //scheduler.resume();
         robotTracker.resetOdometry();
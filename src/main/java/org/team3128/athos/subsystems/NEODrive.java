@@ -11,6 +11,8 @@ import org.team3128.common.control.trajectory.Trajectory;
 import org.team3128.common.control.trajectory.Trajectory.State;
 import org.team3128.common.drive.AutoDriveSignal;
 import org.team3128.common.drive.DriveSignal;
+import org.team3128.common.utility.math.GeometryPool;
+import org.team3128.common.utility.math.MutablePose2D;
 import org.team3128.common.utility.math.Rotation2D;
 import org.team3128.common.utility.NarwhalUtility;
 
@@ -89,6 +91,7 @@ public class NEODrive extends Drive {
 	private double currentTime;
 	private double startTime;
 	private double totalTime;
+	private final State currentTrajectoryState = new State();
 
 	double prevPositionL = 0;
 	double prevPositionR = 0;
@@ -474,10 +477,19 @@ public class NEODrive extends Drive {
 		if (isStart) {
 			startTime = currentTime;
 		}
-		State currentTrajectoryState = trajectory.sample(currentTime - startTime);
-
-		AutoDriveSignal signal = autonomousDriver.calculate(RobotTracker.getInstance().getOdometry(),
-				currentTrajectoryState);
+		AutoDriveSignal signal;
+		GeometryPool pool = GeometryPool.get();
+		pool.begin();
+		try {
+			MutablePose2D robotPose = pool.pose();
+			MutablePose2D desiredPose = pool.pose();
+
+			RobotTracker.getInstance().getOdometry(robotPose);
+			trajectory.sample(currentTime - startTime, currentTrajectoryState, desiredPose);
+			signal = autonomousDriver.calculate(robotPose, currentTrajectoryState, desiredPose);
+		} finally {
+			pool.end();
+		}
 		if ((currentTime - startTime) == totalTime) {
 			synchronized (this) {
 				Log.info("NEODrive", "Finished Trajectory Pursuit with RamseteController successfully.");
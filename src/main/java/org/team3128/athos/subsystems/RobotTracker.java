@@ -7,9 +7,11 @@ import org.team3128.common.utility.structure.CircularQueue;
 
 import com.ctre.phoenix.Logger;
 
+import org.team3128.common.drive.Odometry;
 import org.team3128.common.utility.Log;
 import org.team3128.common.utility.RobotMath;
 import org.team3128.common.utility.math.InterpolablePair;
+import org.team3128.common.utility.math.MutablePose2D;
 import org.team3128.common.utility.math.Pose2D;
 import org.team3128.common.utility.math.Rotation2D;
 import org.team3128.common.utility.math.Translation2D;
@@ -43,6 +45,12 @@ import edu.wpi.first.wpiutil.math.VecBuilder;
 
 public class RobotTracker implements Subsystem {
 
+	/**
+	 * Time between odometry updates, in seconds. Pass {@link #updateOdometry()}
+	 * to NarwhalRobot.registerPeriodic() with this period.
+	 */
+	public static final double ODOMETRY_PERIOD = 1.0 / 200;
+
 	private static final RobotTracker trackingInstance = new RobotTracker();
 
 	public static RobotTracker getInstance() {
@@ -50,16 +58,12 @@ public class RobotTracker implements Subsystem {
 	}
 
 	private NEODrive drive;
-	private Pose2D currentOdometry;
+	private final Odometry odometry;
 	public Pose2D trajOdometry;
-	private double oldDistance = 0;
-	private double currentDistance;
-	private double oldTheta = 0;
-	private double currentTheta;
 
 	private RobotTracker() {
 		drive = NEODrive.getInstance();
-		currentOdometry = new Pose2D(new Translation2D(), drive.getGyroAngle());
+		odometry = new Odometry(drive);
 		trajOdometry = new Pose2D(new Translation2D(), new Rotation2D());
 
 	}
@@ -68,42 +72,43 @@ public class RobotTracker implements Subsystem {
 	// return gyroHistory.getInterpolatedKey(time);
 	// }
 
-	synchronized public Pose2D getOdometry() {
-		return currentOdometry;
+	public Pose2D getOdometry() {
+		return odometry.getPose();
+	}
+
+	/**
+	 * Copy the latest pose into an array without allocating.
+	 *
+	 * @see Odometry#getPose(double[])
+	 */
+	public void getOdometry(double[] pose) {
+		odometry.getPose(pose);
+	}
+
+	/**
+	 * Copy the latest pose into a MutablePose2D without allocating.
+	 */
+	public void getOdometry(MutablePose2D pose) {
+		odometry.getPose(pose);
 	}
 
-	synchronized public Pose2d getOdometry2d() {
-		return new Pose2d(currentOdometry.translationMat.getX(), currentOdometry.translationMat.getY(), Rotation2d.fromDegrees(currentOdometry.getRotation().getDegrees()));
+	public Pose2d getOdometry2d() {
+		double[] pose = new double[4];
+		odometry.getPose(pose);
+		return new Pose2d(pose[Odometry.X], pose[Odometry.Y], Rotation2d.fromDegrees(pose[Odometry.HEADING]));
 	}
 
-	synchronized public void resetOdometry() {
+	public void resetOdometry() {
 		drive.resetGyro();
-		currentOdometry = new Pose2D(new Translation2D(), new Rotation2D());
-		oldDistance = drive.getDistance();
+		odometry.resetPosition(0, 0);
 	}
 
 	/**
-	 * Integrates the encoders and gyro to figure out robot position. A constant
-	 * curvature is assumed (aka there is a constant ratio between the velocities of
-	 * the right and left sides of the drivetrain)
+	 * Integrates the encoders and gyro to figure out robot position. Runs on its
+	 * own thread, faster than the main loop.
 	 */
-	@Override
-	public void periodic() {
-		currentDistance = drive.getDistance();
-		currentTheta = drive.getAngle();
-
-		double deltaDistance = currentDistance - oldDistance;
-
-		double deltaX = deltaDistance * RobotMath.cos(currentTheta);
-		double deltaY = deltaDistance * RobotMath.sin(currentTheta);
-		synchronized (this) {
-			double currX = currentOdometry.translationMat.getX() + deltaX;
-			double currY = currentOdometry.translationMat.getY() + deltaY;
-
-			currentOdometry = new Pose2D(new Translation2D(currX, currY), Rotation2D.fromDegrees(currentTheta));
-		}
-		oldDistance = currentDistance;
-		oldTheta = currentTheta;
+	public void updateOdometry() {
+		odometry.update();
 	}
 
 	// /**
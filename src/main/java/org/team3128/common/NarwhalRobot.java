@@ -9,6 +9,8 @@ import org.team3128.common.listener.ListenerManager;
 import org.team3128.common.narwhaldashboard.NarwhalDashboard;
 import org.team3128.common.utility.Assert;
 import org.team3128.common.utility.Log;
+import org.team3128.common.utility.LoopProfiler;
+import org.team3128.common.utility.LoopProfiler.Stage;
 
 import edu.wpi.first.wpilibj.livewindow.LiveWindow;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
@@ -154,6 +156,10 @@ public abstract class NarwhalRobot extends RobotBase {
 
     private Mode m_lastMode = Mode.kNone;
     private final Watchdog m_watchdog;
+    private final LoopProfiler m_profiler;
+
+    // how often loop timing statistics are pushed to NarwhalDashboard
+    private static final int LOOP_STATS_PUBLISH_PERIOD = 1000;
 
     // The C pointer to the notifier object. We don't use it directly, it is
     // just passed to the JNI bindings.
@@ -167,6 +173,9 @@ public abstract class NarwhalRobot extends RobotBase {
 
     ArrayList<ListenerManager> listenerManagers = new ArrayList<ListenerManager>();
 
+    private final ArrayList<PeriodicTask> periodicTasks = new ArrayList<PeriodicTask>();
+    private boolean periodicTasksStarted = false;
+
     /**
      * Constructor for NarwhalRobot
      */
@@ -182,6 +191,7 @@ public abstract class NarwhalRobot extends RobotBase {
     protected NarwhalRobot(double period) {
         m_period = period;
         m_watchdog = new Watchdog(period, this::printLoopOverrunMessage);
+        m_profiler = new LoopProfiler(period, "none", "disabled", "autonomous", "teleop", "test");
 
         HAL.report(tResourceType.kResourceType_Framework, tInstances.kFramework_Timed);
     }
@@ -219,6 +229,8 @@ public abstract class NarwhalRobot extends RobotBase {
         // Construct auto programs for the first time
         setupAutoChooser();
 
+        startPeriodicTasks();
+
         Log.info("NarwhalRobot", "Starting Dashboard Update Thread...");
         dashboardUpdateThread = new Thread(this::updateDashboardLoop, "Dashboard Update Thread");
         dashboardUpdateThread.start();
@@ -245,8 +257,10 @@ public abstract class NarwhalRobot extends RobotBase {
 
     protected void loopFunc() {
         m_watchdog.reset();
+        m_profiler.beginLoop();
 
         if (isDisabled()) {
+            m_profiler.setMode(Mode.kDisabled.ordinal());
             if (m_lastMode != Mode.kDisabled) {
                 Log.info("NarwhalRobot", "Entering disabled period.");
 
@@ -265,11 +279,13 @@ public abstract class NarwhalRobot extends RobotBase {
                 zeroOutListeners();
 
                 m_lastMode = Mode.kDisabled;
+                m_profiler.mark(Stage.INIT);
             }
 
             HAL.observeUserProgramDisabled();
             disabledPeriodic();
             m_watchdog.addEpoch("disablePeriodic()");
+            m_profiler.mark(Stage.PERIODIC);
         } else if(false) {
             if (m_lastMode != Mode.kAutonomous) {
                 autonomousInit();
@@ -277,6 +293,7 @@ public abstract class NarwhalRobot extends RobotBase {
             }
             m_lastMode = Mode.kAutonomous;
         } else if (isAutonomous()) {
+            m_profiler.setMode(Mode.kAutonomous.ordinal());
             if (m_lastMode != Mode.kAutonomous) {
                 Log.info("NarwhalRobot", "Entering autonomous period.");
 
@@ -292,10 +309,12 @@ public abstract class NarwhalRobot extends RobotBase {
                 Shuffleboard.disableActuatorWidgets();
                 m_watchdog.addEpoch("autonomousInit()");
                 m_lastMode = Mode.kAutonomous;
+                m_profiler.mark(Stage.INIT);
             }
 
             HAL.observeUserProgramAutonomous();
             CommandScheduler.getInstance().run();
+            m_profiler.mark(Stage.SCHEDULER);
 
             // Listener managers should ONLY be ticked in the 2019 game, DESTINATION: DEEP
             // SPACE
@@ -304,7 +323,9 @@ public abstract class NarwhalRobot extends RobotBase {
             autonomousPeriodic();
 
             m_watchdog.addEpoch("autonomousPeriodic()");
+            m_profiler.mark(Stage.PERIODIC);
         } else if (isOperatorControl()) {
+            m_profiler.setMode(Mode.kTeleop.ordinal());
             if (m_lastMode != Mode.kTeleop) {
                 Log.info("NarwhalRobot", "Entering teleoperated period.");
 
@@ -319,15 +340,20 @@ public abstract class NarwhalRobot extends RobotBase {
 
                 m_watchdog.addEpoch("teleopInit()");
                 m_lastMode = Mode.kTeleop;
+                m_profiler.mark(Stage.INIT);
             }
 
             HAL.observeUserProgramTeleop();
             CommandScheduler.getInstance().run();
+            m_profiler.mark(Stage.SCHEDULER);
             tickListenerManagers();
+            m_profiler.mark(Stage.LISTENERS);
             teleopPeriodic();
 
             m_watchdog.addEpoch("teleopPeriodic()");
+            m_profiler.mark(Stage.PERIODIC);
         } else {
+            m_profiler.setMode(Mode.kTest.ordinal());
             if (m_lastMode != Mode.kTest) {
                 Log.info("NarwhalRobot", "Entering test period.");
 
@@ -338,6 +364,7 @@ public abstract class NarwhalRobot extends RobotBase {
 
                 m_watchdog.addEpoch("testInit()");
                 m_lastMode = Mode.kTest;
+                m_profiler.mark(Stage.INIT);
             }
 
             HAL.observeUserProgramTest();
@@ -345,15 +372,20 @@ public abstract class NarwhalRobot extends RobotBase {
             testPeriodic();
 
             m_watchdog.addEpoch("testPeriodic()");
+            m_profiler.mark(Stage.PERIODIC);
         }
 
         robotPeriodic();
         m_watchdog.addEpoch("robotPeriodic()");
+        m_profiler.mark(Stage.ROBOT_PERIODIC);
         m_watchdog.disable();
+        NarwhalDashboard.processMessages();
         SmartDashboard.updateValues();
 
         LiveWindow.updateValues();
         Shuffleboard.update();
+        m_profiler.mark(Stage.DASHBOARDS);
+        m_profiler.endLoop();
 
         // // Warn on loop time overruns
         // if (m_watchdog.isExpired()) {
@@ -364,6 +396,17 @@ public abstract class NarwhalRobot extends RobotBase {
     private void printLoopOverrunMessage() {
         // DriverStation.reportWarning("Loop time of " + m_period + "s overrun\n",
         // false);
+
+        // called from the watchdog's thread, so just flag it and let the main loop
+        // count it. Per-stage timings are published to NarwhalDashboard.
+        m_profiler.flagOverrun();
+    }
+
+    /**
+     * Get the main loop timing statistics.
+     */
+    public LoopProfiler getLoopProfiler() {
+        return m_profiler;
     }
 
     @Override
@@ -437,9 +480,19 @@ public abstract class NarwhalRobot extends RobotBase {
      */
     private void updateDashboardLoop() {
         Log.info("NarwhalRobot", "Dashboard Update Thread starting");
+
+        int loopsPerStatsPublish = Math.max(1, LOOP_STATS_PUBLISH_PERIOD / dashboardUpdateWavelength);
+        int loopsSinceStatsPublish = 0;
+
         while (true) {
             updateDashboard();
 
+            if (++loopsSinceStatsPublish >= loopsPerStatsPublish) {
+                m_profiler.publish();
+                publishPeriodicTaskStats();
+                loopsSinceStatsPublish = 0;
+            }
+
             try {
                 Thread.sleep(dashboardUpdateWavelength);
             } catch (InterruptedException e) {
@@ -449,6 +502,77 @@ public abstract class NarwhalRobot extends RobotBase {
         }
     }
 
+    /**
+     * Run a piece of code at its own rate, independent of the main loop, on a
+     * dedicated thread woken by its own notifier alarm. Tasks registered before
+     * the robot starts are started right after setupListeners(); tasks
+     * registered later are started immediately.
+     * 
+     * The task runs in every robot mode, including disabled, and must do its own
+     * synchronization with the main loop (see
+     * {@link org.team3128.common.utility.structure.TripleBuffer}).
+     * 
+     * @param name        Name of the task, used for its thread and its dashboard
+     *                    statistics
+     * @param task        The code to run
+     * @param period      Time between runs, in seconds
+     * @param phaseOffset Delay of the first run, in seconds, so that tasks with
+     *                    the same period don't all wake up at once
+     * @param priority    Real-time thread priority from 1 to 99, or 0 for a normal
+     *                    thread. The main loop is not real-time, so any real-time
+     *                    task will preempt it.
+     * @return The task, which can be used to stop it or read its timing
+     *         statistics
+     */
+    public PeriodicTask registerPeriodic(String name, Runnable task, double period, double phaseOffset,
+            int priority) {
+        Assert.notNull(task);
+
+        PeriodicTask periodicTask = new PeriodicTask(name, task, period, phaseOffset, priority);
+
+        synchronized (periodicTasks) {
+            periodicTasks.add(periodicTask);
+            if (periodicTasksStarted) {
+                periodicTask.start();
+            }
+        }
+
+        return periodicTask;
+    }
+
+    /**
+     * Run a piece of code at its own rate, with no phase offset.
+     * 
+     * @see #registerPeriodic(String, Runnable, double, double, int)
+     */
+    public PeriodicTask registerPeriodic(String name, Runnable task, double period, int priority) {
+        return registerPeriodic(name, task, period, 0, priority);
+    }
+
+    private void startPeriodicTasks() {
+        synchronized (periodicTasks) {
+            for (PeriodicTask task : periodicTasks) {
+                Log.info("NarwhalRobot", "Starting periodic task \"" + task.getName() + "\" at "
+                        + (1 / task.getPeriod()) + " Hz");
+                task.start();
+            }
+            periodicTasksStarted = true;
+        }
+    }
+
+    private void publishPeriodicTaskStats() {
+        synchronized (periodicTasks) {
+            for (PeriodicTask task : periodicTasks) {
+                String prefix = "tasks/" + task.getName() + "/";
+                NarwhalDashboard.put(prefix + "p50", task.getExecutionTimes().getPercentile(50) / 1000.0);
+                NarwhalDashboard.put(prefix + "p99", task.getExecutionTimes().getPercentile(99) / 1000.0);
+                NarwhalDashboard.put(prefix + "max", task.getExecutionTimes().getMax() / 1000.0);
+                NarwhalDashboard.put(prefix + "overruns", task.getOverrunCount());
+                NarwhalDashboard.put(prefix + "skipped", task.getSkippedPeriodCount());
+            }
+        }
+    }
+
     /**
      * Add a listener manager to the list of ones to be ticked in teleopPeriodic().
      * 
@@ -459,6 +583,22 @@ public abstract class NarwhalRobot extends RobotBase {
         listenerManagers.add(manager);
     }
 
+    /**
+     * Add a listener manager whose joysticks are read on their own thread at the
+     * given rate, so that changes are noticed sooner and short button presses
+     * aren't missed. Its listeners are still run by tickListenerManagers() on the
+     * main thread.
+     *
+     * @param manager
+     * @param pollRate How many times per second to read the joysticks, e.g. 200
+     */
+    public void addListenerManager(ListenerManager manager, double pollRate) {
+        addListenerManager(manager);
+
+        manager.setAsyncPolling(true);
+        registerPeriodic("ListenerManager " + listenerManagers.size(), manager::poll, 1 / pollRate, 0);
+    }
+
     // works around an annoying (though understandable) WPILib issue:
     // if the DS is not connected, it has no idea how many buttons/axes/POVs there
     // are on a joystick
@@ -0,0 +1,181 @@
+package org.team3128.common;
+
+import org.team3128.common.utility.Log;
+import org.team3128.common.utility.structure.LatencyHistogram;
+
+import edu.wpi.first.hal.NotifierJNI;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Threads;
+
+/**
+ * A piece of code run at a fixed rate on its own thread, woken up by its own
+ * HAL notifier alarm. Created with {@link NarwhalRobot#registerPeriodic}.
+ *
+ * Use this for work which needs to run faster than the main loop (drive
+ * velocity control, odometry, state estimation). Use a
+ * {@link org.team3128.common.utility.structure.TripleBuffer} to hand data to
+ * and from tasks running at other rates without locking.
+ */
+public class PeriodicTask {
+    private final String name;
+    private final Runnable task;
+    private final double period;
+    private final double phaseOffset;
+    private final int priority;
+
+    private final LatencyHistogram executionTimes = new LatencyHistogram();
+    private volatile int overruns;
+    private volatile int skippedPeriods;
+
+    private int notifier;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * @param name        Name of the task, used for the thread name and logging
+     * @param task        The code to run
+     * @param period      Time between runs, in seconds
+     * @param phaseOffset Delay of the first run relative to start(), in seconds.
+     *                    Use this to keep tasks with the same period from waking
+     *                    up at the same instant.
+     * @param priority    Real-time thread priority from 1 (lowest) to 99
+     *                    (highest), or 0 to run as a normal, non-real-time thread.
+     */
+    PeriodicTask(String name, Runnable task, double period, double phaseOffset, int priority) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive, got " + period);
+        }
+
+        if (priority < 0 || priority > 99) {
+            throw new IllegalArgumentException("Priority must be between 0 and 99, got " + priority);
+        }
+
+        this.name = name;
+        this.task = task;
+        this.period = period;
+        this.phaseOffset = phaseOffset;
+        this.priority = priority;
+    }
+
+    /**
+     * Start running the task. Does nothing if it is already running.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        notifier = NotifierJNI.initializeNotifier();
+        NotifierJNI.setNotifierName(notifier, name);
+
+        running = true;
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop running the task. The current run, if any, is allowed to finish.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+
+        // wakes the thread up with a return value of 0
+        NotifierJNI.stopNotifier(notifier);
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        NotifierJNI.cleanNotifier(notifier);
+    }
+
+    private void run() {
+        if (priority > 0 && !Threads.setCurrentThreadPriority(true, priority)) {
+            Log.unusual("PeriodicTask", "Could not set real-time priority of \"" + name + "\"");
+        }
+
+        long periodMicros = (long) (period * 1e6);
+        long expirationTime = RobotController.getFPGATime() + (long) (phaseOffset * 1e6) + periodMicros;
+        NotifierJNI.updateNotifierAlarm(notifier, expirationTime);
+
+        while (running) {
+            long curTime = NotifierJNI.waitForNotifierAlarm(notifier);
+            if (curTime == 0 || !running) {
+                break;
+            }
+
+            long startNanos = System.nanoTime();
+
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                Log.recoverable("PeriodicTask", "Caught a " + ex.getClass().getSimpleName() + " from \"" + name
+                        + "\": " + ex.getMessage());
+                ex.printStackTrace();
+            }
+
+            long executionMicros = (System.nanoTime() - startNanos) / 1000;
+            executionTimes.record(executionMicros);
+
+            if (executionMicros > periodMicros) {
+                overruns++;
+            }
+
+            // stay phase-locked: skip any periods we've already missed instead of
+            // running several times back to back to catch up
+            expirationTime += periodMicros;
+            long now = RobotController.getFPGATime();
+            if (expirationTime <= now) {
+                long missed = (now - expirationTime) / periodMicros + 1;
+                expirationTime += missed * periodMicros;
+                skippedPeriods += missed;
+            }
+
+            NotifierJNI.updateNotifierAlarm(notifier, expirationTime);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Time between runs, in seconds
+     */
+    public double getPeriod() {
+        return period;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return Histogram of how long each run of the task took, in microseconds
+     */
+    public LatencyHistogram getExecutionTimes() {
+        return executionTimes;
+    }
+
+    /**
+     * @return The number of runs that took longer than the period
+     */
+    public int getOverrunCount() {
+        return overruns;
+    }
+
+    /**
+     * @return The number of periods which were skipped entirely because the
+     *         previous run finished too late
+     */
+    public int getSkippedPeriodCount() {
+        return skippedPeriods;
+    }
+}
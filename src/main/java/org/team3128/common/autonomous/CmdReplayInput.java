@@ -0,0 +1,56 @@
+package org.team3128.common.autonomous;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.team3128.common.listener.InputRecording;
+import org.team3128.common.listener.ListenerManager;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+
+/**
+ * Plays back a recording of a driver's controls through a ListenerManager, so
+ * that the robot does what it did when the recording was made. Listener
+ * managers aren't ticked in autonomous, so this ticks it.
+ *
+ * @see ListenerManager#startRecording()
+ */
+public class CmdReplayInput implements Command {
+    private ListenerManager manager;
+    private InputRecording recording;
+
+    private Set<Subsystem> requirements;
+
+    public CmdReplayInput(ListenerManager manager, InputRecording recording) {
+        this.requirements = new HashSet<Subsystem>();
+        this.manager = manager;
+        this.recording = recording;
+    }
+
+    @Override
+    public Set<Subsystem> getRequirements() {
+        return requirements;
+    }
+
+    @Override
+    public void initialize() {
+        manager.startPlayback(recording);
+    }
+
+    @Override
+    public void execute() {
+        manager.tick();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return !manager.isPlayingBack();
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        manager.stopPlayback();
+        manager.zeroOutListeners();
+    }
+}
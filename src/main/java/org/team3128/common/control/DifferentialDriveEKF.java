@@ -0,0 +1,634 @@
+package org.team3128.common.control;
+
+/**
+ * Extended Kalman filter for the pose of a differential drive robot.
+ *
+ * The state is [x, y, theta, left velocity, right velocity]. Each step predicts
+ * the state by integrating the wheel velocities along an arc, then corrects it
+ * with measurements of [theta, left velocity, right velocity] from the gyro and
+ * the drive encoders.
+ *
+ * All of the matrices are fixed-size arrays allocated up front, so a step
+ * doesn't create garbage, and the trig terms of the Jacobian are only computed
+ * once per step. The arithmetic is done in the same order as the general matrix
+ * version this replaced, so it gives exactly the same results.
+ *
+ * Vision measurements arrive late, by the camera's pipeline latency, so the
+ * filter keeps its last second or so of steps. A bearing to a target can be
+ * added with the time its frame was captured: the filter goes back to that
+ * time, applies it there, and replays the steps since to get back to the
+ * present.
+ */
+public class DifferentialDriveEKF {
+	public static final int X = 0;
+	public static final int Y = 1;
+	public static final int THETA = 2;
+	public static final int VL = 3;
+	public static final int VR = 4;
+
+	// wheel velocities closer than this are treated as driving straight, since the
+	// turning radius goes to infinity
+	private static final double STRAIGHT_THRESHOLD = 0.001;
+
+	// steps kept for replaying after a late measurement, a second at 50 Hz
+	private static final int HISTORY_SIZE = 50;
+
+	// layout of a stored bearing measurement
+	private static final int BEARING_TIME = 0;
+	private static final int BEARING_TARGET_X = 1;
+	private static final int BEARING_TARGET_Y = 2;
+	private static final int BEARING_ANGLE = 3;
+	private static final int BEARING_VARIANCE = 4;
+
+	private final double alvariance;
+	private final double arvariance;
+
+	// track width
+	private final double b;
+
+	private double dt;
+
+	private final double[] x = new double[5];
+	private final double[][] P = new double[5][5];
+	private final double[][] Q = new double[5][5];
+	private final double[][] A = new double[5][5];
+	private final double[][] R = new double[3][3];
+
+	// scratch space for predict() and update()
+	private final double[][] PAt = new double[5][5];
+	private final double[][] S = new double[3][3];
+	private final double[][] Si = new double[3][3];
+	private final double[][] K = new double[5][3];
+	private final double[][] IKH = new double[5][5];
+	private final double[][] newP = new double[5][5];
+	private final double[] innovation = new double[3];
+	private final double[] predicted = new double[5];
+	private final double[] PHt = new double[5];
+
+	// history of steps, indexed by step number % HISTORY_SIZE. Each holds the
+	// step's end time, its inputs, any bearing measurement taken during it, and
+	// the state and covariance after it.
+	private final double[] stepTimes = new double[HISTORY_SIZE];
+	private final double[][] stepInputs = new double[HISTORY_SIZE][4];
+	private final boolean[] stepHasBearing = new boolean[HISTORY_SIZE];
+	private final double[][] stepBearings = new double[HISTORY_SIZE][5];
+	private final double[][] stepStates = new double[HISTORY_SIZE][5];
+	private final double[][][] stepCovariances = new double[HISTORY_SIZE][5][5];
+
+	// number of steps ever run
+	private long stepCount = 0;
+	private double timestamp = 0;
+
+	// a bearing measurement taken after the newest step, to apply in the next one
+	private boolean hasPendingBearing = false;
+	private final double[] pendingBearing = new double[5];
+
+	/**
+	 * @param xStart     Starting state
+	 * @param alvariance Variance of the left wheel's acceleration
+	 * @param arvariance Variance of the right wheel's acceleration
+	 * @param b          Track width
+	 * @param dt         Initial time step. Replaced by the one passed to
+	 *                   runFilter().
+	 * @param r1         Variance of the heading measurement
+	 * @param r2         Variance of the left velocity measurement
+	 * @param r3         Variance of the right velocity measurement
+	 */
+	public DifferentialDriveEKF(double xStart, double yStart, double thetaStart, double vlStart, double vrStart,
+			double alvariance, double arvariance, double b, double dt, double r1, double r2, double r3) {
+		this.alvariance = alvariance;
+		this.arvariance = arvariance;
+		this.b = b;
+		this.dt = dt;
+
+		x[X] = xStart;
+		x[Y] = yStart;
+		x[THETA] = thetaStart;
+		x[VL] = vlStart;
+		x[VR] = vrStart;
+
+		// Because we are giving it the correct starting values since it's an
+		// EKF which requires them, we are very confident in the values
+		for (int i = 0; i < 5; i++) {
+			P[i][i] = 0.01;
+		}
+
+		R[0][0] = r1;
+		R[1][1] = r2;
+		R[2][2] = r3;
+	}
+
+	private static boolean isStraight(double vl, double vr) {
+		return Math.abs(vl - vr) <= STRAIGHT_THRESHOLD;
+	}
+
+	/**
+	 * Integrate the wheel velocities of a state along an arc.
+	 *
+	 * @param state [x, y, theta, vl, vr], updated in place
+	 */
+	private void integrate(double[] state, double dt) {
+		double xNum = state[X];
+		double y = state[Y];
+		double theta = state[THETA];
+		double vl = state[VL];
+		double vr = state[VR];
+
+		double sinTheta = Math.sin(theta);
+		double cosTheta = Math.cos(theta);
+
+		if (isStraight(vl, vr)) {
+			xNum = xNum + vl * cosTheta * dt;
+			y = y + vl * sinTheta * dt;
+		} else {
+			double w = (vr - vl) / b;
+			double r = (b / 2) * (vl + vr) / (vr - vl);
+			double sinWdt = Math.sin(w * dt);
+			double cosWdt = Math.cos(w * dt);
+
+			xNum = r * sinTheta * cosWdt + r * cosTheta * sinWdt + xNum - r * sinTheta;
+			y = r * sinTheta * sinWdt - r * cosTheta * cosWdt + y + r * cosTheta;
+			theta = theta + w * dt;
+		}
+
+		state[X] = xNum;
+		state[Y] = y;
+		state[THETA] = theta;
+	}
+
+	/**
+	 * Dead reckon from a state without filtering.
+	 *
+	 * @param xInput [x, y, theta, vl, vr, dt]
+	 * @param output Where to write the new [x, y, theta, vl, vr]
+	 */
+	public void testFunction(double[] xInput, double[] output) {
+		for (int i = 0; i < 5; i++) {
+			predicted[i] = xInput[i];
+		}
+		integrate(predicted, xInput[5]);
+
+		for (int i = 0; i < 5; i++) {
+			output[i] = predicted[i];
+		}
+	}
+
+	/**
+	 * @see #testFunction(double[], double[])
+	 */
+	public double[] testFunction(double[] xInput) {
+		double[] output = new double[5];
+		testFunction(xInput, output);
+		return output;
+	}
+
+	/**
+	 * Run one predict and update step.
+	 *
+	 * @param timestamp When the measurements were taken, in seconds. Only used
+	 *                  to line up late measurements with the steps.
+	 * @param input     [theta, vl, vr, dt]: the measurements and the time since
+	 *                  the last step
+	 * @param output    Where to write the new state
+	 */
+	public void runFilter(double timestamp, double[] input, double[] output) {
+		int index = (int) (stepCount % HISTORY_SIZE);
+
+		stepTimes[index] = timestamp;
+		System.arraycopy(input, 0, stepInputs[index], 0, 4);
+
+		stepHasBearing[index] = hasPendingBearing && pendingBearing[BEARING_TIME] <= timestamp;
+		if (stepHasBearing[index]) {
+			System.arraycopy(pendingBearing, 0, stepBearings[index], 0, 5);
+			hasPendingBearing = false;
+		}
+
+		step(index);
+
+		stepCount++;
+		this.timestamp = timestamp;
+
+		getState(output);
+	}
+
+	/**
+	 * Run one predict and update step, timestamped dt after the last one.
+	 *
+	 * @see #runFilter(double, double[], double[])
+	 */
+	public void runFilter(double[] input, double[] output) {
+		runFilter(timestamp + input[3], input, output);
+	}
+
+	/**
+	 * @see #runFilter(double[], double[])
+	 */
+	public double[] runFilter(double[] input) {
+		double[] output = new double[5];
+		runFilter(input, output);
+		return output;
+	}
+
+	/**
+	 * Copy the current state estimate into an array.
+	 */
+	public void getState(double[] output) {
+		for (int i = 0; i < 5; i++) {
+			output[i] = x[i];
+		}
+	}
+
+	public double getState(int index) {
+		return x[index];
+	}
+
+	/**
+	 * @return The timestamp of the newest step
+	 */
+	public double getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Correct the state with a measurement, taken in the past, of the bearing
+	 * from the robot to a target at a known position, such as a Limelight's tx.
+	 * The steps since it was taken are replayed with it applied.
+	 *
+	 * Only one bearing can be added per step; extras are ignored.
+	 *
+	 * @param timestamp When the measurement was taken, in the same time base as
+	 *                  the steps, such as a Limelight's capture timestamp
+	 * @param targetX   Position of the target
+	 * @param targetY   Position of the target
+	 * @param bearing   Angle of the target from the robot's heading in radians,
+	 *                  counterclockwise positive like theta. Note that a
+	 *                  Limelight's tx is clockwise positive and in degrees.
+	 * @param variance  Variance of the bearing measurement
+	 * @return Whether it was used. It isn't if it's older than the history, or if
+	 *         its step already has one.
+	 */
+	public boolean addBearing(double timestamp, double targetX, double targetY, double bearing, double variance) {
+		double[] measurement;
+		int age;
+
+		if (stepCount == 0 || timestamp >= this.timestamp) {
+			// taken since the newest step, so apply it during the next one
+			if (hasPendingBearing) {
+				return false;
+			}
+
+			hasPendingBearing = true;
+			measurement = pendingBearing;
+			age = -1;
+		} else {
+			// find the step it was taken during, and the one before, whose state
+			// the replay starts from
+			age = findAge(timestamp);
+			if (age < 0) {
+				return false;
+			}
+
+			int index = (int) ((stepCount - age) % HISTORY_SIZE);
+			if (stepHasBearing[index]) {
+				return false;
+			}
+
+			stepHasBearing[index] = true;
+			measurement = stepBearings[index];
+		}
+
+		measurement[BEARING_TIME] = timestamp;
+		measurement[BEARING_TARGET_X] = targetX;
+		measurement[BEARING_TARGET_Y] = targetY;
+		measurement[BEARING_ANGLE] = bearing;
+		measurement[BEARING_VARIANCE] = variance;
+
+		if (age >= 0) {
+			restore((int) ((stepCount - 1 - age) % HISTORY_SIZE));
+			for (long step = stepCount - age; step < stepCount; step++) {
+				step((int) (step % HISTORY_SIZE));
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Find the newest stored step at or before a time, with a binary search.
+	 *
+	 * @return Its age (0 for the newest step), or -1 if there isn't one
+	 */
+	private int findAge(double timestamp) {
+		int size = (int) Math.min(stepCount, HISTORY_SIZE);
+
+		int low = 0;
+		int high = size - 1;
+		int found = -1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (stepTimes[(int) ((stepCount - 1 - mid) % HISTORY_SIZE)] <= timestamp) {
+				found = mid;
+				high = mid - 1;
+			} else {
+				low = mid + 1;
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Run a stored step from the current state, and store the result.
+	 */
+	private void step(int index) {
+		double[] input = stepInputs[index];
+
+		if (stepHasBearing[index]) {
+			// predict up to when the bearing was taken, apply it, then predict the
+			// rest of the way
+			double[] bearing = stepBearings[index];
+			double before = Math.min(Math.max(input[3] - (stepTimes[index] - bearing[BEARING_TIME]), 0), input[3]);
+
+			this.dt = before;
+			predict();
+			updateBearing(bearing[BEARING_TARGET_X], bearing[BEARING_TARGET_Y], bearing[BEARING_ANGLE],
+					bearing[BEARING_VARIANCE]);
+
+			this.dt = input[3] - before;
+		} else {
+			this.dt = input[3];
+		}
+
+		predict();
+		update(input[0], input[1], input[2]);
+
+		System.arraycopy(x, 0, stepStates[index], 0, 5);
+		for (int i = 0; i < 5; i++) {
+			System.arraycopy(P[i], 0, stepCovariances[index][i], 0, 5);
+		}
+	}
+
+	/**
+	 * Go back to the state after a stored step.
+	 */
+	private void restore(int index) {
+		System.arraycopy(stepStates[index], 0, x, 0, 5);
+		for (int i = 0; i < 5; i++) {
+			System.arraycopy(stepCovariances[index][i], 0, P[i], 0, 5);
+		}
+	}
+
+	private void predict() {
+		integrate(x, dt);
+
+		double dt_2 = dt * dt;
+		double dt_3 = dt_2 * dt;
+		double dt_4 = dt_3 * dt;
+
+		// rows 0 and 1 of Q are always zero
+		double q23 = (-dt_3 * alvariance) / (2 * b);
+		double q24 = (dt_3 * arvariance) / (2 * b);
+		Q[2][2] = (dt_4 * alvariance + dt_4 * arvariance) / (4 * b * b);
+		Q[2][3] = q23;
+		Q[2][4] = q24;
+		Q[3][2] = q23;
+		Q[3][3] = dt_2 * alvariance;
+		Q[4][2] = q24;
+		Q[4][4] = dt_2 * arvariance;
+
+		// the Jacobian is taken at the predicted state
+		double theta = x[THETA];
+		double vl = x[VL];
+		double vr = x[VR];
+
+		double sinTheta = Math.sin(theta);
+		double cosTheta = Math.cos(theta);
+
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j < 5; j++) {
+				A[i][j] = i == j ? 1 : 0;
+			}
+		}
+
+		if (isStraight(vl, vr)) {
+			A[0][2] = -vl * dt * sinTheta;
+			A[0][3] = dt * cosTheta;
+
+			A[1][2] = dt * vl * cosTheta;
+			A[1][3] = dt * sinTheta;
+		} else {
+			double dv = vr - vl;
+			double wdt = dt * dv / b;
+			double sinWdt = Math.sin(wdt);
+			double cosWdt = Math.cos(wdt);
+			double sinPhi = Math.sin(theta + wdt);
+			double cosPhi = Math.cos(theta + wdt);
+
+			double halfDenominator = 2 * dv;
+			double denominator = 2 * dv * dv;
+
+			double vl2dt = vl * vl * dt;
+			double vr2dt = vr * vr * dt;
+			double twoBvl = 2 * b * vl;
+			double twoBvr = 2 * b * vr;
+			double bSum = b * (vr + vl);
+
+			A[0][2] = (bSum * (cosPhi - cosTheta)) / halfDenominator;
+			A[0][3] = (-vr * vr * dt * cosPhi + twoBvr * sinPhi - twoBvr * sinTheta + vl2dt * cosPhi) / denominator;
+			A[0][4] = (2 * vl * b * sinTheta - 2 * vl * b * sinPhi + vr2dt * cosPhi - vl2dt * cosPhi) / denominator;
+
+			A[1][2] = (bSum * (sinPhi - sinTheta)) / halfDenominator;
+			A[1][3] = (vl2dt * cosWdt * sinTheta + vl2dt * sinWdt * cosTheta + twoBvr * sinWdt * sinTheta
+					+ twoBvr * cosTheta - vr2dt * cosWdt * sinTheta - vr2dt * sinWdt * cosTheta
+					- twoBvr * cosWdt * cosTheta) / denominator;
+			A[1][4] = (vr2dt * cosWdt * sinTheta + vr2dt * sinWdt * cosTheta + twoBvl * cosWdt * cosTheta
+					- vl2dt * cosWdt * sinTheta - twoBvl * sinWdt * sinTheta - vl2dt * sinWdt * cosTheta
+					- twoBvl * cosTheta) / denominator;
+
+			A[2][3] = -dt / b;
+			A[2][4] = dt / b;
+		}
+
+		// P = A * (P * A^T) + Q
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j < 5; j++) {
+				double total = 0;
+				for (int k = 0; k < 5; k++) {
+					total += P[i][k] * A[j][k];
+				}
+				PAt[i][j] = total;
+			}
+		}
+
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j < 5; j++) {
+				double total = 0;
+				for (int k = 0; k < 5; k++) {
+					total += A[i][k] * PAt[k][j];
+				}
+				P[i][j] = total + Q[i][j];
+			}
+		}
+	}
+
+	/**
+	 * Correct the state with measurements of theta, vl and vr. The measurement
+	 * matrix H just picks out the last three state variables, so multiplying by
+	 * it is done by indexing.
+	 */
+	private void update(double theta, double vl, double vr) {
+		innovation[0] = theta - x[THETA];
+		innovation[1] = vl - x[VL];
+		innovation[2] = vr - x[VR];
+
+		// S = H P H^T + R
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				S[i][j] = P[i + 2][j + 2] + R[i][j];
+			}
+		}
+
+		if (!invert3x3(S, Si)) {
+			// can't happen with positive sensor variances, but don't poison the
+			// state with NaNs if it does
+			return;
+		}
+
+		// K = P H^T S^-1
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j < 3; j++) {
+				double total = 0;
+				for (int k = 0; k < 3; k++) {
+					total += P[i][k + 2] * Si[k][j];
+				}
+				K[i][j] = total;
+			}
+		}
+
+		for (int i = 0; i < 5; i++) {
+			double total = 0;
+			for (int k = 0; k < 3; k++) {
+				total += K[i][k] * innovation[k];
+			}
+			x[i] = x[i] + total;
+		}
+
+		// P = (I - K H) P
+		for (int i = 0; i < 5; i++) {
+			IKH[i][0] = i == 0 ? 1 : 0;
+			IKH[i][1] = i == 1 ? 1 : 0;
+			for (int j = 2; j < 5; j++) {
+				IKH[i][j] = (i == j ? 1 : 0) - K[i][j - 2];
+			}
+		}
+
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j < 5; j++) {
+				double total = 0;
+				for (int k = 0; k < 5; k++) {
+					total += IKH[i][k] * P[k][j];
+				}
+				newP[i][j] = total;
+			}
+		}
+
+		for (int i = 0; i < 5; i++) {
+			System.arraycopy(newP[i], 0, P[i], 0, 5);
+		}
+	}
+
+	/**
+	 * Correct the state with the bearing to a target. This measurement depends
+	 * on x, y and theta, so unlike the sensors' it's nonlinear and H is its
+	 * Jacobian.
+	 */
+	private void updateBearing(double targetX, double targetY, double bearing, double variance) {
+		double dx = targetX - x[X];
+		double dy = targetY - x[Y];
+		double distanceSquared = dx * dx + dy * dy;
+
+		if (distanceSquared < 1e-6) {
+			// on top of the target, so the bearing says nothing
+			return;
+		}
+
+		double error = bearing - (Math.atan2(dy, dx) - x[THETA]);
+		error = Math.IEEEremainder(error, 2 * Math.PI);
+
+		// H = [dy/d^2, -dx/d^2, -1, 0, 0]
+		double h0 = dy / distanceSquared;
+		double h1 = -dx / distanceSquared;
+
+		for (int i = 0; i < 5; i++) {
+			PHt[i] = P[i][X] * h0 + P[i][Y] * h1 - P[i][THETA];
+		}
+
+		double s = h0 * PHt[X] + h1 * PHt[Y] - PHt[THETA] + variance;
+		if (!(s > 0)) {
+			return;
+		}
+
+		// K = P H^T / s, and since P is symmetric, H P = (P H^T)^T
+		for (int i = 0; i < 5; i++) {
+			x[i] = x[i] + PHt[i] / s * error;
+		}
+
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j < 5; j++) {
+				P[i][j] = P[i][j] - PHt[i] / s * PHt[j];
+			}
+		}
+	}
+
+	/**
+	 * Invert a 3x3 matrix from its minors, after scaling it by its largest
+	 * element to avoid overflow.
+	 *
+	 * @return false if it's singular
+	 */
+	private static boolean invert3x3(double[][] m, double[][] inverse) {
+		double max = 0;
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				max = Math.max(max, Math.abs(m[i][j]));
+			}
+		}
+
+		if (max == 0) {
+			return false;
+		}
+		double scale = 1.0 / max;
+
+		double a11 = m[0][0] * scale, a12 = m[0][1] * scale, a13 = m[0][2] * scale;
+		double a21 = m[1][0] * scale, a22 = m[1][1] * scale, a23 = m[1][2] * scale;
+		double a31 = m[2][0] * scale, a32 = m[2][1] * scale, a33 = m[2][2] * scale;
+
+		double m11 = a22 * a33 - a23 * a32;
+		double m12 = -(a21 * a33 - a23 * a31);
+		double m13 = a21 * a32 - a22 * a31;
+		double m21 = -(a12 * a33 - a13 * a32);
+		double m22 = a11 * a33 - a13 * a31;
+		double m23 = -(a11 * a32 - a12 * a31);
+		double m31 = a12 * a23 - a13 * a22;
+		double m32 = -(a11 * a23 - a13 * a21);
+		double m33 = a11 * a22 - a12 * a21;
+
+		double det = (a11 * m11 + a12 * m12 + a13 * m13) / scale;
+		if (det == 0 || Double.isNaN(det) || Double.isInfinite(det)) {
+			return false;
+		}
+
+		inverse[0][0] = m11 / det;
+		inverse[0][1] = m21 / det;
+		inverse[0][2] = m31 / det;
+		inverse[1][0] = m12 / det;
+		inverse[1][1] = m22 / det;
+		inverse[1][2] = m32 / det;
+		inverse[2][0] = m13 / det;
+		inverse[2][1] = m23 / det;
+		inverse[2][2] = m33 / det;
+
+		return true;
+	}
+}
@@ -8,13 +8,11 @@ import org.team3128.common.control.trajectory.Trajectory;
 import org.team3128.common.control.trajectory.Trajectory.State;
 import org.team3128.common.drive.AutoDriveSignal;
 import org.team3128.common.drive.DriveSignal;
+import org.team3128.common.utility.math.MutablePose2D;
 import org.team3128.common.utility.math.Pose2D;
-import org.team3128.common.utility.math.Translation2D;
-import org.team3128.common.utility.math.Rotation2D;
 import org.team3128.common.utility.Log;
 import org.team3128.common.utility.NarwhalUtility;
 import org.team3128.compbot.subsystems.Constants;
-import org.team3128.compbot.subsystems.RobotTracker;
 
 public class RamseteController {
 
@@ -25,6 +23,11 @@ public class RamseteController {
 
 	double trackRadius;
 
+	// reused by every call, so following a trajectory doesn't allocate
+	private final DriveSignal command = new DriveSignal(0, 0);
+	private final AutoDriveSignal signal = new AutoDriveSignal(command, false);
+	private final MutablePose2D lastDesiredPose = new MutablePose2D();
+
 	public RamseteController(double b, double zeta, boolean isReversed, double TRACK_RADIUS) {
 		this.b = b;
 		this.zeta = zeta;
@@ -37,19 +40,54 @@ public class RamseteController {
 	 * Calculates the desired speed for each side of the robot.
 	 *
 	 * @param robotPose Robot position and gyro angle.
-	 * @return Speed for each side of the robot.
+	 * @return Speed for each side of the robot. The same object is returned by
+	 *         every call, so it is only valid until the next one.
 	 *
 	 */
 	@SuppressWarnings("unchecked")
 	public synchronized AutoDriveSignal calculate(Pose2D robotPose, State currentTrajectoryState) {
+		return calculate(robotPose.getTranslation().getX(), robotPose.getTranslation().getY(),
+				robotPose.getRotation().getRadians(), currentTrajectoryState,
+				currentTrajectoryState.poseMeters.getTranslation().getX(),
+				currentTrajectoryState.poseMeters.getTranslation().getY(),
+				currentTrajectoryState.poseMeters.getRotation().getRadians());
+	}
+
+	/**
+	 * Calculates the desired speed for each side of the robot without allocating,
+	 * using a state sampled with
+	 * {@link Trajectory#sample(double, State, MutablePose2D)}.
+	 *
+	 * @param robotPose              Robot position and gyro angle.
+	 * @param currentTrajectoryState Trajectory state, whose poseMeters is ignored.
+	 * @param desiredPose            Trajectory pose, in meters.
+	 * @return Speed for each side of the robot. The same object is returned by
+	 *         every call, so it is only valid until the next one.
+	 */
+	public synchronized AutoDriveSignal calculate(MutablePose2D robotPose, State currentTrajectoryState,
+			MutablePose2D desiredPose) {
+		return calculate(robotPose.getTranslation().getX(), robotPose.getTranslation().getY(),
+				robotPose.getRotation().getRadians(), currentTrajectoryState, desiredPose.getTranslation().getX(),
+				desiredPose.getTranslation().getY(), desiredPose.getRotation().getRadians());
+	}
+
+	/**
+	 * @return The trajectory pose the last call to calculate() steered toward, in
+	 *         inches. The same object is returned every time, and it changes with
+	 *         each call.
+	 */
+	public synchronized MutablePose2D getDesiredPose() {
+		return lastDesiredPose;
+	}
+
+	private AutoDriveSignal calculate(double robotX, double robotY, double robotTheta,
+			State currentTrajectoryState, double desiredXPosition, double desiredYPosition, double desiredTheta) {
 		double setpointLinearVelocity;
 		double setpointAngularVelocity;
 
-		double actualXPosition = robotPose.getTranslation().getX() * Constants.MechanismConstants.inchesToMeters; // actual X position in
-																								// meters
-		double actualYPosition = robotPose.getTranslation().getY() * Constants.MechanismConstants.inchesToMeters; // actual Y position in
-																								// meters
-		double actualTheta = robotPose.getRotation().getRadians(); // actual theta in radians
+		double actualXPosition = robotX * Constants.MechanismConstants.inchesToMeters; // actual X position in meters
+		double actualYPosition = robotY * Constants.MechanismConstants.inchesToMeters; // actual Y position in meters
+		double actualTheta = robotTheta; // actual theta in radians
 
 		double desiredLinearVelocity = currentTrajectoryState.velocityMetersPerSecond; // trajectory
 		// desired
@@ -59,25 +97,9 @@ public class RamseteController {
 		double desiredAngularVelocity = currentTrajectoryState.velocityMetersPerSecond
 				* currentTrajectoryState.curvatureRadPerMeter; // trajectory desired angular velocity in
 																// rad/s
-		double desiredXPosition = currentTrajectoryState.poseMeters.getTranslation().getX(); // trajectory
-		// desired
-		// X
-		// position
-		// in
-		// meters
-		double desiredYPosition = currentTrajectoryState.poseMeters.getTranslation().getY(); // trajectory
-		// desired
-		// Y
-		// position
-		// in
-		// meters
-
-		RobotTracker.getInstance().trajOdometry = new Pose2D(
-				new Translation2D(desiredXPosition / Constants.MechanismConstants.inchesToMeters,
-						desiredYPosition / Constants.MechanismConstants.inchesToMeters),
-				new Rotation2D());
-		double desiredTheta = currentTrajectoryState.poseMeters.getRotation().getRadians(); // trajectory desired theta
-																							// in radians
+
+		lastDesiredPose.set(desiredXPosition / Constants.MechanismConstants.inchesToMeters,
+				desiredYPosition / Constants.MechanismConstants.inchesToMeters, Math.toDegrees(desiredTheta));
 
 		double deltaTheta = desiredTheta - actualTheta;
 		if (deltaTheta > Math.PI) {
@@ -100,6 +122,11 @@ public class RamseteController {
 		setpointLinearVelocity /= Constants.MechanismConstants.inchesToMeters;
 		double rightVelocity = setpointLinearVelocity + trackRadius * setpointAngularVelocity;
 		double leftVelocity = setpointLinearVelocity - trackRadius * setpointAngularVelocity;
-		return new AutoDriveSignal(new DriveSignal(leftVelocity, rightVelocity), false);
+
+		command.leftVelocity = leftVelocity;
+		command.rightVelocity = rightVelocity;
+		signal.command = command;
+		signal.isDone = false;
+		return signal;
 	}
 }
@@ -2,6 +2,8 @@ package org.team3128.common.control.trajectory;
 
 import java.util.List;
 
+import org.team3128.common.utility.math.GeometryPool;
+import org.team3128.common.utility.math.MutablePose2D;
 import org.team3128.common.utility.math.Pose2D;
 
 /**
@@ -36,19 +38,6 @@ public class Trajectory {
     return startValue + (endValue - startValue) * t;
   }
 
-  /**
-   * Linearly interpolates between two poses.
-   *
-   * @param startValue The start pose.
-   * @param endValue   The end pose.
-   * @param t          The fraction for interpolation.
-   * @return The interpolated pose.
-   */
-  @SuppressWarnings("ParameterName")
-  private static Pose2D lerp(Pose2D startValue, Pose2D endValue, double t) {
-    return startValue.plus((endValue.minus(startValue)).times(t));
-  }
-
   /**
    * Returns the overall duration of the trajectory.
    *
@@ -82,6 +71,63 @@ public class Trajectory {
       return m_states.get(m_states.size() - 1);
     }
 
+    // The sample's timestamp is greater than or equal to the requested
+    // timestamp. If it is greater, we need to interpolate between the
+    // previous state and the current state to get the exact state that we
+    // want.
+    final int low = findSample(timeSeconds);
+    final State sample = m_states.get(low);
+    final State prevSample = m_states.get(low - 1);
+
+    // If the difference in states is negligible, then we are spot on!
+    if (Math.abs(sample.timeSeconds - prevSample.timeSeconds) < 1E-9) {
+      return sample;
+    }
+    // Interpolate between the two states for the state that we want.
+    return prevSample.interpolate(sample,
+        (timeSeconds - prevSample.timeSeconds) / (sample.timeSeconds - prevSample.timeSeconds));
+  }
+
+  /**
+   * Sample the trajectory at a point in time without allocating, for calling
+   * every control loop.
+   *
+   * @param timeSeconds The point in time since the beginning of the trajectory to
+   *                    sample.
+   * @param out         Filled with the time, velocity, acceleration and
+   *                    curvature at that point in time. Its poseMeters is left
+   *                    alone.
+   * @param pose        Filled with the pose at that point in time.
+   */
+  public void sample(double timeSeconds, State out, MutablePose2D pose) {
+    if (timeSeconds <= m_states.get(0).timeSeconds) {
+      m_states.get(0).copyInto(out, pose);
+      return;
+    }
+    if (timeSeconds >= m_totalTimeSeconds) {
+      m_states.get(m_states.size() - 1).copyInto(out, pose);
+      return;
+    }
+
+    final int low = findSample(timeSeconds);
+    final State sample = m_states.get(low);
+    final State prevSample = m_states.get(low - 1);
+
+    if (Math.abs(sample.timeSeconds - prevSample.timeSeconds) < 1E-9) {
+      sample.copyInto(out, pose);
+      return;
+    }
+    prevSample.interpolateInto(sample,
+        (timeSeconds - prevSample.timeSeconds) / (sample.timeSeconds - prevSample.timeSeconds), out, pose);
+  }
+
+  /**
+   * Find the first state at or after a time strictly inside the trajectory.
+   *
+   * @param timeSeconds The point in time since the beginning of the trajectory.
+   * @return The index of the state, which is at least 1.
+   */
+  private int findSample(double timeSeconds) {
     // To get the element that we want, we will use a binary search algorithm
     // instead of iterating over a for-loop. A binary search is O(std::log(n))
     // whereas searching using a loop is O(n).
@@ -105,21 +151,7 @@ public class Trajectory {
     }
 
     // High and Low should be the same.
-
-    // The sample's timestamp is now greater than or equal to the requested
-    // timestamp. If it is greater, we need to interpolate between the
-    // previous state and the current state to get the exact state that we
-    // want.
-    final State sample = m_states.get(low);
-    final State prevSample = m_states.get(low - 1);
-
-    // If the difference in states is negligible, then we are spot on!
-    if (Math.abs(sample.timeSeconds - prevSample.timeSeconds) < 1E-9) {
-      return sample;
-    }
-    // Interpolate between the two states for the state that we want.
-    return prevSample.interpolate(sample,
-        (timeSeconds - prevSample.timeSeconds) / (sample.timeSeconds - prevSample.timeSeconds));
+    return low;
   }
 
   /**
@@ -180,6 +212,25 @@ public class Trajectory {
      */
     @SuppressWarnings("ParameterName")
     State interpolate(State endValue, double i) {
+      final State state = new State();
+      final MutablePose2D pose = new MutablePose2D();
+
+      interpolateInto(endValue, i, state, pose);
+      state.poseMeters = pose.toPose2D();
+      return state;
+    }
+
+    /**
+     * Interpolates between two States without allocating.
+     *
+     * @param endValue The end value for the interpolation.
+     * @param i        The interpolant (fraction).
+     * @param out      Filled with the interpolated state, except for its
+     *                 poseMeters.
+     * @param pose     Filled with the interpolated pose.
+     */
+    @SuppressWarnings("ParameterName")
+    void interpolateInto(State endValue, double i, State out, MutablePose2D pose) {
       // Find the new t value.
       final double newT = lerp(timeSeconds, endValue.timeSeconds, i);
 
@@ -188,7 +239,8 @@ public class Trajectory {
 
       // If delta time is negative, flip the order of interpolation.
       if (deltaT < 0) {
-        return endValue.interpolate(this, 1 - i);
+        endValue.interpolateInto(this, 1 - i, out, pose);
+        return;
       }
 
       // Check whether the robot is reversing at this stage.
@@ -204,16 +256,41 @@ public class Trajectory {
       final double newS = (velocityMetersPerSecond * deltaT + 0.5 * accelerationMetersPerSecondSq * Math.pow(deltaT, 2))
           * (reversing ? -1.0 : 1.0);
 
-      // Return the new state. To find the new position for the new state, we need
-      // to interpolate between the two endpoint poses. The fraction for
-      // interpolation is the change in position (delta s) divided by the total
-      // distance between the two endpoints.
+      // To find the new position for the new state, we need to interpolate
+      // between the two endpoint poses. The fraction for interpolation is the
+      // change in position (delta s) divided by the total distance between the
+      // two endpoints.
       final double interpolationFrac = newS
           / endValue.poseMeters.getTranslation().getDistanceTo(poseMeters.getTranslation());
 
-      return new State(newT, newV, accelerationMetersPerSecondSq,
-          lerp(poseMeters, endValue.poseMeters, interpolationFrac),
-          lerp(curvatureRadPerMeter, endValue.curvatureRadPerMeter, interpolationFrac));
+      out.timeSeconds = newT;
+      out.velocityMetersPerSecond = newV;
+      out.accelerationMetersPerSecondSq = accelerationMetersPerSecondSq;
+      out.curvatureRadPerMeter = lerp(curvatureRadPerMeter, endValue.curvatureRadPerMeter, interpolationFrac);
+
+      final GeometryPool pool = GeometryPool.get();
+      pool.begin();
+      try {
+        final MutablePose2D start = pool.pose().set(poseMeters);
+        final MutablePose2D end = pool.pose().set(endValue.poseMeters);
+        start.interpolateInto(pose, end, interpolationFrac);
+      } finally {
+        pool.end();
+      }
+    }
+
+    /**
+     * Copies this state into another without allocating.
+     *
+     * @param out  Filled with this state, except for its poseMeters.
+     * @param pose Filled with this state's pose.
+     */
+    void copyInto(State out, MutablePose2D pose) {
+      out.timeSeconds = timeSeconds;
+      out.velocityMetersPerSecond = velocityMetersPerSecond;
+      out.accelerationMetersPerSecondSq = accelerationMetersPerSecondSq;
+      out.curvatureRadPerMeter = curvatureRadPerMeter;
+      pose.set(poseMeters);
     }
   }
 }
@@ -0,0 +1,215 @@
+package org.team3128.common.drive;
+
+import java.lang.invoke.VarHandle;
+import java.util.function.DoubleSupplier;
+
+import org.team3128.common.utility.math.MutablePose2D;
+import org.team3128.common.utility.math.Pose2D;
+
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * Tracks the robot's position from its drive encoders and gyro. Meant to be
+ * updated on its own fast thread (see
+ * {@link org.team3128.common.NarwhalRobot#registerPeriodic}), and read from
+ * any number of other threads.
+ *
+ * Each update moves the robot along the arc matching its change in distance
+ * and heading (the exponential of the twist), rather than along a straight
+ * line at the new heading, so it stays accurate on curves even at low rates.
+ * The heading comes straight from the gyro, so it never drifts from it.
+ *
+ * The pose is kept in two preallocated buffers guarded by version counters.
+ * Updates write the buffer that isn't currently published and then swap, so
+ * neither side allocates or locks, and readers always get a consistent pose.
+ */
+public class Odometry {
+    /**
+     * Indices into the arrays filled in by {@link #getPose(double[])}.
+     */
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int HEADING = 2;
+    public static final int TIMESTAMP = 3;
+
+    // a bigger heading change in one update can't be the robot turning, so it
+    // must be the gyro being reset
+    private static final double MAX_HEADING_STEP = 0.5;
+
+    private static class PoseBuffer {
+        // odd while being written
+        volatile int version;
+
+        double x, y, heading, timestamp;
+    }
+
+    private final DoubleSupplier leftDistance, rightDistance, heading;
+
+    private final PoseBuffer[] buffers = { new PoseBuffer(), new PoseBuffer() };
+    private volatile int published = 0;
+
+    // only touched by update() and resetPosition(), which are synchronized
+    private double x, y;
+    private double oldLeft, oldRight, oldHeading;
+    private boolean initialized = false;
+
+    /**
+     * @param leftDistance  Distance driven by the left side
+     * @param rightDistance Distance driven by the right side, in the same units
+     * @param heading       Gyro angle in degrees
+     */
+    public Odometry(DoubleSupplier leftDistance, DoubleSupplier rightDistance, DoubleSupplier heading) {
+        this.leftDistance = leftDistance;
+        this.rightDistance = rightDistance;
+        this.heading = heading;
+    }
+
+    public Odometry(Drive drive) {
+        this(drive::getLeftDistance, drive::getRightDistance, drive::getAngle);
+    }
+
+    /**
+     * Read the sensors and move the pose by the arc driven since the last
+     * update.
+     */
+    public synchronized void update() {
+        double left = leftDistance.getAsDouble();
+        double right = rightDistance.getAsDouble();
+        double newHeading = Math.toRadians(heading.getAsDouble());
+
+        if (initialized) {
+            double distance = ((left - oldLeft) + (right - oldRight)) / 2;
+            double headingChange = newHeading - oldHeading;
+            double startHeading = oldHeading;
+
+            if (Math.abs(headingChange) > MAX_HEADING_STEP) {
+                headingChange = 0;
+                startHeading = newHeading;
+            }
+
+            // the chord of the arc, in the robot's frame at the start of it
+            double sinTerm, cosTerm;
+            if (Math.abs(headingChange) < 1e-9) {
+                sinTerm = 1 - headingChange * headingChange / 6;
+                cosTerm = headingChange / 2;
+            } else {
+                sinTerm = Math.sin(headingChange) / headingChange;
+                cosTerm = (1 - Math.cos(headingChange)) / headingChange;
+            }
+
+            double forward = distance * sinTerm;
+            double sideways = distance * cosTerm;
+
+            double cos = Math.cos(startHeading);
+            double sin = Math.sin(startHeading);
+            x += forward * cos - sideways * sin;
+            y += forward * sin + sideways * cos;
+        }
+
+        oldLeft = left;
+        oldRight = right;
+        oldHeading = newHeading;
+        initialized = true;
+
+        publish();
+    }
+
+    /**
+     * Move the tracked position without touching the heading, which always
+     * follows the gyro. Reset the gyro separately to change it.
+     */
+    public synchronized void resetPosition(double x, double y) {
+        this.x = x;
+        this.y = y;
+
+        if (initialized) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        int index = 1 - published;
+        PoseBuffer buffer = buffers[index];
+
+        buffer.version++;
+        VarHandle.storeStoreFence();
+
+        buffer.x = x;
+        buffer.y = y;
+        buffer.heading = Math.toDegrees(oldHeading);
+        buffer.timestamp = RobotController.getFPGATime() / 1000000.0;
+
+        // volatile write, so readers who see the new version see the values
+        buffer.version++;
+        published = index;
+    }
+
+    /**
+     * Copy the latest pose into an array. Can be called from any thread, and
+     * never blocks unless the updating thread is preempted mid-write to the
+     * buffer being read.
+     *
+     * @param pose At least 4 elements long. Filled with the x, y, heading in
+     *             degrees, and FPGA timestamp in seconds; see the index constants.
+     */
+    public void getPose(double[] pose) {
+        while (true) {
+            PoseBuffer buffer = buffers[published];
+            int version = buffer.version;
+
+            if ((version & 1) == 0) {
+                double x = buffer.x;
+                double y = buffer.y;
+                double heading = buffer.heading;
+                double timestamp = buffer.timestamp;
+
+                VarHandle.loadLoadFence();
+                if (buffer.version == version) {
+                    pose[X] = x;
+                    pose[Y] = y;
+                    pose[HEADING] = heading;
+                    pose[TIMESTAMP] = timestamp;
+                    return;
+                }
+            }
+
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Copy the latest pose into a MutablePose2D without allocating.
+     *
+     * @see #getPose(double[])
+     */
+    public void getPose(MutablePose2D pose) {
+        while (true) {
+            PoseBuffer buffer = buffers[published];
+            int version = buffer.version;
+
+            if ((version & 1) == 0) {
+                double x = buffer.x;
+                double y = buffer.y;
+                double heading = buffer.heading;
+
+                VarHandle.loadLoadFence();
+                if (buffer.version == version) {
+                    pose.set(x, y, heading);
+                    return;
+                }
+            }
+
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * @return The latest pose, as a new Pose2D
+     */
+    public Pose2D getPose() {
+        double[] pose = new double[4];
+        getPose(pose);
+
+        return new Pose2D(pose[X], pose[Y], pose[HEADING]);
+    }
+}
@@ -1,5 +1,7 @@
 package org.team3128.common.generics;
 
+import java.util.function.Supplier;
+
 import org.team3128.common.utility.Log;
 
 public abstract class TaggedLoggable implements Loggable {
@@ -7,13 +9,52 @@ public abstract class TaggedLoggable implements Loggable {
 
     public void logInfo(String message) {
         Log.info(getTag(), message);
-        System.out.println();
+    }
+
+    public void logInfo(Supplier<String> message) {
+        Log.info(getTag(), message);
+    }
+
+    public void logInfo(String template, double arg0) {
+        Log.info(getTag(), template, arg0);
+    }
+
+    public void logInfo(String template, double arg0, double arg1) {
+        Log.info(getTag(), template, arg0, arg1);
+    }
+
+    public void logInfo(String template, double arg0, double arg1, double arg2) {
+        Log.info(getTag(), template, arg0, arg1, arg2);
+    }
+
+    public void logInfo(String template, double arg0, double arg1, double arg2, double arg3) {
+        Log.info(getTag(), template, arg0, arg1, arg2, arg3);
     }
 
     public void logDebug(String message) {
         Log.debug(getTag(), message);
     }
 
+    public void logDebug(Supplier<String> message) {
+        Log.debug(getTag(), message);
+    }
+
+    public void logDebug(String template, double arg0) {
+        Log.debug(getTag(), template, arg0);
+    }
+
+    public void logDebug(String template, double arg0, double arg1) {
+        Log.debug(getTag(), template, arg0, arg1);
+    }
+
+    public void logDebug(String template, double arg0, double arg1, double arg2) {
+        Log.debug(getTag(), template, arg0, arg1, arg2);
+    }
+
+    public void logDebug(String template, double arg0, double arg1, double arg2, double arg3) {
+        Log.debug(getTag(), template, arg0, arg1, arg2, arg3);
+    }
+
     public void logFatal(String message) {
         Log.fatal(getTag(), message);
     }
@@ -29,4 +70,8 @@ public abstract class TaggedLoggable implements Loggable {
     public void logUnusual(String message) {
         Log.unusual(getTag(), message);
     }
+
+    public void logUnusual(Supplier<String> message) {
+        Log.unusual(getTag(), message);
+    }
 }
\ No newline at end of file
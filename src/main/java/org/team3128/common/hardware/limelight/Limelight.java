@@ -1,10 +1,11 @@
 package org.team3128.common.hardware.limelight;
 
-import java.util.Arrays;
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.EntryNotification;
 import edu.wpi.first.networktables.NetworkTable;
-//import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
-//import edu.wpi.first.networktables.TableEntryListener;
+import edu.wpi.first.wpilibj.Timer;
 
 import org.team3128.common.utility.Log;
 import org.team3128.common.utility.RobotMath;
@@ -16,6 +17,10 @@ import org.team3128.common.utility.RobotMath;
  * tx is positive. - When the target is above the horizontal centerline, ty is
  * positive.
  * 
+ * Every value is read once per camera frame, when a new one arrives over
+ * NetworkTables, and kept as a {@link LimelightFrame}. Reading the latest
+ * frame never touches NetworkTables. Each frame is also fed to a
+ * {@link LimelightFilter}, which the averaging getters use.
  * 
  * @author Adham Elarabawy, Mason Holst, Jude Lifset
  *
@@ -30,6 +35,25 @@ public class Limelight {
 
     public NetworkTable limelightTable;
 
+    private static final LimelightKey[] keys = LimelightKey.values();
+
+    // looked up once rather than by name on every read, indexed by ordinal
+    private final NetworkTableEntry[] valueEntries = new NetworkTableEntry[keys.length];
+    private final NetworkTableEntry camtranEntry;
+    private final NetworkTableEntry ledModeEntry;
+    private final NetworkTableEntry streamEntry;
+    private final NetworkTableEntry pipelineEntry;
+
+    // only touched by onFrame(), on the NetworkTables listener thread
+    private final double[] frameValues = new double[keys.length];
+    private final double[] defaultCamtran = new double[6];
+    private long frameCount = 0;
+    private boolean hasHeartbeat = false;
+
+    private volatile LimelightFrame latestFrame = LimelightFrame.empty();
+
+    private final LimelightFilter filter = new LimelightFilter();
+
     /**
      * 
      * @param cameraAngle   - The vertical angle of the limelight
@@ -50,82 +74,127 @@ public class Limelight {
         this.targetWidth = targetWidth;
 
         limelightTable = NetworkTableInstance.getDefault().getTable(hostname);
+
+        for (LimelightKey key : keys) {
+            valueEntries[key.ordinal()] = limelightTable.getEntry(key.getKey());
+        }
+        camtranEntry = limelightTable.getEntry("camtran");
+        ledModeEntry = limelightTable.getEntry("ledMode");
+        streamEntry = limelightTable.getEntry("stream");
+        pipelineEntry = limelightTable.getEntry("pipeline");
+
+        // Newer firmware counts frames in "hb". Older firmware doesn't, but
+        // publishes a new latency with (almost) every frame.
+        int flags = EntryListenerFlags.kNew | EntryListenerFlags.kUpdate;
+        valueEntries[LimelightKey.HEARTBEAT.ordinal()].addListener(this::onFrame, flags);
+        valueEntries[LimelightKey.LATENCY.ordinal()].addListener(this::onFrame, flags);
+    }
+
+    /**
+     * Snapshot every value when the Limelight publishes a frame.
+     */
+    private synchronized void onFrame(EntryNotification notification) {
+        if (notification.getEntry().equals(valueEntries[LimelightKey.HEARTBEAT.ordinal()])) {
+            hasHeartbeat = true;
+        } else if (hasHeartbeat) {
+            // the heartbeat already marks this frame
+            return;
+        }
+
+        double arrivalTimestamp = Timer.getFPGATimestamp();
+
+        for (int i = 0; i < keys.length; i++) {
+            frameValues[i] = valueEntries[i].getDouble(0.0);
+        }
+
+        frameCount++;
+        LimelightFrame frame = new LimelightFrame(frameCount, arrivalTimestamp, frameValues,
+                camtranEntry.getDoubleArray(defaultCamtran));
+
+        filter.add(frame);
+        latestFrame = frame;
+    }
+
+    /**
+     * Gets the newest frame the Limelight has sent. Costs a single volatile read,
+     * so it can be called from any thread as often as needed. Compare it against
+     * the last frame used with {@link LimelightFrame#isNewerThan} to tell if it
+     * has new information.
+     * 
+     * @return The newest frame, or an empty one with a sequence number of 0 if
+     *         none have arrived
+     */
+    public LimelightFrame getLatestFrame() {
+        return latestFrame;
+    }
+
+    /**
+     * Gets the filter every frame from this Limelight is added to, for smoothed
+     * tx, ty and ta.
+     */
+    public LimelightFilter getFilter() {
+        return filter;
     }
 
     /**
      * Gets the average value of the data value in a certain key output by the
-     * Limelight.
+     * Limelight. tx, ty and ta are averaged over the most recent camera frames
+     * with a target. Other keys, or any key while there are no such frames, come
+     * from the newest frame.
      * 
      * @param key        - the LimelightKey corresponding to the desired value.
-     * @param numSamples - how many samples of the value to average out.
+     * @param numSamples - how many frames of the value to average out.
      * @return
      */
     public double getValue(LimelightKey key, int numSamples) {
-        double runningTotal = 0;
-        int count = 0;
-
-        while (count <= numSamples) {
-            runningTotal += limelightTable.getEntry(key.getKey()).getDouble(0.0);
-            count += 1;
+        // so the target can't be lost between checking and averaging
+        synchronized (filter) {
+            if (LimelightFilter.isFiltered(key) && filter.getSampleCount() > 0) {
+                return filter.getMean(key, numSamples);
+            }
         }
 
-        return runningTotal / numSamples;
+        return latestFrame.get(key);
     }
 
     /**
-     * Checks to see if the Limelight has a valid target
+     * Checks to see if the Limelight has a valid target, with hysteresis so that
+     * a single frame won't gain or lose it.
      */
     public boolean hasValidTarget() {
-        return getValue(LimelightKey.VALID_TARGET, 1) > 0.99;
+        return filter.hasTarget();
     }
 
+    /**
+     * Gets every value from the newest frame, with tx, ty and ta averaged as in
+     * {@link #getValue(LimelightKey, int)}.
+     * 
+     * @param numSamples - how many frames to average out.
+     */
     public LimelightData getValues(int numSamples) {
-        LimelightData data = new LimelightData();
-        // double runningTotal;
-        double[] runningTotal;
-        double[] camtranArray;
-        int idx;
-        int index = 0;
-        // runningTotal = 0;
-        runningTotal = new double[9];
-
-        for (int a = 0; a < numSamples; a++) {
-
-            Arrays.fill(runningTotal, 0.0);
-            idx = 0;
-            // for (String valueKey : LimelightConstants.valueKeys) {
-
-            // }
-
-            for (String valueKey : LimelightConstants.valueKeys) {
-                runningTotal[idx] += limelightTable.getEntry(valueKey).getDouble(0.0);
-                idx++;
-            }
-        }
-        idx = 0;
-        for (String valueKey : LimelightConstants.valueKeys) {
-            data.set(valueKey, runningTotal[idx] / numSamples);
-            idx++;
-        }
+        LimelightData data = latestFrame.toLimelightData();
 
-        // load the camtranArray
-        camtranArray = limelightTable.getEntry("camtran").getDoubleArray(new double[6]);
-        // add each element in the array to the updated values for however many times
-        // numSamples dictates(minus 1 because the array is initially loaded in with
-        // values)
-        for (int a = 0; a < numSamples - 1; a++) {
-            for (int b = 0; b < camtranArray.length; b++) {
-                camtranArray[b] += limelightTable.getEntry("camtran").getDoubleArray(new double[6])[b];
+        synchronized (filter) {
+            if (filter.getSampleCount() > 0) {
+                data.set("tx", filter.getMean(LimelightKey.HORIZONTAL_OFFSET, numSamples));
+                data.set("ty", filter.getMean(LimelightKey.VERTICAL_OFFSET, numSamples));
+                data.set("ta", filter.getMean(LimelightKey.AREA, numSamples));
             }
         }
-        for (String valueKey : LimelightConstants.valueKeysPnP) {
-            data.set(valueKey, camtranArray[index] / numSamples);
-            index++;
-        }
 
         return data;
     }
 
+    /**
+     * Estimates when the image behind the newest frame was captured.
+     * 
+     * @see LimelightFrame#getCaptureTimestamp()
+     * @return FPGA timestamp in seconds
+     */
+    public double getCaptureTimestamp() {
+        return latestFrame.getCaptureTimestamp();
+    }
+
     public double getYPrime(double targetHeight, int n) {
         if (!hasValidTarget())
             return -1;
@@ -139,15 +208,15 @@ public class Limelight {
 
     public void setLEDMode(LEDMode mode) {
         Log.info("Limelight", "set LED mode to" + String.valueOf(mode));
-        limelightTable.getEntry("ledMode").setNumber(mode.getLEDMode());
+        ledModeEntry.setNumber(mode.getLEDMode());
     }
 
     public void setStreamMode(StreamMode mode) {
-        limelightTable.getEntry("stream").setNumber(mode.getStream());
+        streamEntry.setNumber(mode.getStream());
     }
 
     public void setPipeline(Pipeline pipeline) {
-        limelightTable.getEntry("pipeline").setNumber(pipeline.getPipeline());
+        pipelineEntry.setNumber(pipeline.getPipeline());
         //NetworkTableInstance.getDefault().getTable(hostname).getEntry("pipeline").setNumber(pipeline.getPipeline());
         //NetworkTableInstance.getDefault().getTable(hostname).getEntry("ledMode").setNumber(3);
     }
@@ -156,6 +225,6 @@ public class Limelight {
      * Set the limelight on the dashboard
      */
     public double getSelectedPipeline() {
-        return limelightTable.getEntry("pipeline").getDouble(0);
+        return pipelineEntry.getDouble(0);
     }
 }
@@ -11,4 +11,21 @@ public class LimelightConstants {
 
     public static final double HORIZONTAL_FOV = 59.6 * Angle.DEGREES;
     public static final double VERTICAL_FOV = 45.7 * Angle.DEGREES;
+
+    /**
+     * Time between the image being captured and the pipeline starting on it, in
+     * milliseconds. Not included in the "tl" value.
+     */
+    public static final double IMAGE_CAPTURE_LATENCY = 11;
+
+    /**
+     * Defaults for {@link LimelightFilter}. The window is frames, the timeout is
+     * seconds.
+     */
+    public static final int FILTER_WINDOW = 10;
+    public static final double FILTER_ALPHA = 0.5;
+    public static final double FILTER_BETA = 0.1;
+    public static final int TARGET_ACQUIRE_FRAMES = 2;
+    public static final int TARGET_LOSE_FRAMES = 3;
+    public static final double TARGET_TIMEOUT = 0.5;
 }
\ No newline at end of file
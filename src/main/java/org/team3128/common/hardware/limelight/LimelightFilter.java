@@ -0,0 +1,316 @@
+package org.team3128.common.hardware.limelight;
+
+import java.util.Arrays;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Smooths a Limelight's tx, ty and ta over its camera frames. Each frame is
+ * added exactly once as it arrives, so averaging over n samples really does
+ * average n different images instead of reading one value n times.
+ *
+ * Offers the mean and median of the most recent frames with a target, and an
+ * alpha-beta tracker that follows each value and its rate of change with less
+ * lag than a long average.
+ *
+ * Whether there is a target has hysteresis: it takes a few frames in a row with
+ * a target to gain one, and a few without to lose it. The history is cleared
+ * whenever the target is lost, when a target that was never gained disappears,
+ * and when the Limelight stops sending frames for longer than a timeout, so
+ * nothing is ever averaged from frames of an old target.
+ *
+ * Thread safe.
+ */
+public class LimelightFilter {
+    /**
+     * Indices into the array filled in by
+     * {@link #getTrackedEstimate(LimelightKey, double[])}.
+     */
+    public static final int VALUE = 0;
+    public static final int CAPTURE_TIMESTAMP = 1;
+
+    private static final LimelightKey[] channels = { LimelightKey.HORIZONTAL_OFFSET, LimelightKey.VERTICAL_OFFSET,
+            LimelightKey.AREA };
+
+    private final int windowSize;
+    private final double alpha, beta;
+    private final int acquireFrames, loseFrames;
+    private final double timeout;
+
+    // ring buffer of frames with a target, by channel then sample
+    private final double[][] window;
+    private int newest = -1;
+    private int size = 0;
+
+    private final double[] scratch;
+
+    private final double[] tracked = new double[channels.length];
+    private final double[] trackedRate = new double[channels.length];
+    private double lastCaptureTimestamp;
+    private double lastArrivalTimestamp;
+
+    private boolean hasTarget = false;
+    private int validStreak = 0;
+    private int invalidStreak = 0;
+
+    /**
+     * @param windowSize    Number of frames to keep for the mean and median
+     * @param alpha         Tracker gain on the value, between 0 and 1. Higher
+     *                      follows measurements more closely.
+     * @param beta          Tracker gain on the rate, between 0 and 1, usually
+     *                      much smaller than alpha
+     * @param acquireFrames Frames in a row with a target it takes to gain one
+     * @param loseFrames    Frames in a row without a target it takes to lose one
+     * @param timeout       Seconds without any frame after which the target is
+     *                      lost
+     */
+    public LimelightFilter(int windowSize, double alpha, double beta, int acquireFrames, int loseFrames,
+            double timeout) {
+        this.windowSize = windowSize;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.acquireFrames = acquireFrames;
+        this.loseFrames = loseFrames;
+        this.timeout = timeout;
+
+        window = new double[channels.length][windowSize];
+        scratch = new double[windowSize];
+    }
+
+    /**
+     * Filter with the defaults in {@link LimelightConstants}.
+     */
+    public LimelightFilter() {
+        this(LimelightConstants.FILTER_WINDOW, LimelightConstants.FILTER_ALPHA, LimelightConstants.FILTER_BETA,
+                LimelightConstants.TARGET_ACQUIRE_FRAMES, LimelightConstants.TARGET_LOSE_FRAMES,
+                LimelightConstants.TARGET_TIMEOUT);
+    }
+
+    /**
+     * Add the newest frame. Call once per frame.
+     */
+    public synchronized void add(LimelightFrame frame) {
+        lastArrivalTimestamp = frame.getArrivalTimestamp();
+
+        if (!frame.hasValidTarget()) {
+            validStreak = 0;
+            invalidStreak++;
+
+            if (hasTarget && invalidStreak >= loseFrames) {
+                hasTarget = false;
+            }
+            if (!hasTarget) {
+                clear();
+            }
+            return;
+        }
+
+        invalidStreak = 0;
+        validStreak++;
+        if (!hasTarget && validStreak >= acquireFrames) {
+            hasTarget = true;
+        }
+
+        double captureTimestamp = frame.getCaptureTimestamp();
+        double dt = captureTimestamp - lastCaptureTimestamp;
+
+        newest = (newest + 1) % windowSize;
+        for (int i = 0; i < channels.length; i++) {
+            double measurement = frame.get(channels[i]);
+            window[i][newest] = measurement;
+
+            if (size == 0) {
+                tracked[i] = measurement;
+                trackedRate[i] = 0;
+            } else {
+                // predict forward to this frame, then correct toward it
+                if (dt > 0) {
+                    tracked[i] += trackedRate[i] * dt;
+                }
+                double residual = measurement - tracked[i];
+
+                tracked[i] += alpha * residual;
+                if (dt > 0) {
+                    trackedRate[i] += beta * residual / dt;
+                }
+            }
+        }
+
+        lastCaptureTimestamp = captureTimestamp;
+        size = Math.min(size + 1, windowSize);
+    }
+
+    /**
+     * Forget every frame and the target.
+     */
+    public synchronized void reset() {
+        hasTarget = false;
+        validStreak = 0;
+        invalidStreak = 0;
+        clear();
+    }
+
+    private void clear() {
+        newest = -1;
+        size = 0;
+    }
+
+    /**
+     * Forget everything if the Limelight has stopped sending frames. Called
+     * before every read, since no frame will come to trigger it.
+     */
+    private void checkTimeout() {
+        if (lastArrivalTimestamp > 0 && Timer.getFPGATimestamp() - lastArrivalTimestamp >= timeout) {
+            reset();
+        }
+    }
+
+    /**
+     * Checks whether there is a target, with hysteresis.
+     */
+    public synchronized boolean hasTarget() {
+        checkTimeout();
+        return hasTarget;
+    }
+
+    /**
+     * @return Number of frames with a target being kept, up to the window size
+     */
+    public synchronized int getSampleCount() {
+        checkTimeout();
+        return size;
+    }
+
+    /**
+     * Gets the mean of a value over the most recent frames with a target. Returns
+     * 0 if there are none.
+     *
+     * @param key        tx, ty or ta
+     * @param numSamples Number of frames to average, capped to the number kept
+     */
+    public synchronized double getMean(LimelightKey key, int numSamples) {
+        int count = copyRecent(key, numSamples);
+        if (count == 0) {
+            return 0;
+        }
+
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            total += scratch[i];
+        }
+
+        return total / count;
+    }
+
+    /**
+     * Gets the median of a value over the most recent frames with a target, which
+     * ignores the odd bad frame better than the mean. Returns 0 if there are none.
+     *
+     * @param key        tx, ty or ta
+     * @param numSamples Number of frames to use, capped to the number kept
+     */
+    public synchronized double getMedian(LimelightKey key, int numSamples) {
+        int count = copyRecent(key, numSamples);
+        if (count == 0) {
+            return 0;
+        }
+
+        Arrays.sort(scratch, 0, count);
+        if (count % 2 == 1) {
+            return scratch[count / 2];
+        }
+        return (scratch[count / 2 - 1] + scratch[count / 2]) / 2;
+    }
+
+    private int copyRecent(LimelightKey key, int numSamples) {
+        checkTimeout();
+
+        double[] values = window[channel(key)];
+        int count = Math.min(Math.max(numSamples, 1), size);
+
+        for (int i = 0; i < count; i++) {
+            scratch[i] = values[(newest - i + windowSize) % windowSize];
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the tracker's estimate of a value as of the last frame with a target.
+     * Returns NaN if there are no frames with a target.
+     *
+     * @param key tx, ty or ta
+     */
+    public synchronized double getTracked(LimelightKey key) {
+        checkTimeout();
+        return size == 0 ? Double.NaN : tracked[channel(key)];
+    }
+
+    /**
+     * Gets the tracker's estimate of a value together with when the frame it
+     * was last updated with was captured, read at the same time so that a new
+     * frame can't arrive in between.
+     *
+     * @param key      tx, ty or ta
+     * @param estimate At least 2 elements long. Filled with the value and the
+     *                 FPGA capture timestamp in seconds, see the index constants,
+     *                 or with NaN if there is no estimate.
+     * @return false if there are no frames with a target to estimate from
+     */
+    public synchronized boolean getTrackedEstimate(LimelightKey key, double[] estimate) {
+        checkTimeout();
+
+        if (size == 0) {
+            estimate[VALUE] = Double.NaN;
+            estimate[CAPTURE_TIMESTAMP] = Double.NaN;
+            return false;
+        }
+
+        estimate[VALUE] = tracked[channel(key)];
+        estimate[CAPTURE_TIMESTAMP] = lastCaptureTimestamp;
+        return true;
+    }
+
+    /**
+     * Gets the tracker's estimate of how fast a value is changing. Returns NaN
+     * if there are no frames with a target.
+     *
+     * @param key tx, ty or ta
+     * @return Change per second
+     */
+    public synchronized double getTrackedRate(LimelightKey key) {
+        checkTimeout();
+        return size == 0 ? Double.NaN : trackedRate[channel(key)];
+    }
+
+    /**
+     * @return When the image behind the last frame with a target was captured,
+     *         as an FPGA timestamp in seconds, or NaN if there are no frames with
+     *         a target
+     */
+    public synchronized double getLastCaptureTimestamp() {
+        checkTimeout();
+        return size == 0 ? Double.NaN : lastCaptureTimestamp;
+    }
+
+    /**
+     * @return Whether the key is one of the values this filters
+     */
+    public static boolean isFiltered(LimelightKey key) {
+        for (LimelightKey channel : channels) {
+            if (channel == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int channel(LimelightKey key) {
+        for (int i = 0; i < channels.length; i++) {
+            if (channels[i] == key) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Limelight values other than tx, ty and ta aren't filtered: " + key);
+    }
+}
@@ -0,0 +1,181 @@
+package org.team3128.common.hardware.limelight;
+
+/**
+ * Every value a Limelight published for one camera frame, read all at once
+ * when the frame arrived. Frames are immutable, so one can be handed between
+ * threads and read field by field without the values changing underneath it.
+ *
+ * @see Limelight#getLatestFrame()
+ */
+public class LimelightFrame {
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int Z = 2;
+    private static final int PITCH = 3;
+    private static final int YAW = 4;
+    private static final int ROLL = 5;
+
+    private final long sequence;
+    private final double arrivalTimestamp;
+
+    // indexed by LimelightKey ordinal
+    private final double[] values;
+    private final double[] camtran;
+
+    /**
+     * @param sequence         Count of frames received before this one, plus 1
+     * @param arrivalTimestamp FPGA time the frame arrived, in seconds
+     * @param values           Value of each {@link LimelightKey}, by ordinal.
+     *                         Copied.
+     * @param camtran          The 6 element camtran array. Copied.
+     */
+    LimelightFrame(long sequence, double arrivalTimestamp, double[] values, double[] camtran) {
+        this.sequence = sequence;
+        this.arrivalTimestamp = arrivalTimestamp;
+        this.values = values.clone();
+        this.camtran = new double[6];
+
+        System.arraycopy(camtran, 0, this.camtran, 0, Math.min(camtran.length, 6));
+    }
+
+    /**
+     * A frame holding nothing, for before the Limelight has sent one.
+     */
+    static LimelightFrame empty() {
+        return new LimelightFrame(0, 0, new double[LimelightKey.values().length], new double[6]);
+    }
+
+    /**
+     * @return Count of frames the Limelight had sent up to and including this
+     *         one, or 0 if it hasn't sent any
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Checks if this frame came after another one, such as the last frame a
+     * command looked at.
+     *
+     * @param other An earlier frame from the same Limelight, or null
+     */
+    public boolean isNewerThan(LimelightFrame other) {
+        return other == null || sequence > other.sequence;
+    }
+
+    /**
+     * @return FPGA time the frame arrived over NetworkTables, in seconds
+     */
+    public double getArrivalTimestamp() {
+        return arrivalTimestamp;
+    }
+
+    /**
+     * Estimates when the image behind this frame was captured, from the pipeline
+     * latency the Limelight reports. Compare measurements against where the robot
+     * was at this time, not where it is now.
+     *
+     * @return FPGA timestamp in seconds
+     */
+    public double getCaptureTimestamp() {
+        return arrivalTimestamp - (latency() + LimelightConstants.IMAGE_CAPTURE_LATENCY) / 1000.0;
+    }
+
+    public double get(LimelightKey key) {
+        return values[key.ordinal()];
+    }
+
+    public boolean hasValidTarget() {
+        return tv() > 0.99;
+    }
+
+    public double tv() {
+        return get(LimelightKey.VALID_TARGET);
+    }
+
+    public double tx() {
+        return get(LimelightKey.HORIZONTAL_OFFSET);
+    }
+
+    public double ty() {
+        return get(LimelightKey.VERTICAL_OFFSET);
+    }
+
+    public double area() {
+        return get(LimelightKey.AREA);
+    }
+
+    public double shear() {
+        return get(LimelightKey.SKEW);
+    }
+
+    /**
+     * @return Pipeline latency in milliseconds
+     */
+    public double latency() {
+        return get(LimelightKey.LATENCY);
+    }
+
+    public double boxWidth() {
+        return get(LimelightKey.LENGTH_HORIZONTAL);
+    }
+
+    public double boxHeight() {
+        return get(LimelightKey.LENGTH_VERTICAL);
+    }
+
+    public double fittedShort() {
+        return get(LimelightKey.FITTED_SHORT);
+    }
+
+    public double fittedLong() {
+        return get(LimelightKey.FITTED_LONG);
+    }
+
+    public double x() {
+        return camtran[X];
+    }
+
+    public double y() {
+        return camtran[Y];
+    }
+
+    public double z() {
+        return camtran[Z];
+    }
+
+    public double pitch() {
+        return camtran[PITCH];
+    }
+
+    public double yaw() {
+        return camtran[YAW];
+    }
+
+    public double roll() {
+        return camtran[ROLL];
+    }
+
+    /**
+     * @return The frame's values in the older LimelightData format
+     */
+    public LimelightData toLimelightData() {
+        LimelightData data = new LimelightData();
+
+        for (String valueKey : LimelightConstants.valueKeys) {
+            for (LimelightKey key : LimelightKey.values()) {
+                if (key.getKey().equals(valueKey)) {
+                    data.set(valueKey, get(key));
+                }
+            }
+        }
+
+        int index = 0;
+        for (String valueKey : LimelightConstants.valueKeysPnP) {
+            data.set(valueKey, camtran[index]);
+            index++;
+        }
+
+        return data;
+    }
+}
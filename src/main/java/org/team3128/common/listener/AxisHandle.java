@@ -0,0 +1,25 @@
+package org.team3128.common.listener;
+
+/**
+ * A handle for reading one axis of a {@link ListenerManager}, created by
+ * {@link ListenerManager#axis(String)}. The control name is looked up once when
+ * the handle is made, so get() just reads the latest value.
+ * 
+ * Can be used from any thread.
+ */
+public class AxisHandle {
+	private final ListenerManager manager;
+	private final int index;
+
+	AxisHandle(ListenerManager manager, int index) {
+		this.manager = manager;
+		this.index = index;
+	}
+
+	/**
+	 * @return The value of the axis as of the last tick
+	 */
+	public double get() {
+		return manager.readAxis(index);
+	}
+}
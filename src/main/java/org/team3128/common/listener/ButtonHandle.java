@@ -0,0 +1,24 @@
+package org.team3128.common.listener;
+
+/**
+ * A handle for reading one button of a {@link ListenerManager}, created by
+ * {@link ListenerManager#button(String)}.
+ * 
+ * Can be used from any thread.
+ */
+public class ButtonHandle {
+	private final ListenerManager manager;
+	private final int index;
+
+	ButtonHandle(ListenerManager manager, int index) {
+		this.manager = manager;
+		this.index = index;
+	}
+
+	/**
+	 * @return Whether the button was pressed as of the last tick
+	 */
+	public boolean get() {
+		return manager.readButton(index);
+	}
+}
@@ -0,0 +1,114 @@
+package org.team3128.common.listener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, preallocated, single-producer single-consumer queue of control
+ * changes, used to hand input from a ListenerManager's polling thread to the
+ * main thread. Neither side blocks, locks or allocates. If the queue is full,
+ * the event is dropped and offer() returns false.
+ */
+class ControlEventQueue {
+	static final byte BUTTON = 0;
+	static final byte AXIS = 1;
+	static final byte POV = 2;
+
+	/**
+	 * Consumer-side copy of a single event. Reused by the main thread.
+	 */
+	static class Event {
+		byte type;
+		int index;
+
+		// 1 or 0 for buttons, the direction value for POVs
+		double value;
+
+		// FPGA time when the change was seen, in microseconds
+		long timestamp;
+	}
+
+	private final int mask;
+
+	private final byte[] types;
+	private final int[] indices;
+	private final double[] values;
+	private final long[] timestamps;
+
+	// positions of the next event to read and to write. Each is only written by
+	// one side.
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	private long cachedHead;
+
+	/**
+	 * @param capacity Number of events the queue can hold. Must be a power of two.
+	 */
+	ControlEventQueue(int capacity) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two, got " + capacity);
+		}
+
+		this.mask = capacity - 1;
+
+		types = new byte[capacity];
+		indices = new int[capacity];
+		values = new double[capacity];
+		timestamps = new long[capacity];
+	}
+
+	/**
+	 * Add an event. Must only be called from the producer thread.
+	 *
+	 * @return false if the queue was full and the event was dropped
+	 */
+	boolean offer(byte type, int index, double value, long timestamp) {
+		long position = tail.get();
+
+		if (position - cachedHead > mask) {
+			cachedHead = head.get();
+			if (position - cachedHead > mask) {
+				return false;
+			}
+		}
+
+		int slot = (int) position & mask;
+		types[slot] = type;
+		indices[slot] = index;
+		values[slot] = value;
+		timestamps[slot] = timestamp;
+
+		tail.lazySet(position + 1);
+		return true;
+	}
+
+	/**
+	 * Remove the oldest event and copy it into out. Must only be called from the
+	 * consumer thread.
+	 *
+	 * @return false if the queue was empty
+	 */
+	boolean poll(Event out) {
+		long position = head.get();
+		if (position == tail.get()) {
+			return false;
+		}
+
+		int slot = (int) position & mask;
+		out.type = types[slot];
+		out.index = indices[slot];
+		out.value = values[slot];
+		out.timestamp = timestamps[slot];
+
+		head.lazySet(position + 1);
+		return true;
+	}
+
+	/**
+	 * Throw away every event currently in the queue. Must only be called from the
+	 * consumer thread.
+	 */
+	void clear() {
+		head.lazySet(tail.get());
+	}
+}
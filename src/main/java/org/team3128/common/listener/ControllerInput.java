@@ -0,0 +1,63 @@
+package org.team3128.common.listener;
+
+import edu.wpi.first.wpilibj.Joystick;
+
+/**
+ * The parts of a controller which ListenerManager reads. On the robot this is
+ * always a Joystick, but going through this lets tests stand in for the HAL.
+ */
+interface ControllerInput {
+	boolean getRawButton(int button);
+
+	double getRawAxis(int axis);
+
+	int getPOV(int pov);
+
+	int getButtonCount();
+
+	int getAxisCount();
+
+	int getPOVCount();
+
+	static ControllerInput of(Joystick joystick) {
+		return new ControllerInput() {
+			@Override
+			public boolean getRawButton(int button) {
+				return joystick.getRawButton(button);
+			}
+
+			@Override
+			public double getRawAxis(int axis) {
+				return joystick.getRawAxis(axis);
+			}
+
+			@Override
+			public int getPOV(int pov) {
+				return joystick.getPOV(pov);
+			}
+
+			@Override
+			public int getButtonCount() {
+				return joystick.getButtonCount();
+			}
+
+			@Override
+			public int getAxisCount() {
+				return joystick.getAxisCount();
+			}
+
+			@Override
+			public int getPOVCount() {
+				return joystick.getPOVCount();
+			}
+		};
+	}
+
+	static ControllerInput[] of(Joystick[] joysticks) {
+		ControllerInput[] inputs = new ControllerInput[joysticks.length];
+		for (int index = 0; index < joysticks.length; index++) {
+			inputs[index] = of(joysticks[index]);
+		}
+		return inputs;
+	}
+}
@@ -0,0 +1,180 @@
+package org.team3128.common.listener;
+
+import java.util.Arrays;
+
+/**
+ * Decodes the frames of an {@link InputRecording} as their time comes. Doesn't
+ * use the clock itself, so it can be driven by anything which supplies
+ * timestamps.
+ */
+class InputPlayback {
+	private final InputRecording recording;
+	private final long startTime;
+
+	private int position = 0;
+	private int framesPlayed = 0;
+
+	// time of the last played frame, and of the next one, relative to the start
+	private long frameTime = 0;
+	private long nextFrameTime = 0;
+
+	private final long[] buttons;
+	private final double[] axes;
+	private final int[] povs;
+
+	/**
+	 * @param startTime The time to play the first frame at. Frames are played at
+	 *                  the same offsets from this as they were recorded at.
+	 */
+	InputPlayback(InputRecording recording, long startTime) {
+		this.recording = recording;
+		this.startTime = startTime;
+
+		buttons = new long[recording.numButtons / 64 + 1];
+		axes = new double[recording.numAxes];
+		povs = new int[recording.numPOVs];
+
+		if (recording.frameCount > 0) {
+			nextFrameTime = readVarint();
+		}
+	}
+
+	boolean isFinished() {
+		return framesPlayed >= recording.frameCount;
+	}
+
+	/**
+	 * Play the next frame, if it's due.
+	 *
+	 * @param now The current time, in the same units as the start time
+	 * @return Whether a frame was played. Call again until it returns false, so
+	 *         that every frame is seen even if several are due at once.
+	 * @throws IllegalStateException If the recording is corrupt
+	 */
+	boolean advance(long now) {
+		if (isFinished() || now - startTime < nextFrameTime) {
+			return false;
+		}
+
+		try {
+			readFrame();
+		} catch (ArrayIndexOutOfBoundsException error) {
+			throw new IllegalStateException("frame " + framesPlayed + " runs past the end of the data");
+		}
+
+		frameTime = nextFrameTime;
+		framesPlayed++;
+
+		if (!isFinished()) {
+			nextFrameTime += readVarint();
+		}
+
+		return true;
+	}
+
+	private void readFrame() {
+		byte[] data = recording.data;
+		int changed = data[position++];
+
+		if ((changed & InputRecording.BUTTONS_CHANGED) != 0) {
+			for (int index = 0; index <= recording.numButtons; index += 8) {
+				long bits = (data[position++] & 0xFFL) << (index & 63);
+				long mask = 0xFFL << (index & 63);
+				buttons[index >> 6] = (buttons[index >> 6] & ~mask) | bits;
+			}
+		}
+
+		if ((changed & InputRecording.AXES_CHANGED) != 0) {
+			int changedAxes = readVarint();
+			for (int index = 0; index < 32; index++) {
+				if ((changedAxes & (1 << index)) != 0) {
+					if (index >= axes.length) {
+						throw new IllegalStateException("frame " + framesPlayed + " has an axis out of range");
+					}
+
+					int bits = (data[position] & 0xFF) | (data[position + 1] & 0xFF) << 8
+							| (data[position + 2] & 0xFF) << 16 | (data[position + 3] & 0xFF) << 24;
+					position += 4;
+					axes[index] = Float.intBitsToFloat(bits);
+				}
+			}
+		}
+
+		if ((changed & InputRecording.POVS_CHANGED) != 0) {
+			int changedPOVs = readVarint();
+			for (int index = 0; index < 32; index++) {
+				if ((changedPOVs & (1 << index)) != 0) {
+					if (index >= povs.length) {
+						throw new IllegalStateException("frame " + framesPlayed + " has a POV out of range");
+					}
+
+					povs[index] = data[position++];
+				}
+			}
+		}
+	}
+
+	private int readVarint() {
+		byte[] data = recording.data;
+		int value = 0;
+
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (position >= recording.length) {
+				throw new IllegalStateException("data ends in the middle of frame " + framesPlayed);
+			}
+
+			int b = data[position++];
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IllegalStateException("varint too long in frame " + framesPlayed);
+	}
+
+	/**
+	 * Copy the controls as of the last played frame into a ListenerManager's
+	 * arrays. If the recording and the joysticks have different numbers of
+	 * controls, the extra ones are left at zero.
+	 */
+	void copyTo(long[] buttonValues, int numButtons, double[] joystickValues, int[] povValues) {
+		Arrays.fill(buttonValues, 0);
+		for (int word = 0; word < Math.min(buttons.length, buttonValues.length); word++) {
+			buttonValues[word] = buttons[word];
+		}
+
+		// clear any buttons past the end of the joystick
+		int lastWord = numButtons >> 6;
+		if (lastWord < buttonValues.length) {
+			buttonValues[lastWord] &= -1L >>> (63 - (numButtons & 63));
+		}
+
+		for (int index = 0; index < joystickValues.length; index++) {
+			joystickValues[index] = index < axes.length ? axes[index] : 0;
+		}
+
+		for (int index = 0; index < povValues.length; index++) {
+			povValues[index] = index < povs.length ? povs[index] : 0;
+		}
+	}
+
+	/**
+	 * @return The time of the last played frame, relative to the start time
+	 */
+	long getFrameTime() {
+		return frameTime;
+	}
+
+	long getStartTime() {
+		return startTime;
+	}
+
+	int getFramesPlayed() {
+		return framesPlayed;
+	}
+
+	int getPosition() {
+		return position;
+	}
+}
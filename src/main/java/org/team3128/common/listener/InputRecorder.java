@@ -0,0 +1,192 @@
+package org.team3128.common.listener;
+
+import java.util.Arrays;
+
+import org.team3128.common.utility.Log;
+
+/**
+ * Encodes control snapshots into an {@link InputRecording}, in memory. Only
+ * snapshots where something changed are stored, and only the parts which
+ * changed. Used by ListenerManager on the main thread.
+ *
+ * The recording is capped at {@link #MAX_BYTES}, so one left running doesn't
+ * use up the roboRIO's memory. Once it's full, nothing more is recorded, and
+ * the recording ends at the last frame that fit.
+ */
+class InputRecorder {
+	/**
+	 * Most bytes of frames to record. A match's worth of driving takes well
+	 * under a megabyte.
+	 */
+	static final int MAX_BYTES = 8 * 1024 * 1024;
+
+	private final int numButtons, numAxes, numPOVs;
+	private final int maxBytes;
+
+	private byte[] data;
+	private int length = 0;
+	private boolean truncated = false;
+
+	private int frameCount = 0;
+	private long firstTimestamp, lastTimestamp;
+
+	// the last recorded values, to compare against
+	private final long[] lastButtons;
+	private final double[] lastAxes;
+	private final int[] lastPOVs;
+
+	InputRecorder(int numButtons, int numAxes, int numPOVs) {
+		this(numButtons, numAxes, numPOVs, MAX_BYTES);
+	}
+
+	/**
+	 * @param maxBytes Most bytes of frames to record
+	 */
+	InputRecorder(int numButtons, int numAxes, int numPOVs, int maxBytes) {
+		if (numAxes > 31 || numPOVs > 31) {
+			throw new IllegalArgumentException("Can't record more than 31 axes or POVs");
+		}
+
+		this.numButtons = numButtons;
+		this.numAxes = numAxes;
+		this.numPOVs = numPOVs;
+		this.maxBytes = maxBytes;
+
+		data = new byte[Math.min(64 * 1024, maxBytes)];
+		lastButtons = new long[numButtons / 64 + 1];
+		lastAxes = new double[numAxes];
+		lastPOVs = new int[numPOVs];
+	}
+
+	/**
+	 * Record the controls, if they changed since the last call.
+	 *
+	 * @param timestamp FPGA time at which they were read, in microseconds
+	 */
+	void record(long timestamp, long[] buttons, double[] axes, int[] povs) {
+		if (truncated) {
+			return;
+		}
+
+		boolean first = frameCount == 0;
+		int changed = 0;
+
+		if (first || !Arrays.equals(buttons, lastButtons)) {
+			changed |= InputRecording.BUTTONS_CHANGED;
+		}
+
+		int changedAxes = 0;
+		for (int index = 0; index < numAxes; index++) {
+			if (first || axes[index] != lastAxes[index]) {
+				changedAxes |= 1 << index;
+			}
+		}
+		if (changedAxes != 0) {
+			changed |= InputRecording.AXES_CHANGED;
+		}
+
+		int changedPOVs = 0;
+		for (int index = 0; index < numPOVs; index++) {
+			if (first || povs[index] != lastPOVs[index]) {
+				changedPOVs |= 1 << index;
+			}
+		}
+		if (changedPOVs != 0) {
+			changed |= InputRecording.POVS_CHANGED;
+		}
+
+		if (changed == 0) {
+			return;
+		}
+
+		// worst case size of this frame
+		if (!ensureCapacity(5 + 1 + (numButtons / 8 + 1) + 5 + numAxes * 4 + 5 + numPOVs)) {
+			truncated = true;
+			Log.recoverable("InputRecorder", "Recording is full after " + frameCount + " frames over "
+					+ (lastTimestamp - firstTimestamp) / 1e6 + " seconds, not recording any more");
+			return;
+		}
+
+		if (first) {
+			firstTimestamp = timestamp;
+			lastTimestamp = timestamp;
+		}
+		writeVarint((int) Math.max(0, Math.min(timestamp - lastTimestamp, Integer.MAX_VALUE)));
+		lastTimestamp = timestamp;
+
+		data[length++] = (byte) changed;
+
+		if ((changed & InputRecording.BUTTONS_CHANGED) != 0) {
+			for (int index = 0; index <= numButtons; index += 8) {
+				data[length++] = (byte) (buttons[index >> 6] >>> (index & 63));
+			}
+			System.arraycopy(buttons, 0, lastButtons, 0, lastButtons.length);
+		}
+
+		if (changedAxes != 0) {
+			writeVarint(changedAxes);
+			for (int index = 0; index < numAxes; index++) {
+				if ((changedAxes & (1 << index)) != 0) {
+					int bits = Float.floatToIntBits((float) axes[index]);
+					data[length++] = (byte) bits;
+					data[length++] = (byte) (bits >> 8);
+					data[length++] = (byte) (bits >> 16);
+					data[length++] = (byte) (bits >> 24);
+
+					lastAxes[index] = axes[index];
+				}
+			}
+		}
+
+		if (changedPOVs != 0) {
+			writeVarint(changedPOVs);
+			for (int index = 0; index < numPOVs; index++) {
+				if ((changedPOVs & (1 << index)) != 0) {
+					data[length++] = (byte) povs[index];
+					lastPOVs[index] = povs[index];
+				}
+			}
+		}
+
+		frameCount++;
+	}
+
+	/**
+	 * @return Whether the recording filled up, and stopped before the controls
+	 *         did
+	 */
+	boolean isTruncated() {
+		return truncated;
+	}
+
+	boolean hasCounts(int numButtons, int numAxes, int numPOVs) {
+		return numButtons == this.numButtons && numAxes == this.numAxes && numPOVs == this.numPOVs;
+	}
+
+	InputRecording finish() {
+		return new InputRecording(numButtons, numAxes, numPOVs, frameCount, lastTimestamp - firstTimestamp,
+				Arrays.copyOf(data, length), length);
+	}
+
+	/**
+	 * @return false if the extra bytes would go over the maximum size
+	 */
+	private boolean ensureCapacity(int extra) {
+		if (length + extra > maxBytes) {
+			return false;
+		}
+
+		if (length + extra > data.length) {
+			data = Arrays.copyOf(data, Math.min(Math.max(data.length * 2, length + extra), maxBytes));
+		}
+		return true;
+	}
+
+	private void writeVarint(int value) {
+		while ((value & ~0x7F) != 0) {
+			data[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data[length++] = (byte) value;
+	}
+}
@@ -0,0 +1,162 @@
+package org.team3128.common.listener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A recording of the controls of one ListenerManager, made with
+ * {@link ListenerManager#startRecording()} and played back with
+ * {@link ListenerManager#startPlayback(InputRecording)}.
+ *
+ * A frame is recorded every time any control changes. On disk, a recording is:
+ *
+ * <pre>
+ * int     magic ("NIR" and a version byte)
+ * varint  number of buttons, axes and POVs
+ * varint  number of frames
+ * frames:
+ *   varint  microseconds since the previous frame
+ *   u8      which parts changed: 1 = buttons, 2 = axes, 4 = POVs
+ *   buttons: one bit per button, starting at button 0, packed into bytes
+ *   axes:    varint bitmask of changed axes, then a float (little endian) for each
+ *   POVs:    varint bitmask of changed POVs, then a u8 direction value for each
+ * </pre>
+ *
+ * Axis values are stored as floats, which is the precision the driver station
+ * sends them at.
+ */
+public class InputRecording {
+	static final int MAGIC = 0x4E495201;
+
+	static final int BUTTONS_CHANGED = 1;
+	static final int AXES_CHANGED = 2;
+	static final int POVS_CHANGED = 4;
+
+	final int numButtons, numAxes, numPOVs;
+	final int frameCount;
+	final long durationMicros;
+
+	// encoded frames
+	final byte[] data;
+	final int length;
+
+	InputRecording(int numButtons, int numAxes, int numPOVs, int frameCount, long durationMicros, byte[] data,
+			int length) {
+		this.numButtons = numButtons;
+		this.numAxes = numAxes;
+		this.numPOVs = numPOVs;
+		this.frameCount = frameCount;
+		this.durationMicros = durationMicros;
+		this.data = data;
+		this.length = length;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return The time from the first frame to the last, in microseconds
+	 */
+	public long getDurationMicros() {
+		return durationMicros;
+	}
+
+	public void save(File file) throws IOException {
+		try (OutputStream output = new FileOutputStream(file)) {
+			write(output);
+		}
+	}
+
+	public void write(OutputStream output) throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream headerData = new DataOutputStream(header);
+
+		headerData.writeInt(MAGIC);
+		writeVarint(header, numButtons);
+		writeVarint(header, numAxes);
+		writeVarint(header, numPOVs);
+		writeVarint(header, frameCount);
+
+		header.writeTo(output);
+		output.write(data, 0, length);
+		output.flush();
+	}
+
+	public static InputRecording load(File file) throws IOException {
+		try (InputStream input = new FileInputStream(file)) {
+			return read(input);
+		}
+	}
+
+	/**
+	 * Read a recording, and check that it can be played back.
+	 *
+	 * @throws IOException If the data isn't a valid recording
+	 */
+	public static InputRecording read(InputStream input) throws IOException {
+		DataInputStream dataInput = new DataInputStream(input);
+
+		if (dataInput.readInt() != MAGIC) {
+			throw new IOException("Not an input recording, or from a different version");
+		}
+
+		int numButtons = readVarint(dataInput);
+		int numAxes = readVarint(dataInput);
+		int numPOVs = readVarint(dataInput);
+		int frameCount = readVarint(dataInput);
+
+		byte[] data = dataInput.readAllBytes();
+
+		// play it through once, to check it and find out how long it is
+		InputRecording recording = new InputRecording(numButtons, numAxes, numPOVs, frameCount, 0, data, data.length);
+		InputPlayback playback = new InputPlayback(recording, 0);
+		try {
+			while (playback.advance(Long.MAX_VALUE)) {
+			}
+		} catch (IllegalStateException error) {
+			throw new IOException("Corrupt input recording: " + error.getMessage());
+		}
+
+		if (playback.getFramesPlayed() != frameCount || playback.getPosition() != data.length) {
+			throw new IOException("Corrupt input recording: expected " + frameCount + " frames in " + data.length
+					+ " bytes, found " + playback.getFramesPlayed() + " in " + playback.getPosition());
+		}
+
+		return new InputRecording(numButtons, numAxes, numPOVs, frameCount, playback.getFrameTime(), data,
+				data.length);
+	}
+
+	private static void writeVarint(OutputStream output, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			output.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		output.write(value);
+	}
+
+	private static int readVarint(DataInputStream input) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = input.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Corrupt input recording: varint too long");
+	}
+}
@@ -1,13 +1,11 @@
 package org.team3128.common.listener;
 
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.List;
+import java.util.function.LongSupplier;
 
 import org.team3128.common.listener.callbacks.AxisListenerCallback;
 import org.team3128.common.listener.callbacks.POVListenerCallback;
@@ -23,6 +21,7 @@ import org.team3128.common.utility.datatypes.Pair;
 import org.team3128.common.utility.datatypes.SynchronizedMultimap;
 
 import edu.wpi.first.wpilibj.Joystick;
+import edu.wpi.first.wpilibj.RobotController;
 
 /**
  * This class combines the functions of XControl and ListenerManager from the
@@ -40,9 +39,6 @@ import edu.wpi.first.wpilibj.Joystick;
  */
 public class ListenerManager {
 
-	// when this is locked no one should touch _joystickValues or _buttonValues
-	private ReentrantLock _controlValuesMutex;
-
 	// maps the listeners to the control inputs
 	private SynchronizedMultimap<Control, AxisListenerCallback> axisListeners = new SynchronizedMultimap<Control, AxisListenerCallback>();
 	private SynchronizedMultimap<Control, Pair<TypelessListenerCallback, Boolean>> buttonListeners = new SynchronizedMultimap<Control, Pair<TypelessListenerCallback, Boolean>>();
@@ -51,27 +47,209 @@ public class ListenerManager {
 
 	private HashMap<String, Control> controlNames;
 
-	// wpilib object which represents a controller
-	private ArrayList<Joystick> _joysticks;
+	// the controllers to read. Replaced, never modified, so the input thread can
+	// read it.
+	private volatile ControllerInput[] _joysticks;
+
+	// FPGA time in microseconds
+	private final LongSupplier clock;
 
 	// joystick threshold.
 	private static final double JOYSTICK_DEADZONE = .15;
 
+	/**
+	 * The state of every control at one point in time, stored in arrays indexed
+	 * by control index so that it can be refilled every tick without allocating.
+	 * 
+	 * Only the main thread writes to these, between beginWrite() and endWrite().
+	 * Other threads can read them at any time through the control handles: the
+	 * sequence number is odd while a write is in progress and changes with every
+	 * write, so a reader which sees the same even number before and after reading
+	 * knows it didn't read a half-written value.
+	 */
 	private static class ControlValues {
-		public Set<Button> buttonValues;
+		private volatile int sequence;
+
+		public final int numButtons;
+
+		// bit n is set if button n is pressed (buttons are one indexed)
+		public final long[] buttonValues;
+
+		public final double[] joystickValues;
+
+		// POVValue direction values
+		public final int[] povValues;
+
+		ControlValues(int numButtons, int numAxes, int numPOVs) {
+			this.numButtons = numButtons;
+			buttonValues = new long[(numButtons >> 6) + 1];
+			joystickValues = new double[numAxes];
+			povValues = new int[numPOVs];
+		}
+
+		boolean getButton(int index) {
+			int word = index >> 6;
+			return word < buttonValues.length && (buttonValues[word] & (1L << index)) != 0;
+		}
+
+		void setButton(int index, boolean pressed) {
+			if (pressed) {
+				buttonValues[index >> 6] |= 1L << index;
+			} else {
+				buttonValues[index >> 6] &= ~(1L << index);
+			}
+		}
+
+		void clear() {
+			Arrays.fill(buttonValues, 0);
+			Arrays.fill(joystickValues, 0);
+			Arrays.fill(povValues, 0);
+		}
+
+		void beginWrite() {
+			sequence++;
+			VarHandle.storeStoreFence();
+		}
+
+		void endWrite() {
+			sequence++;
+		}
+
+		/**
+		 * @return The sequence number to pass to validate() after reading, or -1 if
+		 *         a write is in progress
+		 */
+		int startRead() {
+			int current = sequence;
+			return (current & 1) == 0 ? current : -1;
+		}
+
+		/**
+		 * @return Whether nothing was written since startRead()
+		 */
+		boolean validate(int startSequence) {
+			VarHandle.loadLoadFence();
+			return startSequence >= 0 && sequence == startSequence;
+		}
+	}
+
+	// tick() polls into spareControls and then swaps it with currentControls.
+	// currentControls is what the control handles read.
+	private volatile ControlValues currentControls;
+	private ControlValues spareControls;
+
+	// preallocated keys for looking up listeners, indexed like ControlValues
+	private Button[] buttonKeys;
+	private Axis[] axisKeys;
+	private POV[] povKeys;
+
+	/**
+	 * Which generic listeners to run for each control, worked out ahead of time so
+	 * that a listener registered for several controls is only run once per tick
+	 * without having to search for duplicates.
+	 * 
+	 * Every distinct listener gets an id, and each control has the ids of its
+	 * listeners. While dispatching, the ids of listeners to run are set in a
+	 * bitset, and then the listeners are run in id order, which is the order they
+	 * were first registered in.
+	 */
+	private static class GenericDispatchPlan {
+		final TypelessListenerCallback[] listeners;
+
+		// listener ids for each control, indexed like ControlValues
+		final int[][] buttonIds, axisIds, povIds;
+
+		// bit n is set if listener n needs to run
+		final long[] pending;
+
+		GenericDispatchPlan(TypelessListenerCallback[] listeners, int[][] buttonIds, int[][] axisIds, int[][] povIds) {
+			this.listeners = listeners;
+			this.buttonIds = buttonIds;
+			this.axisIds = axisIds;
+			this.povIds = povIds;
+
+			pending = new long[(listeners.length + 63) / 64];
+		}
+
+		void mark(int[][] idsByControl, int index) {
+			if (index >= idsByControl.length) {
+				return;
+			}
 
-		public HashMap<Axis, Double> joystickValues;
+			for (int id : idsByControl[index]) {
+				pending[id >> 6] |= 1L << id;
+			}
+		}
+
+		/**
+		 * Run every marked listener, and unmark them.
+		 */
+		void runPending() {
+			for (int word = 0; word < pending.length; word++) {
+				long bits = pending[word];
+				pending[word] = 0;
+
+				while (bits != 0) {
+					int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+
+					listeners[id].onListener();
+				}
+			}
+		}
+
+		void clearPending() {
+			Arrays.fill(pending, 0);
+		}
+	}
+
+	// generic listeners in the order they were first added, for giving them ids
+	private ArrayList<TypelessListenerCallback> genericListenerOrder = new ArrayList<TypelessListenerCallback>();
+
+	// rebuilt whenever generic listeners or the control counts change
+	private volatile GenericDispatchPlan genericPlan;
+
+	// the plan being used by the dispatch in progress
+	private GenericDispatchPlan activePlan;
+
+	// the FPGA time at which the control change being dispatched was read
+	private long eventTimestamp;
+
+	// Input thread mode (see setAsyncPolling()). poll() runs on the input thread
+	// and queues up changes, and tick() dispatches them on the main thread.
+	private volatile boolean asyncPolling = false;
+
+	private static final int EVENT_QUEUE_CAPACITY = 256;
+	private final ControlEventQueue events = new ControlEventQueue(EVENT_QUEUE_CAPACITY);
+	private final ControlEventQueue.Event event = new ControlEventQueue.Event();
+
+	/**
+	 * The input thread's own pair of buffers. Replaced by recountControls().
+	 */
+	private static class PollBuffers {
+		ControlValues current, previous;
 
-		public HashMap<POV, POVValue> povValues;
+		// set when events were dropped, so the next poll needs to send everything
+		boolean resync = true;
 
-		ControlValues() {
-			buttonValues = new HashSet<>();
-			joystickValues = new HashMap<Axis, Double>();
-			povValues = new HashMap<POV, POVValue>();
+		PollBuffers(int numButtons, int numAxes, int numPOVs) {
+			current = new ControlValues(numButtons, numAxes, numPOVs);
+			previous = new ControlValues(numButtons, numAxes, numPOVs);
 		}
 	}
 
-	private ControlValues currentControls;
+	private volatile PollBuffers pollBuffers;
+
+	// set by the main thread when the input thread should send every control's
+	// value again, because the main thread's copy was changed or thrown out
+	private volatile boolean pollResyncRequested = false;
+
+	private volatile int droppedEvents = 0;
+
+	// Recording and playback (see startRecording() and startPlayback()). Only
+	// used on the main thread.
+	private InputRecorder recorder;
+	private InputPlayback playback;
 
 	// zero indexed
 	private int numAxes, numPOVs;
@@ -98,14 +276,22 @@ public class ListenerManager {
 	 *                    properly.
 	 */
 	public ListenerManager(Joystick... joysticks) {
-		if (joysticks == null || joysticks.length < 1) {
-			throw new IllegalArgumentException("Invalid joystick arguments");
-		}
+		this(RobotController::getFPGATime, ControllerInput.of(checkJoysticks(joysticks)));
+	}
+
+	/**
+	 * Construct a ListenerManager which reads from something other than the HAL,
+	 * for tests.
+	 * 
+	 * @param clock       Supplies the FPGA time, in microseconds
+	 * @param controllers Read like the joysticks in
+	 *                    {@link #ListenerManager(Joystick...)}
+	 */
+	ListenerManager(LongSupplier clock, ControllerInput... controllers) {
+		this.clock = clock;
 
-		_controlValuesMutex = new ReentrantLock();
-		_joysticks = new ArrayList<>();
+		_joysticks = controllers.clone();
 		controlNames = new HashMap<>();
-		Collections.addAll(_joysticks, joysticks);
 
 		recountControls();
 
@@ -114,6 +300,14 @@ public class ListenerManager {
 		// currentControls = new ControlValues();
 	}
 
+	private static Joystick[] checkJoysticks(Joystick[] joysticks) {
+		if (joysticks == null || joysticks.length < 1) {
+			throw new IllegalArgumentException("Invalid joystick arguments");
+		}
+
+		return joysticks;
+	}
+
 	/**
 	 * Associate a name with the given control Throws if the name is already in use.
 	 * 
@@ -139,6 +333,7 @@ public class ListenerManager {
 		checkControlName(name, null);
 
 		genericListeners.put(controlNames.get(name), listener);
+		rebuildGenericPlan();
 	}
 
 	/**
@@ -216,6 +411,8 @@ public class ListenerManager {
 			genericListeners.put(controlNames.get(controlName), listener);
 
 		}
+
+		rebuildGenericPlan();
 	}
 
 	/**
@@ -225,6 +422,7 @@ public class ListenerManager {
 		Control control = controlNames.get(name);
 
 		genericListeners.removeAll(control);
+		rebuildGenericPlan();
 
 		if (control instanceof Button) {
 			buttonListeners.removeAll(control);
@@ -235,10 +433,97 @@ public class ListenerManager {
 		}
 	}
 
+	/**
+	 * Work out the generic listener ids for every control again. Called when
+	 * listeners are added or removed, which is normally only during setup.
+	 */
+	private synchronized void rebuildGenericPlan() {
+		if (buttonKeys == null) {
+			// recountControls() will build it once the control counts are known
+			return;
+		}
+
+		int[][] buttonIds = new int[buttonKeys.length][];
+		int[][] axisIds = new int[axisKeys.length][];
+		int[][] povIds = new int[povKeys.length][];
+
+		int[] noIds = new int[0];
+		Arrays.fill(buttonIds, noIds);
+		Arrays.fill(axisIds, noIds);
+		Arrays.fill(povIds, noIds);
+
+		genericListeners.forEach((control, listeners) -> {
+			int[][] idsByControl;
+			if (control instanceof Button) {
+				idsByControl = buttonIds;
+			} else if (control instanceof Axis) {
+				idsByControl = axisIds;
+			} else {
+				idsByControl = povIds;
+			}
+
+			int index = control.getIndex();
+			if (index >= idsByControl.length) {
+				// not on these joysticks
+				return;
+			}
+
+			int[] ids = new int[listeners.size()];
+			for (int counter = 0; counter < ids.length; counter++) {
+				TypelessListenerCallback listener = listeners.get(counter);
+
+				int id = genericListenerOrder.indexOf(listener);
+				if (id < 0) {
+					id = genericListenerOrder.size();
+					genericListenerOrder.add(listener);
+				}
+				ids[counter] = id;
+			}
+
+			idsByControl[index] = ids;
+		});
+
+		genericPlan = new GenericDispatchPlan(genericListenerOrder.toArray(new TypelessListenerCallback[0]), buttonIds,
+				axisIds, povIds);
+	}
+
 	//
 	//
 	//
 
+	/**
+	 * Get a handle for reading the named button. Reading through a handle is much
+	 * faster than {@link #getButton(String)}, since the name is only looked up
+	 * once.
+	 */
+	public ButtonHandle button(String name) {
+		checkControlName(name, Button.class);
+
+		return new ButtonHandle(this, controlNames.get(name).getIndex());
+	}
+
+	/**
+	 * Get a handle for reading the named axis.
+	 * 
+	 * @see #button(String)
+	 */
+	public AxisHandle axis(String name) {
+		checkControlName(name, Axis.class);
+
+		return new AxisHandle(this, controlNames.get(name).getIndex());
+	}
+
+	/**
+	 * Get a handle for reading the named POV.
+	 * 
+	 * @see #button(String)
+	 */
+	public POVHandle pov(String name) {
+		checkControlName(name, POV.class);
+
+		return new POVHandle(this, controlNames.get(name).getIndex());
+	}
+
 	/**
 	 * Returns the boolean value of a button by name.
 	 * 
@@ -247,14 +532,7 @@ public class ListenerManager {
 	public boolean getButton(String name) {
 		checkControlName(name, Button.class);
 
-		_controlValuesMutex.lock();
-
-		boolean retval;
-
-		retval = currentControls.buttonValues.contains(controlNames.get(name));
-		_controlValuesMutex.unlock();
-
-		return retval;
+		return readButton(controlNames.get(name).getIndex());
 	}
 
 	/**
@@ -270,17 +548,7 @@ public class ListenerManager {
 	public double getAxis(String name) {
 		checkControlName(name, Axis.class);
 
-		_controlValuesMutex.lock();
-		double retval = 0.0;
-
-		Control axis = controlNames.get(name);
-
-		if (currentControls.joystickValues.containsKey(axis)) {
-			retval = currentControls.joystickValues.get(axis);
-		}
-
-		_controlValuesMutex.unlock();
-		return retval;
+		return readAxis(controlNames.get(name).getIndex());
 	}
 
 	/**
@@ -294,104 +562,135 @@ public class ListenerManager {
 	public POVValue getPOV(String name) {
 		checkControlName(name, POV.class);
 
-		_controlValuesMutex.lock();
-		POVValue retval = null;
+		return readPOV(controlNames.get(name).getIndex());
+	}
+
+	// The read functions below retry if the main thread changed the values while
+	// they were being read. Neither side ever waits for the other.
+
+	boolean readButton(int index) {
+		while (true) {
+			ControlValues controls = currentControls;
+			int sequence = controls.startRead();
+
+			boolean value = controls.getButton(index);
+
+			if (controls.validate(sequence)) {
+				return value;
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	double readAxis(int index) {
+		while (true) {
+			ControlValues controls = currentControls;
+			int sequence = controls.startRead();
+
+			double value = index < controls.joystickValues.length ? controls.joystickValues[index] : 0.0;
 
-		retval = currentControls.povValues.get(controlNames.get(name));
+			if (controls.validate(sequence)) {
+				return value;
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	POVValue readPOV(int index) {
+		while (true) {
+			ControlValues controls = currentControls;
+			int sequence = controls.startRead();
+
+			int value = index < controls.povValues.length ? controls.povValues[index] : -1;
 
-		_controlValuesMutex.unlock();
-		return retval;
+			if (controls.validate(sequence)) {
+				return value < 0 ? null : POVValue.fromDirectionValue(value);
+			}
+			Thread.onSpinWait();
+		}
 	}
 
 	/**
-	 * Collect control information from all joysticks.
-	 * 
-	 * @return
+	 * Collect control information from all joysticks into newControls. Doesn't
+	 * allocate.
 	 */
-	ControlValues pollAllJoysticks() {
-		ControlValues newControls = new ControlValues();
+	void pollAllJoysticks(ControlValues newControls) {
+		ControllerInput[] joysticks = _joysticks;
 
-		_controlValuesMutex.lock();
+		// joysticks specified first take precedence, so they're read last
+		for (int index = joysticks.length - 1; index >= 0; --index) {
+			ControllerInput currentJoystick = joysticks[index];
+			boolean firstJoystick = index == joysticks.length - 1;
 
-		for (int index = _joysticks.size() - 1; index >= 0; --index) {
-			Joystick currentJoystick = _joysticks.get(index);
 			// read button values
-			for (int counter = 1; counter <= numButtons; counter++) {
-				boolean buttonValue = currentJoystick.getRawButton(counter);
+			if (firstJoystick) {
+				Arrays.fill(newControls.buttonValues, 0);
+			}
 
-				if (buttonValue) {
-					newControls.buttonValues.add(new Button(counter));
+			for (int counter = 1; counter <= newControls.numButtons; counter++) {
+				if (currentJoystick.getRawButton(counter)) {
+					newControls.buttonValues[counter >> 6] |= 1L << counter;
 				}
 			}
 
-			// Log.debug(LOG_TAG, "Buttons: " + newControls.buttonValues.toString());
-
 			// read joystick values
-			for (int counter = 0; counter <= numAxes; counter++) {
-				Axis currAxis = new Axis(counter);
+			for (int counter = 0; counter < newControls.joystickValues.length; counter++) {
 				double thisJoystickValue = RobotMath.thresh(currentJoystick.getRawAxis(counter), JOYSTICK_DEADZONE);
-				if ((!newControls.joystickValues.containsKey(currAxis))
-						|| Math.abs(thisJoystickValue) > JOYSTICK_DEADZONE) {
-					newControls.joystickValues.put(currAxis, thisJoystickValue);
+				if (firstJoystick || Math.abs(thisJoystickValue) > JOYSTICK_DEADZONE) {
+					newControls.joystickValues[counter] = thisJoystickValue;
 				}
 			}
 
 			// read POV values
-			for (int counter = 0; counter <= numPOVs; counter++) {
-				POVValue value = POVValue.fromWPILibAngle(currentJoystick.getPOV(counter));
-				if (newControls.povValues.size() - 1 <= counter) {
-					POVValue oldValue = newControls.povValues.get(new POV(counter));
-					if (oldValue == null || oldValue.getDirectionValue() == 0) {
-						newControls.povValues.put(new POV(counter), value);
-					}
-
-					// else, use the preexisting value
-				} else {
-					// add a new value
-					newControls.povValues.put(new POV(counter), value);
-
+			for (int counter = 0; counter < newControls.povValues.length; counter++) {
+				int value = POVValue.directionFromWPILibAngle(currentJoystick.getPOV(counter));
+				if (firstJoystick || value != 0) {
+					newControls.povValues[counter] = value;
 				}
-
 			}
 		}
-		_controlValuesMutex.unlock();
-
-		return newControls;
-
 	}
 
-	private void addTypelessListenersForControl(Set<TypelessListenerCallback> listeners, Control control) {
-		// get all its registered listeners
-		Collection<TypelessListenerCallback> foundListeners = genericListeners.get(control);
-
-		if (foundListeners != null && !foundListeners.isEmpty()) {
-			// loop through them
-			for (TypelessListenerCallback callback : foundListeners) {
-				listeners.add(callback);
-			}
-		}
+	/**
+	 * Swap newControls in as the current control values, and make the old current
+	 * values the spare buffer.
+	 * 
+	 * @return The old control values
+	 */
+	private ControlValues swapControls(ControlValues newControls) {
+		ControlValues oldControls = currentControls;
+		currentControls = newControls;
+		spareControls = oldControls;
 
+		return oldControls;
 	}
 
 	/**
 	 * Read controls and invoke listeners. Usually called by the robot main class.
 	 */
 	public void tick() {
-		ControlValues newControls = pollAllJoysticks();
+		if (playback != null) {
+			dispatchPlayback();
+			return;
+		}
 
-		// don't need to lock _controlValuesMutex here because we know it's not going to
-		// be modified, because we're the only ones modifying it
+		if (asyncPolling) {
+			dispatchEvents();
+			return;
+		}
 
-		// save the old controls and swap in the new ones, so that if/when listeners
-		// check they will get the new data
-		ControlValues oldControls = currentControls;
+		// the spare buffer was current last tick, so a slow reader could still be
+		// looking at it
+		ControlValues newControls = spareControls;
+		newControls.beginWrite();
+		pollAllJoysticks(newControls);
+		newControls.endWrite();
+		eventTimestamp = clock.getAsLong();
 
-		// update class variables to match new data
-		{
-			_controlValuesMutex.lock();
-			currentControls = newControls;
-			_controlValuesMutex.unlock();
-		}
+		// swap in the new controls, so that if/when listeners check they will get the
+		// new data
+		ControlValues oldControls = swapControls(newControls);
+		record(newControls);
 
 		invokeListeners(oldControls, newControls);
 
@@ -410,124 +709,308 @@ public class ListenerManager {
 		try {
 			// if the same generic listener is registered for multiple types of control, we
 			// need to execute it only once
-			// so we collect all of the generic listeners to execute in here to de-duplicate
+			// so the plan collects all of the generic listeners to execute to de-duplicate
 			// them.
-			Set<TypelessListenerCallback> genericListenersToInvoke = new HashSet<TypelessListenerCallback>();
+			activePlan = genericPlan;
+			activePlan.clearPending();
 
 			// buttons
 			// --------------------------------------------------------------------------------------------------------------------------------------------------
 
-			// check for pressed buttons
-			for (Button button : newControls.buttonValues) {
-				if (!oldControls.buttonValues.contains(button)) {
-					addTypelessListenersForControl(genericListenersToInvoke, button);
-
-					// get all its registered listeners
-					HashSet<Pair<TypelessListenerCallback, Boolean>> foundListeners = buttonListeners.get(button);
-
-					if (foundListeners != null && !foundListeners.isEmpty()) {
-						// loop through them
-						for (Pair<TypelessListenerCallback, Boolean> callbackPair : foundListeners) {
-							// button-press listener
-							if (callbackPair.right) {
-								callbackPair.left.onListener();
-							}
-						}
+			// check for pressed buttons, then unpressed buttons
+			for (int pass = 0; pass < 2; pass++) {
+				boolean pressed = pass == 0;
+
+				for (int word = 0; word < newControls.buttonValues.length; word++) {
+					long newWord = newControls.buttonValues[word];
+					long changed = newWord ^ oldControls.buttonValues[word];
+					changed &= pressed ? newWord : ~newWord;
+
+					while (changed != 0) {
+						int index = (word << 6) + Long.numberOfTrailingZeros(changed);
+						changed &= changed - 1;
+
+						dispatchButton(index, pressed);
 					}
 				}
 			}
 
-			// check for unpressed buttons
-			for (Button button : oldControls.buttonValues) {
-				if (!newControls.buttonValues.contains(button)) {
-					addTypelessListenersForControl(genericListenersToInvoke, button);
-
-					// get all its registered listeners
-					HashSet<Pair<TypelessListenerCallback, Boolean>> foundListeners = buttonListeners.get(button);
-
-					if (foundListeners != null && !foundListeners.isEmpty()) {
-						// loop through them
-						for (Pair<TypelessListenerCallback, Boolean> callbackPair : foundListeners) {
-							// button-release listener
-							if (!callbackPair.right) {
-								callbackPair.left.onListener();
-							}
-						}
-					}
+			// loop through joystick values
+			for (int index = 0; index < newControls.joystickValues.length; index++) {
+				double newValue = newControls.joystickValues[index];
+
+				// has this particular value changed?
+				if (Math.abs(oldControls.joystickValues[index] - newValue) > .0001) {
+					dispatchAxis(index, newValue);
 				}
 			}
 
-			// loop through joystick values
-			for (Axis axis : newControls.joystickValues.keySet()) {
-				if (currentControls.joystickValues.containsKey(axis)) {
-					// has this particular value changed?
-					if (oldControls.joystickValues.containsKey(axis)) // sanity check to prevent NPE if the axes have
-																		// changed
-					{
-						double newValue = newControls.joystickValues.get(axis);
+			// POVs
+			// --------------------------------------------------------------------------------------------------------------------------------------------------
+
+			for (int index = 0; index < newControls.povValues.length; index++) {
+				int newValue = newControls.povValues[index];
 
-						if (Math.abs(oldControls.joystickValues.get(axis) - newValue) > .0001) {
-							addTypelessListenersForControl(genericListenersToInvoke, axis);
+				if (oldControls.povValues[index] != newValue) {
+					dispatchPOV(index, newValue);
+				}
+			}
+
+			// invoke generic handlers, once they've been merged.
+			activePlan.runPending();
+		}
 
-							// get all its registered listeners
-							HashSet<AxisListenerCallback> foundListeners = axisListeners.get(axis);
+		// we invoke the listeners at the bottom of each of those nested loops, andit's
+		// impractical to repeat the catch block 5 times
+		// so we just have to put the whole thing in the catch block.
+		catch (RuntimeException error) {
+			Log.recoverable("ControlWatcher",
+					"Caught a " + error.getClass().getSimpleName() + " from a control listener: " + error.getMessage());
+			error.printStackTrace();
+		}
+	}
 
-							if (foundListeners != null && !foundListeners.isEmpty()) {
-								// loop through them
-								for (AxisListenerCallback callback : foundListeners) {
+	private void dispatchButton(int index, boolean pressed) {
+		Button button = buttonKeys[index];
+		activePlan.mark(activePlan.buttonIds, index);
 
-									// Log.debug("ListenerManager", "Invoking listener for axis " + axis.getIndex()
-									// + " with value " + newValue);
+		// get all its registered listeners
+		List<Pair<TypelessListenerCallback, Boolean>> foundListeners = buttonListeners.get(button);
 
-									callback.onListener(newValue);
-								}
-							}
+		if (foundListeners != null) {
+			// loop through them
+			for (int counter = 0; counter < foundListeners.size(); counter++) {
+				Pair<TypelessListenerCallback, Boolean> callbackPair = foundListeners.get(counter);
 
-						}
-					}
+				// button-press or button-release listener
+				if (callbackPair.right == pressed) {
+					callbackPair.left.onListener();
 				}
 			}
+		}
+	}
 
-			// POVs
-			// --------------------------------------------------------------------------------------------------------------------------------------------------
+	private void dispatchAxis(int index, double newValue) {
+		Axis axis = axisKeys[index];
+		activePlan.mark(activePlan.axisIds, index);
+
+		// get all its registered listeners
+		List<AxisListenerCallback> foundListeners = axisListeners.get(axis);
+
+		if (foundListeners != null) {
+			// loop through them
+			for (int counter = 0; counter < foundListeners.size(); counter++) {
+				AxisListenerCallback callback = foundListeners.get(counter);
 
-			for (Map.Entry<POV, POVValue> newPOVEntry : newControls.povValues.entrySet()) {
-				POVValue oldPOVValue = oldControls.povValues.get(newPOVEntry.getKey());
+				// Log.debug("ListenerManager", "Invoking listener for axis " + axis.getIndex()
+				// + " with value " + newValue);
 
-				// Log.debug("ListenerManager", "old POV: " + String.valueOf(oldPOVValue) + "
-				// new POV: " + newPOVEntry.toString());
+				callback.onListener(newValue);
+			}
+		}
+	}
 
-				if (oldPOVValue != null && !oldPOVValue.equals(newPOVEntry.getValue())) {
-					addTypelessListenersForControl(genericListenersToInvoke, newPOVEntry.getKey());
+	private void dispatchPOV(int index, int newValue) {
+		POV pov = povKeys[index];
+		activePlan.mark(activePlan.povIds, index);
 
-					// get all its registered listeners
-					HashSet<POVListenerCallback> foundListeners = povListeners.get(newPOVEntry.getKey());
+		// get all its registered listeners
+		List<POVListenerCallback> foundListeners = povListeners.get(pov);
 
-					if (foundListeners != null && !foundListeners.isEmpty()) {
-						// loop through them
-						for (POVListenerCallback callback : foundListeners) {
-							callback.onListener(newPOVEntry.getValue());
-						}
-					}
+		if (foundListeners != null) {
+			// loop through them
+			for (int counter = 0; counter < foundListeners.size(); counter++) {
+				POVListenerCallback callback = foundListeners.get(counter);
+				callback.onListener(POVValue.fromDirectionValue(newValue));
+			}
+		}
+	}
+
+	/**
+	 * Turn on input thread mode. In this mode, {@link #poll()} should be called
+	 * from another thread, faster than the main loop (NarwhalRobot does this for
+	 * managers added with
+	 * {@link org.team3128.common.NarwhalRobot#addListenerManager(ListenerManager, double)}).
+	 * Every change it sees is queued with a timestamp, and tick() runs the
+	 * listeners for them in order. Listeners still only run on the main thread,
+	 * but a button pressed and released between two ticks will still fire both
+	 * listeners.
+	 */
+	public void setAsyncPolling(boolean enabled) {
+		asyncPolling = enabled;
+		pollResyncRequested = true;
+	}
+
+	public boolean isAsyncPolling() {
+		return asyncPolling;
+	}
+
+	/**
+	 * Read the controls and queue up any changes for tick() to dispatch. Only used
+	 * in input thread mode, and must only be called from one thread.
+	 */
+	public void poll() {
+		if (!asyncPolling) {
+			return;
+		}
+
+		PollBuffers buffers = pollBuffers;
+
+		ControlValues newControls = buffers.previous;
+		pollAllJoysticks(newControls);
+		long timestamp = clock.getAsLong();
+
+		ControlValues oldControls = buffers.current;
+		buffers.current = newControls;
+		buffers.previous = oldControls;
+
+		boolean all = buffers.resync;
+		if (pollResyncRequested) {
+			pollResyncRequested = false;
+			all = true;
+		}
+
+		buffers.resync = !queueChanges(oldControls, newControls, all, timestamp);
+	}
+
+	/**
+	 * Queue an event for each control which changed, or for every control if all
+	 * is true.
+	 * 
+	 * @return false if the queue filled up and the rest of the events were
+	 *         dropped
+	 */
+	private boolean queueChanges(ControlValues oldControls, ControlValues newControls, boolean all,
+			long timestamp) {
+
+		for (int index = 1; index <= newControls.numButtons; index++) {
+			boolean pressed = newControls.getButton(index);
+			if (all || pressed != oldControls.getButton(index)) {
+				if (!queueEvent(ControlEventQueue.BUTTON, index, pressed ? 1 : 0, timestamp)) {
+					return false;
 				}
 			}
+		}
 
-			// invoke generic handlers, once they've been merged.
-			for (TypelessListenerCallback listener : genericListenersToInvoke) {
-				listener.onListener();
+		for (int index = 0; index < newControls.joystickValues.length; index++) {
+			double value = newControls.joystickValues[index];
+			if (all || Math.abs(oldControls.joystickValues[index] - value) > .0001) {
+				if (!queueEvent(ControlEventQueue.AXIS, index, value, timestamp)) {
+					return false;
+				}
 			}
 		}
 
-		// we invoke the listeners at the bottom of each of those nested loops, andit's
-		// impractical to repeat the catch block 5 times
-		// so we just have to put the whole thing in the catch block.
-		catch (RuntimeException error) {
+		for (int index = 0; index < newControls.povValues.length; index++) {
+			int value = newControls.povValues[index];
+			if (all || oldControls.povValues[index] != value) {
+				if (!queueEvent(ControlEventQueue.POV, index, value, timestamp)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private boolean queueEvent(byte type, int index, double value, long timestamp) {
+		if (events.offer(type, index, value, timestamp)) {
+			return true;
+		}
+
+		droppedEvents++;
+		return false;
+	}
+
+	/**
+	 * Apply the changes queued by the input thread, in order, and run their
+	 * listeners. Changes which don't differ from the current value (as when the
+	 * input thread sends everything again) are skipped.
+	 */
+	private void dispatchEvents() {
+		try {
+			activePlan = genericPlan;
+			activePlan.clearPending();
+
+			while (events.poll(event)) {
+				ControlValues controls = currentControls;
+				int index = event.index;
+				eventTimestamp = event.timestamp;
+
+				// events queued before recountControls() may be out of range
+				switch (event.type) {
+				case ControlEventQueue.BUTTON:
+					boolean pressed = event.value != 0;
+					if (index > controls.numButtons || controls.getButton(index) == pressed) {
+						continue;
+					}
+
+					controls.beginWrite();
+					controls.setButton(index, pressed);
+					controls.endWrite();
+					record(controls);
+
+					dispatchButton(index, pressed);
+					break;
+
+				case ControlEventQueue.AXIS:
+					if (index >= controls.joystickValues.length
+							|| Math.abs(controls.joystickValues[index] - event.value) <= .0001) {
+						continue;
+					}
+
+					controls.beginWrite();
+					controls.joystickValues[index] = event.value;
+					controls.endWrite();
+					record(controls);
+
+					dispatchAxis(index, event.value);
+					break;
+
+				case ControlEventQueue.POV:
+					int direction = (int) event.value;
+					if (index >= controls.povValues.length || controls.povValues[index] == direction) {
+						continue;
+					}
+
+					controls.beginWrite();
+					controls.povValues[index] = direction;
+					controls.endWrite();
+					record(controls);
+
+					dispatchPOV(index, direction);
+					break;
+				}
+			}
+
+			// invoke generic handlers, once they've been merged.
+			activePlan.runPending();
+		} catch (RuntimeException error) {
 			Log.recoverable("ControlWatcher",
 					"Caught a " + error.getClass().getSimpleName() + " from a control listener: " + error.getMessage());
 			error.printStackTrace();
 		}
 	}
 
+	/**
+	 * @return The FPGA time, in microseconds, at which the control change whose
+	 *         listeners are currently running was read. In input thread mode,
+	 *         this is when the input thread saw it, which can be well before
+	 *         tick().
+	 */
+	public long getEventTimestamp() {
+		return eventTimestamp;
+	}
+
+	/**
+	 * @return The number of control changes dropped because the main thread
+	 *         wasn't calling tick() to keep up with the input thread. Dropped
+	 *         changes are made up for by sending every control's value again.
+	 */
+	public int getDroppedEventCount() {
+		return droppedEvents;
+	}
+
 	/**
 	 * Set the joystick(s) used by the listener manager. Replaces the current set of
 	 * joysticks.
@@ -538,12 +1021,7 @@ public class ListenerManager {
 		if (joysticks.length < 1) {
 			throw new IllegalArgumentException("No joysticks provided!");
 		}
-		_controlValuesMutex.lock();
-
-		_joysticks.clear();
-		Collections.addAll(_joysticks, joysticks);
-
-		_controlValuesMutex.unlock();
+		_joysticks = ControllerInput.of(joysticks);
 	}
 
 	/**
@@ -556,17 +1034,47 @@ public class ListenerManager {
 	 * (called automatically by NarwhalRobot)
 	 */
 	public void recountControls() {
-		_controlValuesMutex.lock();
-
-		Joystick joyToTest = _joysticks.get(0); // all joysticks are assumed to have the same number of buttons
+		ControllerInput joyToTest = _joysticks[0]; // all joysticks are assumed to have the same number of buttons
 		numButtons = joyToTest.getButtonCount();
 		numAxes = joyToTest.getAxisCount() - 1;
 
 		numPOVs = joyToTest.getPOVCount() - 1;
-		_controlValuesMutex.unlock();
 
 		// remake the controls arrays with the correct length
-		currentControls = pollAllJoysticks();
+		ControlValues newControls = new ControlValues(numButtons, numAxes + 1, numPOVs + 1);
+		pollAllJoysticks(newControls);
+
+		buttonKeys = new Button[newControls.buttonValues.length * 64];
+		for (int index = 0; index < buttonKeys.length; index++) {
+			buttonKeys[index] = new Button(index);
+		}
+
+		axisKeys = new Axis[numAxes + 1];
+		for (int index = 0; index < axisKeys.length; index++) {
+			axisKeys[index] = new Axis(index);
+		}
+
+		povKeys = new POV[numPOVs + 1];
+		for (int index = 0; index < povKeys.length; index++) {
+			povKeys[index] = new POV(index);
+		}
+
+		currentControls = newControls;
+		spareControls = new ControlValues(numButtons, numAxes + 1, numPOVs + 1);
+
+		rebuildGenericPlan();
+
+		// NarwhalRobot recounts right after teleopInit(), so a recording started
+		// there needs to start over with the real counts
+		if (recorder != null && !recorder.hasCounts(numButtons, numAxes + 1, numPOVs + 1)) {
+			startRecording();
+		}
+
+		// the input thread starts over with the new counts, and anything it queued
+		// with the old ones is out of date
+		pollBuffers = new PollBuffers(numButtons, numAxes + 1, numPOVs + 1);
+		events.clear();
+		pollResyncRequested = true;
 
 		Log.info(LOG_TAG,
 				String.format("Joystick: %d buttons, %d axes, %d POVs", numButtons, numAxes + 1, numPOVs + 1));
@@ -580,27 +1088,125 @@ public class ListenerManager {
 	 * that their control has gone to zero.
 	 */
 	public void zeroOutListeners() {
-		ControlValues allZeroValues = new ControlValues();
+		ControlValues allZeroValues = spareControls;
+		allZeroValues.beginWrite();
+		allZeroValues.clear();
+		allZeroValues.endWrite();
+
+		// swap in the new controls, so that if/when listeners check they will get the
+		// new data
+		ControlValues oldControls = swapControls(allZeroValues);
+
+		// in input thread mode, anything queued up is older than the zeroing, and
+		// the input thread needs to send the real values again
+		events.clear();
+		pollResyncRequested = true;
+
+		eventTimestamp = clock.getAsLong();
+		record(allZeroValues);
+		invokeListeners(oldControls, allZeroValues);
+	}
+
+	/**
+	 * Start recording the controls. Every time they change, they are saved along
+	 * with the time, until {@link #stopRecording()} is called. The recording can
+	 * be played back later with {@link #startPlayback(InputRecording)}, e.g. to
+	 * repeat a routine a driver did in practice as an auto.
+	 * 
+	 * Recording is done in memory, so it doesn't slow down the main loop. It stops
+	 * on its own if it gets too big to keep in memory.
+	 */
+	public void startRecording() {
+		recorder = new InputRecorder(numButtons, numAxes + 1, numPOVs + 1);
+
+		ControlValues controls = currentControls;
+		recorder.record(clock.getAsLong(), controls.buttonValues, controls.joystickValues,
+				controls.povValues);
+	}
 
-		for (int axisIndex = 0; axisIndex <= numAxes; ++axisIndex) {
-			allZeroValues.joystickValues.put(new Axis(axisIndex), 0.0);
+	/**
+	 * Stop recording the controls.
+	 * 
+	 * @return Everything recorded since {@link #startRecording()}, or null if it
+	 *         wasn't recording
+	 */
+	public InputRecording stopRecording() {
+		if (recorder == null) {
+			return null;
 		}
 
-		for (int povIndex = 0; povIndex <= numPOVs; ++povIndex) {
-			allZeroValues.povValues.put(new POV(povIndex), new POVValue(0));
+		InputRecording recording = recorder.finish();
+		recorder = null;
+
+		Log.info(LOG_TAG, "Recorded " + recording.getFrameCount() + " frames over "
+				+ recording.getDurationMicros() / 1e6 + " seconds");
+		return recording;
+	}
+
+	public boolean isRecording() {
+		return recorder != null;
+	}
+
+	private void record(ControlValues controls) {
+		if (recorder != null) {
+			recorder.record(eventTimestamp, controls.buttonValues, controls.joystickValues, controls.povValues);
 		}
+	}
 
-		// save the old controls and swap in the new ones, so that if/when listeners
-		// check they will get the new data
-		ControlValues oldControls = currentControls;
+	/**
+	 * Play back a recording. Until it ends or {@link #stopPlayback()} is called,
+	 * tick() runs the listeners with the recorded controls instead of the
+	 * joysticks, at the same times after the start as they were recorded, and
+	 * each recorded change is dispatched separately even if several happen
+	 * between ticks.
+	 * 
+	 * The last recorded values stay in place once it ends.
+	 */
+	public void startPlayback(InputRecording recording) {
+		playback = new InputPlayback(recording, clock.getAsLong());
+	}
 
-		{
-			_controlValuesMutex.lock();
-			currentControls = allZeroValues;
-			_controlValuesMutex.unlock();
+	/**
+	 * Go back to reading the joysticks.
+	 */
+	public void stopPlayback() {
+		if (playback == null) {
+			return;
 		}
 
-		invokeListeners(oldControls, allZeroValues);
+		playback = null;
+
+		// the input thread's queued changes were being ignored
+		events.clear();
+		pollResyncRequested = true;
+	}
+
+	/**
+	 * @return Whether a recording is being played back and hasn't reached its end
+	 */
+	public boolean isPlayingBack() {
+		return playback != null && !playback.isFinished();
+	}
+
+	private void dispatchPlayback() {
+		long now = clock.getAsLong();
+
+		while (playback.advance(now)) {
+			ControlValues newControls = spareControls;
+			newControls.beginWrite();
+			playback.copyTo(newControls.buttonValues, newControls.numButtons, newControls.joystickValues,
+					newControls.povValues);
+			newControls.endWrite();
+			eventTimestamp = playback.getStartTime() + playback.getFrameTime();
+
+			ControlValues oldControls = swapControls(newControls);
+			invokeListeners(oldControls, newControls);
+
+			if (playback == null) {
+				// a listener stopped it
+				return;
+			}
+		}
 	}
 
 }
@@ -0,0 +1,25 @@
+package org.team3128.common.listener;
+
+/**
+ * A handle for reading one POV of a {@link ListenerManager}, created by
+ * {@link ListenerManager#pov(String)}.
+ * 
+ * Can be used from any thread.
+ */
+public class POVHandle {
+	private final ListenerManager manager;
+	private final int index;
+
+	POVHandle(ListenerManager manager, int index) {
+		this.manager = manager;
+		this.index = index;
+	}
+
+	/**
+	 * @return The position of the POV as of the last tick, or null if the joystick
+	 *         doesn't have it
+	 */
+	public POVValue get() {
+		return manager.readPOV(index);
+	}
+}
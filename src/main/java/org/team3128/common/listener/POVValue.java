@@ -23,6 +23,17 @@ public class POVValue
 {	
 	int directionValue;
 
+	// POVValues never change, so one of each is shared
+	private static final POVValue[] VALUES = new POVValue[9];
+
+	static
+	{
+		for(int value = 0; value <= 8; value++)
+		{
+			VALUES[value] = new POVValue(value);
+		}
+	}
+
 	public int getDirectionValue() {
 		return directionValue;
 	}
@@ -53,21 +64,40 @@ public class POVValue
 	}
 	
 	/**
-	 * Creates a POV control from the value returned by Joystick.getPOV()
+	 * Gets the shared POV control value for a direction value, without allocating.
+	 * @param directionValue
+	 */
+	public static POVValue fromDirectionValue(int directionValue)
+	{
+		if(directionValue < 0 || directionValue > 8)
+		{
+			throw new IllegalArgumentException("Direction value out of range");
+		}
+		
+		return VALUES[directionValue];
+	}
+	
+	/**
+	 * Converts the value returned by Joystick.getPOV() to a direction value.
 	 * @param angle
 	 */
-	public static POVValue fromWPILibAngle(int angle)
+	public static int directionFromWPILibAngle(int angle)
 	{
 		if(angle < 0)
 		{
-			return new POVValue(0);
+			return 0;
 		}
 		
-		int value = 8 - (angle/ 45);
-		
-
-		
-		return new POVValue(value);
+		return 8 - (angle / 45);
+	}
+	
+	/**
+	 * Creates a POV control from the value returned by Joystick.getPOV()
+	 * @param angle
+	 */
+	public static POVValue fromWPILibAngle(int angle)
+	{
+		return fromDirectionValue(directionFromWPILibAngle(angle));
 	}
 	
 	@Override
@@ -0,0 +1,104 @@
+package org.team3128.common.narwhaldashboard;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decodes messages written by {@link BinaryEncoder}, for Java dashboard clients
+ * and tools. Remembers the key names from schema messages so that values can be
+ * reported by name.
+ */
+public class BinaryDecoder {
+    public interface Listener {
+        void onSchema(int id, DashboardStore.Type type, String name);
+
+        void onNumber(String key, double value);
+
+        void onBoolean(String key, boolean value);
+
+        void onString(String key, String value);
+    }
+
+    private static final DashboardStore.Type[] TYPES = DashboardStore.Type.values();
+
+    private final Listener listener;
+    private String[] names = new String[64];
+
+    public BinaryDecoder(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return The name of a key id from the schema, or null if it hasn't been
+     *         received
+     */
+    public String getName(int id) {
+        return id < names.length ? names[id] : null;
+    }
+
+    /**
+     * Decode one binary frame.
+     *
+     * @throws IllegalArgumentException if the message is malformed or uses an id
+     *                                  which hasn't been in a schema message
+     */
+    public void decode(ByteBuffer message) {
+        ByteBuffer in = message.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            byte messageType = in.get();
+            int count = in.getShort() & 0xFFFF;
+
+            for (int entry = 0; entry < count; entry++) {
+                int id = in.getShort() & 0xFFFF;
+                DashboardStore.Type type = TYPES[in.get()];
+
+                if (messageType == BinaryEncoder.SCHEMA) {
+                    String name = readString(in);
+                    if (id >= names.length) {
+                        names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+                    }
+                    names[id] = name;
+
+                    listener.onSchema(id, type, name);
+                    continue;
+                } else if (messageType != BinaryEncoder.VALUES) {
+                    throw new IllegalArgumentException("Unknown message type " + messageType);
+                }
+
+                String key = getName(id);
+                if (key == null) {
+                    throw new IllegalArgumentException("Value for key id " + id + " which is not in the schema");
+                }
+
+                switch (type) {
+                case NUMBER:
+                    listener.onNumber(key, in.getDouble());
+                    break;
+                case BOOLEAN:
+                    listener.onBoolean(key, in.get() != 0);
+                    break;
+                default:
+                    listener.onString(key, readString(in));
+                    break;
+                }
+            }
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed NarwhalDashboard message", e);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length == BinaryEncoder.NULL_STRING) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
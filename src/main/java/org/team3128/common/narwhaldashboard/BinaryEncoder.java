@@ -0,0 +1,195 @@
+package org.team3128.common.narwhaldashboard;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes NarwhalDashboard's binary protocol into a reusable buffer. Clients
+ * which send "protocol:binary" get their values this way instead of as JSON.
+ *
+ * Every message is a binary WebSocket frame, little-endian, starting with a
+ * one byte message type and a two byte entry count:
+ *
+ * <pre>
+ * SCHEMA: count * [u16 id] [u8 type] [string name]
+ * VALUES: count * [u16 id] [u8 type] [value]
+ * </pre>
+ *
+ * A schema message is sent before any value which uses a new id. Types are
+ * {@link DashboardStore.Type} ordinals. Numbers are 8 byte doubles, booleans a
+ * single 0 or 1 byte, and strings a u16 byte length followed by UTF-8 (length
+ * 0xFFFF means null). Strings over 0xFFFE bytes are cut short at a character
+ * boundary. Values carry their type because a key's type can change if it gets
+ * put with a different type.
+ *
+ * The auto program and limelight lists are still sent to binary clients as
+ * JSON text frames. Not thread safe; owned by the dashboard publisher thread.
+ */
+public class BinaryEncoder {
+    public static final byte SCHEMA = 1;
+    public static final byte VALUES = 2;
+
+    public static final int NULL_STRING = 0xFFFF;
+
+    /**
+     * Longest string in bytes. Longer ones are cut short at a character
+     * boundary.
+     */
+    public static final int MAX_STRING_LENGTH = NULL_STRING - 1;
+
+    private static final int HEADER_LENGTH = 3;
+
+    private byte[] buffer;
+    private ByteBuffer wrapper;
+    private int length;
+    private int count;
+
+    public BinaryEncoder(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+        wrapper = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Start a new schema message.
+     */
+    public BinaryEncoder beginSchema() {
+        return begin(SCHEMA);
+    }
+
+    /**
+     * Start a new values message.
+     */
+    public BinaryEncoder beginValues() {
+        return begin(VALUES);
+    }
+
+    private BinaryEncoder begin(byte messageType) {
+        length = HEADER_LENGTH;
+        count = 0;
+        buffer[0] = messageType;
+        return this;
+    }
+
+    public BinaryEncoder schemaEntry(int id, DashboardStore.Type type, String name) {
+        entry(id, type);
+        writeString(name);
+        return this;
+    }
+
+    public BinaryEncoder number(int id, double value) {
+        entry(id, DashboardStore.Type.NUMBER);
+        writeLong(Double.doubleToRawLongBits(value));
+        return this;
+    }
+
+    public BinaryEncoder bool(int id, boolean value) {
+        entry(id, DashboardStore.Type.BOOLEAN);
+        writeByte(value ? 1 : 0);
+        return this;
+    }
+
+    public BinaryEncoder string(int id, String value) {
+        entry(id, DashboardStore.Type.STRING);
+        writeString(value);
+        return this;
+    }
+
+    /**
+     * @return The number of entries in the current message
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return A view of the message. Valid until the next write. The same
+     *         ByteBuffer object is returned every time.
+     */
+    public ByteBuffer toByteBuffer() {
+        buffer[1] = (byte) count;
+        buffer[2] = (byte) (count >> 8);
+
+        wrapper.clear();
+        wrapper.limit(length);
+        return wrapper;
+    }
+
+    private void entry(int id, DashboardStore.Type type) {
+        writeShort(id);
+        writeByte(type.ordinal());
+        count++;
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            writeShort(NULL_STRING);
+            return;
+        }
+
+        // length is filled in once the string has been encoded
+        int lengthIndex = length;
+        writeShort(0);
+
+        int index = 0;
+        while (index < value.length()) {
+            int codePoint = value.codePointAt(index);
+            int chars = Character.charCount(codePoint);
+
+            // an unpaired surrogate can't be encoded, so it's sent as '?' the way
+            // String.getBytes() does
+            if (Character.isSurrogate((char) codePoint) && chars == 1) {
+                codePoint = '?';
+            }
+
+            int bytes = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (length - lengthIndex - 2 + bytes > MAX_STRING_LENGTH) {
+                // too long, so cut it off before the character that doesn't fit
+                break;
+            }
+
+            if (bytes == 1) {
+                writeByte(codePoint);
+            } else if (bytes == 2) {
+                writeByte(0xC0 | (codePoint >> 6));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else if (bytes == 3) {
+                writeByte(0xE0 | (codePoint >> 12));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else {
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            }
+
+            index += chars;
+        }
+
+        int stringLength = length - lengthIndex - 2;
+        buffer[lengthIndex] = (byte) stringLength;
+        buffer[lengthIndex + 1] = (byte) (stringLength >> 8);
+    }
+
+    private void writeShort(int value) {
+        writeByte(value);
+        writeByte(value >> 8);
+    }
+
+    private void writeLong(long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            writeByte((int) (value >> shift));
+        }
+    }
+
+    private void writeByte(int b) {
+        if (length == buffer.length) {
+            byte[] newBuffer = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, newBuffer, 0, length);
+            buffer = newBuffer;
+            wrapper = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        buffer[length++] = (byte) b;
+    }
+}
@@ -5,6 +5,57 @@ import java.util.List;
 public class ClientInformation {
     public int id;
 
-    public boolean autosPushed;
+    /**
+     * The version of the auto program list this client was last sent. -1 means
+     * it has never been sent the list.
+     */
+    int autosVersion = -1;
+
+    /**
+     * The store version this client was last sent. It will next be sent every key
+     * which changed after this version. -1 means it needs everything.
+     */
+    long lastVersion = -1;
+
+    /**
+     * Whether this client is sent values with the binary protocol (see
+     * {@link BinaryEncoder}) instead of JSON.
+     */
+    boolean binary;
+
+    /**
+     * The number of keys whose ids have been sent to this binary client in schema
+     * messages.
+     */
+    int schemaSize;
+
+    /**
+     * The keys this client is sent, and how often.
+     */
+    Subscription subscription = NarwhalDashboard.DEFAULT_SUBSCRIPTION;
+
+    /**
+     * Frames waiting in the connection's send queue, as of the last update.
+     */
+    int queuedFrames;
+
+    /**
+     * Whether updates are being skipped because the client is falling behind.
+     */
+    boolean congested;
+
+    /**
+     * How many updates were skipped because the client was falling behind.
+     */
+    int droppedFrames;
+
+    // set from the WebSocket thread, handled by the publisher thread
+    volatile boolean resyncRequested;
+    volatile boolean binaryRequested;
+    volatile Subscription requestedSubscription = NarwhalDashboard.DEFAULT_SUBSCRIPTION;
+
+    // used by the publisher thread while grouping clients by version
+    boolean published;
+
     public List<String> unpushedData;
 }
\ No newline at end of file
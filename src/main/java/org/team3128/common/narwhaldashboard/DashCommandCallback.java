@@ -0,0 +1,9 @@
+package org.team3128.common.narwhaldashboard;
+
+/**
+ * A callback for a command sent by NarwhalDashboard, registered with
+ * {@link NarwhalDashboard#addCommand(String, DashCommandCallback)}
+ */
+public interface DashCommandCallback {
+    void process(DashboardMessage message);
+}
@@ -0,0 +1,269 @@
+package org.team3128.common.narwhaldashboard;
+
+import org.java_websocket.WebSocket;
+
+/**
+ * A message from a NarwhalDashboard client, split into colon-separated fields,
+ * e.g. "numData:shooter_rpm:3500,0.5". Fields and numbers are read straight out
+ * of the original string, so reading a message doesn't create garbage unless
+ * getField() is used.
+ *
+ * Messages are pooled and reused: don't keep a reference to one after the
+ * callback it was passed to returns.
+ */
+public class DashboardMessage {
+    /**
+     * Anything after this many fields is part of the last field.
+     */
+    public static final int MAX_FIELDS = 8;
+
+    public static final int MAX_NUMBERS = 64;
+
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private WebSocket connection;
+    private String message;
+
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    private int fieldCount;
+
+    private final double[] numbers = new double[MAX_NUMBERS];
+    private int numberCount;
+
+    // set by NarwhalDashboard when the message is queued for the main thread
+    DashCommandCallback callback;
+
+    /**
+     * Point this message at a new string and find its fields.
+     */
+    void set(WebSocket connection, String message) {
+        this.connection = connection;
+        this.message = message;
+
+        fieldCount = 0;
+        numberCount = 0;
+
+        int start = 0;
+        while (true) {
+            int end = fieldCount == MAX_FIELDS - 1 ? -1 : message.indexOf(':', start);
+            if (end < 0) {
+                end = message.length();
+            }
+
+            fieldStarts[fieldCount] = start;
+            fieldEnds[fieldCount] = end;
+            fieldCount++;
+
+            if (end == message.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Forget the message, so that the pool doesn't keep it alive.
+     */
+    void clear() {
+        connection = null;
+        message = null;
+        callback = null;
+    }
+
+    /**
+     * @return The client which sent this message
+     */
+    public WebSocket getConnection() {
+        return connection;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return The field as a new string, or null if there aren't that many fields
+     */
+    public String getField(int index) {
+        if (index >= fieldCount) {
+            return null;
+        }
+
+        return message.substring(fieldStarts[index], fieldEnds[index]);
+    }
+
+    /**
+     * Compare a field to a string without creating a substring.
+     */
+    public boolean fieldEquals(int index, String value) {
+        if (index >= fieldCount) {
+            return false;
+        }
+
+        int length = fieldEnds[index] - fieldStarts[index];
+        return length == value.length() && message.regionMatches(fieldStarts[index], value, 0, length);
+    }
+
+    /**
+     * Parse a field holding a comma-separated list of numbers, e.g. "1.5,-2,3e4".
+     * The numbers can then be read with getNumber() or getNumbers(). Trailing
+     * empty entries, as in "1,2,", are skipped, the same as String.split().
+     *
+     * @return How many numbers there were
+     * @throws NumberFormatException if any of them isn't a number, or there are
+     *                               more than MAX_NUMBERS
+     */
+    public int parseNumbers(int index) {
+        numberCount = 0;
+
+        if (index >= fieldCount) {
+            return 0;
+        }
+
+        int start = fieldStarts[index];
+        int fieldEnd = fieldEnds[index];
+
+        while (fieldEnd > start && message.charAt(fieldEnd - 1) == ',') {
+            fieldEnd--;
+        }
+        if (start == fieldEnd) {
+            return 0;
+        }
+
+        while (true) {
+            int end = message.indexOf(',', start);
+            if (end < 0 || end > fieldEnd) {
+                end = fieldEnd;
+            }
+
+            if (numberCount == MAX_NUMBERS) {
+                numberCount = 0;
+                throw new NumberFormatException("More than " + MAX_NUMBERS + " numbers in one field");
+            }
+            numbers[numberCount++] = parseDouble(message, start, end);
+
+            if (end == fieldEnd) {
+                break;
+            }
+            start = end + 1;
+        }
+
+        return numberCount;
+    }
+
+    /**
+     * @return The number of numbers found by the last call to parseNumbers()
+     */
+    public int getNumberCount() {
+        return numberCount;
+    }
+
+    public double getNumber(int index) {
+        return numbers[index];
+    }
+
+    /**
+     * @return The buffer parseNumbers() wrote to. Only the first getNumberCount()
+     *         entries are valid.
+     */
+    public double[] getNumbers() {
+        return numbers;
+    }
+
+    @Override
+    public String toString() {
+        return message;
+    }
+
+    /**
+     * Parse a decimal number out of part of a string. Numbers with up to 18
+     * significant digits and a small enough exponent are converted exactly, the
+     * same as Double.parseDouble(), without allocating. Anything else falls back
+     * to Double.parseDouble().
+     */
+    static double parseDouble(String string, int start, int end) {
+        int index = start;
+        boolean negative = false;
+
+        if (index < end && (string.charAt(index) == '-' || string.charAt(index) == '+')) {
+            negative = string.charAt(index) == '-';
+            index++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        boolean seenPoint = false;
+
+        for (; index < end; index++) {
+            char c = string.charAt(index);
+
+            if (c >= '0' && c <= '9') {
+                anyDigits = true;
+
+                if (mantissa == 0 && c == '0') {
+                    // leading zeros aren't significant
+                } else if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                } else {
+                    return Double.parseDouble(string.substring(start, end));
+                }
+
+                if (seenPoint) {
+                    exponent--;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+
+        if (!anyDigits) {
+            // NaN, Infinity, or not a number at all
+            return Double.parseDouble(string.substring(start, end));
+        }
+
+        if (index < end) {
+            char c = string.charAt(index);
+            if (c != 'e' && c != 'E') {
+                return Double.parseDouble(string.substring(start, end));
+            }
+            index++;
+
+            boolean negativeExponent = false;
+            if (index < end && (string.charAt(index) == '-' || string.charAt(index) == '+')) {
+                negativeExponent = string.charAt(index) == '-';
+                index++;
+            }
+
+            if (index == end) {
+                return Double.parseDouble(string.substring(start, end));
+            }
+
+            int explicitExponent = 0;
+            for (; index < end; index++) {
+                c = string.charAt(index);
+                if (c < '0' || c > '9' || explicitExponent > 1000) {
+                    return Double.parseDouble(string.substring(start, end));
+                }
+                explicitExponent = explicitExponent * 10 + (c - '0');
+            }
+
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        // exact as long as both the mantissa and the power of ten are exactly
+        // representable, which holds below 2^53 and 10^22
+        if (mantissa >= (1L << 53) || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(string.substring(start, end));
+        }
+
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,200 @@
+package org.team3128.common.narwhaldashboard;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.team3128.common.utility.Log;
+
+/**
+ * Typed, versioned key-value store behind NarwhalDashboard.
+ *
+ * Every key gets a fixed slot when it is registered (or first put). Numbers and
+ * booleans are stored as primitives, so setting them never allocates; values
+ * are only turned into text by the publisher when they're sent. Every change to
+ * a value stamps its slot with a new, increasing version number, which lets the
+ * publisher send each client only the keys which changed since the last
+ * version it was sent.
+ *
+ * Each slot is guarded by a seqlock: writers (from any thread) briefly take the
+ * slot by making its sequence number odd, and readers never block, retrying if
+ * the sequence number changed while they read. Readers always see a value
+ * together with the version it was written at.
+ */
+public class DashboardStore {
+    public enum Type {
+        NUMBER, BOOLEAN, STRING;
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    /**
+     * A copy of one slot, filled in by read(). Reused by the reader.
+     */
+    public static class Value {
+        public Type type;
+        public double number;
+        public boolean bool;
+        public String string;
+        public long version;
+    }
+
+    private final int capacity;
+
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+    private final String[] keys;
+
+    // guarded by the slot's sequence number
+    private final AtomicIntegerArray sequences;
+    private final byte[] types;
+    private final long[] bits;
+    private final String[] strings;
+    private final long[] versions;
+
+    private volatile int size = 0;
+    private final AtomicLong version = new AtomicLong(0);
+
+    public DashboardStore(int capacity) {
+        this.capacity = capacity;
+
+        keys = new String[capacity];
+
+        sequences = new AtomicIntegerArray(capacity);
+        types = new byte[capacity];
+        bits = new long[capacity];
+        strings = new String[capacity];
+        versions = new long[capacity];
+    }
+
+    /**
+     * Get the slot for a key, adding it with the given type if it doesn't exist
+     * yet.
+     *
+     * @return The slot, or -1 if the store is full.
+     */
+    public int getSlot(String key, Type type) {
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            return slot;
+        }
+
+        return addSlot(key, type);
+    }
+
+    private synchronized int addSlot(String key, Type type) {
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            return slot;
+        }
+
+        if (size == capacity) {
+            Log.recoverable("NarwhalDashboard", "Too many dashboard keys, ignoring \"" + key + "\"");
+            slots.put(key, -1);
+            return -1;
+        }
+
+        int newSlot = size;
+        keys[newSlot] = key;
+        types[newSlot] = (byte) type.ordinal();
+
+        // publish the key before anyone can see the new size or slot
+        size = newSlot + 1;
+        slots.put(key, newSlot);
+
+        return newSlot;
+    }
+
+    public void setNumber(int slot, double value) {
+        write(slot, Type.NUMBER, Double.doubleToLongBits(value), null);
+    }
+
+    public void setBoolean(int slot, boolean value) {
+        write(slot, Type.BOOLEAN, value ? 1 : 0, null);
+    }
+
+    public void setString(int slot, String value) {
+        write(slot, Type.STRING, 0, value);
+    }
+
+    /**
+     * Set the value of a slot. Does nothing, and doesn't create a new version, if
+     * the value hasn't changed.
+     */
+    private void write(int slot, Type type, long newBits, String newString) {
+        if (slot < 0) {
+            return;
+        }
+
+        int sequence;
+        while (true) {
+            sequence = sequences.get(slot);
+            if ((sequence & 1) == 0 && sequences.compareAndSet(slot, sequence, sequence + 1)) {
+                break;
+            }
+            Thread.onSpinWait();
+        }
+        VarHandle.storeStoreFence();
+
+        byte typeIndex = (byte) type.ordinal();
+        boolean changed = types[slot] != typeIndex || bits[slot] != newBits || versions[slot] == 0
+                || (newString == null ? strings[slot] != null : !newString.equals(strings[slot]));
+
+        if (changed) {
+            types[slot] = typeIndex;
+            bits[slot] = newBits;
+            strings[slot] = newString;
+            versions[slot] = version.incrementAndGet();
+        }
+
+        sequences.set(slot, sequence + 2);
+    }
+
+    /**
+     * Copy a consistent snapshot of a slot into out. Never blocks.
+     */
+    public void read(int slot, Value out) {
+        while (true) {
+            int sequence = sequences.get(slot);
+            if ((sequence & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            byte type = types[slot];
+            long valueBits = bits[slot];
+            String string = strings[slot];
+            long slotVersion = versions[slot];
+
+            VarHandle.loadLoadFence();
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+
+            out.type = TYPES[type];
+            out.number = Double.longBitsToDouble(valueBits);
+            out.bool = valueBits != 0;
+            out.string = string;
+            out.version = slotVersion;
+            return;
+        }
+    }
+
+    /**
+     * @return The version of the most recent change to any key.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return The number of slots in use. Slots are numbered from 0 to size() - 1.
+     */
+    public int size() {
+        return size;
+    }
+
+    public String getKey(int slot) {
+        return keys[slot];
+    }
+}
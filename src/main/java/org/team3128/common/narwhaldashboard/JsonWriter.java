@@ -0,0 +1,272 @@
+package org.team3128.common.narwhaldashboard;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Builds a JSON document as UTF-8 directly into a reusable byte buffer, so that
+ * serializing the dashboard state every update doesn't create garbage. Not
+ * thread safe; owned by the dashboard publisher thread.
+ */
+public class JsonWriter {
+    private static final int MAX_DEPTH = 16;
+
+    private byte[] buffer;
+    private ByteBuffer wrapper;
+    private int length;
+
+    // whether the object/array at each nesting depth already has an element
+    private final boolean[] hasElement = new boolean[MAX_DEPTH];
+    private int depth;
+
+    // set after a key is written, so the value doesn't get a comma
+    private boolean afterKey;
+
+    private int markLength;
+    private int markDepth;
+    private boolean markHasElement;
+
+    public JsonWriter(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+        wrapper = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Clear the buffer to start writing a new document.
+     */
+    public JsonWriter reset() {
+        length = 0;
+        depth = 0;
+        afterKey = false;
+        return this;
+    }
+
+    /**
+     * Remember the current position, so that rewind() can come back to it. Used to
+     * reuse a common prefix between two documents.
+     */
+    public JsonWriter mark() {
+        markLength = length;
+        markDepth = depth;
+        markHasElement = hasElement[depth];
+        return this;
+    }
+
+    /**
+     * Throw away everything written since the last call to mark().
+     */
+    public JsonWriter rewind() {
+        length = markLength;
+        depth = markDepth;
+        hasElement[depth] = markHasElement;
+        afterKey = false;
+        return this;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public JsonWriter beginObject() {
+        separate();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        depth--;
+        writeByte('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        separate();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        depth--;
+        writeByte(']');
+        return this;
+    }
+
+    public JsonWriter key(String key) {
+        separate();
+        writeString(key);
+        writeByte(':');
+        afterKey = true;
+        return this;
+    }
+
+    /**
+     * Write a string value. null is written as the string "null", which is what
+     * NarwhalDashboard clients expect.
+     */
+    public JsonWriter value(String value) {
+        separate();
+        writeString(value == null ? "null" : value);
+        return this;
+    }
+
+    /**
+     * Write a number as a string value, e.g. "1.5". NarwhalDashboard sends all
+     * values as strings.
+     */
+    public JsonWriter value(double value) {
+        separate();
+        writeByte('"');
+        writeNumber(value);
+        writeByte('"');
+        return this;
+    }
+
+    /**
+     * Write a boolean as a string value, "true" or "false".
+     */
+    public JsonWriter value(boolean value) {
+        separate();
+        writeAscii(value ? "\"true\"" : "\"false\"");
+        return this;
+    }
+
+    /**
+     * @return A view of the document. Valid until the next write. The same
+     *         ByteBuffer object is returned every time, so each caller must use
+     *         it before the next call.
+     */
+    public ByteBuffer toByteBuffer() {
+        wrapper.clear();
+        wrapper.limit(length);
+        return wrapper;
+    }
+
+    private void push() {
+        depth++;
+        hasElement[depth] = false;
+        afterKey = false;
+    }
+
+    private void separate() {
+        if (afterKey) {
+            afterKey = false;
+            return;
+        }
+
+        if (depth > 0) {
+            if (hasElement[depth]) {
+                writeByte(',');
+            }
+            hasElement[depth] = true;
+        }
+    }
+
+    private void writeString(String value) {
+        writeByte('"');
+
+        for (int index = 0; index < value.length(); index++) {
+            char c = value.charAt(index);
+
+            if (c == '"' || c == '\\') {
+                writeByte('\\');
+                writeByte(c);
+            } else if (c < 0x20) {
+                writeAscii("\\u00");
+                writeByte(Character.forDigit(c >> 4, 16));
+                writeByte(Character.forDigit(c & 0xF, 16));
+            } else if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && index + 1 < value.length()) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++index));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+
+        writeByte('"');
+    }
+
+    /**
+     * Writes a double like Double.toString() does, rounded to 9 decimal places,
+     * without allocating. Falls back to Double.toString() for very large, very
+     * small or non-finite values.
+     */
+    private void writeNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || (value != 0 && Math.abs(value) < 1e-3)
+                || Math.abs(value) >= 1e7) {
+            writeAscii(Double.toString(value));
+            return;
+        }
+
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            writeByte('-');
+            value = -value;
+        }
+
+        // round to 9 decimal places, which is plenty for a dashboard, and then
+        // trim trailing zeros, keeping at least one decimal like Double.toString()
+        long scaled = Math.round(value * 1e9);
+        long whole = scaled / 1_000_000_000L;
+        long fraction = scaled % 1_000_000_000L;
+
+        writeLong(whole);
+        writeByte('.');
+
+        if (fraction == 0) {
+            writeByte('0');
+            return;
+        }
+
+        int digits = 9;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+
+        for (long divisor = pow10(digits - 1); divisor > 0; divisor /= 10) {
+            writeByte('0' + (int) (fraction / divisor % 10));
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value >= 10) {
+            writeLong(value / 10);
+        }
+        writeByte('0' + (int) (value % 10));
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+
+    private void writeAscii(String value) {
+        for (int index = 0; index < value.length(); index++) {
+            writeByte(value.charAt(index));
+        }
+    }
+
+    private void writeByte(int b) {
+        if (length == buffer.length) {
+            byte[] newBuffer = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, newBuffer, 0, length);
+            buffer = newBuffer;
+            wrapper = ByteBuffer.wrap(buffer);
+        }
+
+        buffer[length++] = (byte) b;
+    }
+}
@@ -2,14 +2,26 @@ package org.team3128.common.narwhaldashboard;
 
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.TextFrame;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 
 import org.team3128.common.utility.Log;
+import org.team3128.common.utility.TelemetryRecorder;
 import org.team3128.common.hardware.limelight.*;
 
 import edu.wpi.first.wpilibj2.command.Command;
@@ -22,17 +34,101 @@ public class NarwhalDashboard extends WebSocketServer {
         return UPDATE_WAVELENGTH;
     }
 
-    private static HashMap<String, String> data = new HashMap<String, String>();
+    private static final int MAX_KEYS = 1024;
+
+    /**
+     * What clients get until they send a subscribe message: every key, once per
+     * UPDATE_WAVELENGTH.
+     */
+    static final Subscription DEFAULT_SUBSCRIPTION = new Subscription(new String[0], 1000.0 / UPDATE_WAVELENGTH);
+
+    private static DashboardStore data = new DashboardStore(MAX_KEYS);
+
+    /**
+     * A client with more than this many frames waiting to go out is skipped until
+     * it catches up. Since it only ever gets sent the keys which changed since its
+     * last update, the update it gets afterwards has the newest value of
+     * everything it missed.
+     */
+    private static final int MAX_QUEUED_FRAMES = 4;
+
+    private static final int QUEUED_FRAMES_SLOT = registerNumber("dashboard/max_queued_frames");
+    private static final int DROPPED_FRAMES_SLOT = registerNumber("dashboard/dropped_frames");
+    private static long droppedFrames = 0;
     private static LinkedHashMap<String, Command> autoPrograms = new LinkedHashMap<String, Command>();
 
     private static HashMap<String, DashButtonCallback> buttons = new HashMap<String, DashButtonCallback>();
     private static HashMap<String, NumericalDataCallback> numDataCallbacks = new HashMap<String, NumericalDataCallback>();
 
-    private static HashMap<String, Limelight> limelights = new HashMap<String, Limelight>();
+    private static ConcurrentHashMap<String, Limelight> limelights = new ConcurrentHashMap<String, Limelight>();
+
+    private static ConcurrentHashMap<String, TelemetryRecorder> telemetryRecorders = new ConcurrentHashMap<String, TelemetryRecorder>();
 
-    private static String selectedAuto = null;
-    private static String selectedLimelight = null;
-    private static boolean pushed = false;
+    private static volatile String selectedAuto = null;
+    private static volatile String selectedLimelight = null;
+
+    // snapshot of the auto program names taken by pushAutos(), since autoPrograms
+    // is modified from the main thread
+    private static volatile String[] autoNames = new String[0];
+    private static volatile int autosVersion = 0;
+
+    private static ConcurrentHashMap<WebSocket, ClientInformation> clients = new ConcurrentHashMap<WebSocket, ClientInformation>();
+    private static int nextClientId = 0;
+
+    // clients which ask for the same keys at the same rate share a Subscription,
+    // so they get updated together
+    private static ConcurrentHashMap<String, Subscription> subscriptions = new ConcurrentHashMap<String, Subscription>();
+
+    private static Thread publisherThread;
+
+    /**
+     * A command clients can send, e.g. "button".
+     */
+    private static class DashCommand {
+        final String verb;
+        final DashCommandCallback callback;
+        final boolean immediate;
+
+        DashCommand(String verb, DashCommandCallback callback, boolean immediate) {
+            this.verb = verb;
+            this.callback = callback;
+            this.immediate = immediate;
+        }
+    }
+
+    private static volatile DashCommand[] commands = new DashCommand[0];
+
+    /**
+     * How many received messages can be waiting for the main thread at once.
+     * Messages received when it's full are dropped.
+     */
+    private static final int MESSAGE_QUEUE_CAPACITY = 64;
+
+    // messages waiting for the main thread, and empty ones to receive into
+    private static ArrayBlockingQueue<DashboardMessage> pendingMessages = new ArrayBlockingQueue<DashboardMessage>(
+            MESSAGE_QUEUE_CAPACITY);
+    private static ArrayBlockingQueue<DashboardMessage> freeMessages = new ArrayBlockingQueue<DashboardMessage>(
+            MESSAGE_QUEUE_CAPACITY);
+
+    // reused by processNumData(), indexed by length. Main thread only.
+    private static double[][] numDataArrays = new double[DashboardMessage.MAX_NUMBERS + 1][];
+
+    static {
+        for (int i = 0; i < MESSAGE_QUEUE_CAPACITY; i++) {
+            freeMessages.offer(new DashboardMessage());
+        }
+
+        addCommand("protocol", NarwhalDashboard::processProtocol, true);
+        addCommand("subscribe", NarwhalDashboard::processSubscribe, true);
+        addCommand("resync", NarwhalDashboard::processResync, true);
+        addCommand("telemetry", NarwhalDashboard::processTelemetry, true);
+
+        addCommand("selectAuto", NarwhalDashboard::processSelectAuto);
+        addCommand("numData", NarwhalDashboard::processNumData);
+        addCommand("button", NarwhalDashboard::processButton);
+        addCommand("selectLimelight", NarwhalDashboard::processSelectLimelight);
+        addCommand("selectPipeline", NarwhalDashboard::processSelectPipeline);
+    }
 
     public NarwhalDashboard(int port) throws UnknownHostException {
         super(new InetSocketAddress(port));
@@ -42,25 +138,75 @@ public class NarwhalDashboard extends WebSocketServer {
         super(address);
     }
 
+    /**
+     * Registers a numerical key ahead of time, so that it can be updated by slot
+     * with {@link #put(int, double)} without looking up the key every time.
+     * 
+     * @return The slot for the key, or -1 if there is no room for more keys
+     */
+    public static int registerNumber(String key) {
+        return data.getSlot(key, DashboardStore.Type.NUMBER);
+    }
+
+    /**
+     * Registers a boolean key ahead of time, so that it can be updated by slot
+     * with {@link #put(int, boolean)}.
+     */
+    public static int registerBoolean(String key) {
+        return data.getSlot(key, DashboardStore.Type.BOOLEAN);
+    }
+
+    /**
+     * Registers a string key ahead of time, so that it can be updated by slot with
+     * {@link #put(int, String)}.
+     */
+    public static int registerString(String key) {
+        return data.getSlot(key, DashboardStore.Type.STRING);
+    }
+
+    /**
+     * Publishes a numerical value to a slot returned by
+     * {@link #registerNumber(String)}. Doesn't allocate.
+     */
+    public static void put(int slot, double value) {
+        data.setNumber(slot, value);
+    }
+
+    /**
+     * Publishes a boolean value to a slot returned by
+     * {@link #registerBoolean(String)}. Doesn't allocate.
+     */
+    public static void put(int slot, boolean value) {
+        data.setBoolean(slot, value);
+    }
+
+    /**
+     * Publishes a string value to a slot returned by
+     * {@link #registerString(String)}.
+     */
+    public static void put(int slot, String value) {
+        data.setString(slot, value);
+    }
+
     /**
      * Publishes a numerical value to NarwhalDashboard
      */
     public static void put(String key, double value) {
-        put(key, Double.toString(value));
+        data.setNumber(data.getSlot(key, DashboardStore.Type.NUMBER), value);
     }
 
     /**
      * Publishes a boolean value to NarwhalDashboard
      */
     public static void put(String key, boolean value) {
-        put(key, Boolean.toString(value));
+        data.setBoolean(data.getSlot(key, DashboardStore.Type.BOOLEAN), value);
     }
 
     /**
      * Publishes a string value to NarwhalDashboard
      */
     public static void put(String key, String value) {
-        data.put(key, value);
+        data.setString(data.getSlot(key, DashboardStore.Type.STRING), value);
     }
 
     public static void addButton(String key, DashButtonCallback callback) {
@@ -92,13 +238,23 @@ public class NarwhalDashboard extends WebSocketServer {
      * Sends new set of autonomous programs to NarwhalDashboard.
      */
     public static void pushAutos() {
-        pushed = false;
+        autoNames = autoPrograms.keySet().toArray(new String[0]);
+        autosVersion++;
     }
 
     public static void addLimelight(Limelight light) {
         limelights.put(light.hostname, light);
     }
 
+    /**
+     * Lets dashboards download a telemetry recorder's data, by sending
+     * "telemetry:name". The data is sent back as
+     * {"telemetry": name, "csv": data}.
+     */
+    public static void addTelemetry(TelemetryRecorder recorder) {
+        telemetryRecorders.put(recorder.getName(), recorder);
+    }
+
     /**
      * Returns the currently selected auto program
      */
@@ -127,6 +283,10 @@ public class NarwhalDashboard extends WebSocketServer {
             s.start();
 
             Log.info("NarwhalDashboard", "Server has started on port " + PORT);
+
+            publisherThread = new Thread(NarwhalDashboard::publishLoop, "NarwhalDashboard Publisher");
+            publisherThread.setDaemon(true);
+            publisherThread.start();
         } catch (UnknownHostException e) {
             e.printStackTrace();
         }
@@ -136,154 +296,658 @@ public class NarwhalDashboard extends WebSocketServer {
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
         Log.info("NarwhalDashboard", conn.getRemoteSocketAddress().getHostName() + " has opened a connection.");
 
-        pushed = false;
+        ClientInformation client = new ClientInformation();
+        client.id = nextClientId++;
 
-        (new Thread(() -> {
-            while (conn.isOpen()) {
-                String jsonString = "{";
+        clients.put(conn, client);
+    }
 
-                for (String key : data.keySet()) {
-                    jsonString += "\"" + key + "\":\"" + data.get(key) + "\",";
-                }
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        // Log.info("NarwhalDashboard", conn.getRemoteSocketAddress().getHostName() + "
+        // has closed its connection.");
+        clients.remove(conn);
+    }
+
+    /**
+     * Reusable buffers for the publisher thread.
+     */
+    private static class PublishBuffers {
+        final JsonWriter json = new JsonWriter(4096);
+        final BinaryEncoder binary = new BinaryEncoder(4096);
+        final TextFrame textFrame = new TextFrame();
+        final BinaryFrame binaryFrame = new BinaryFrame();
+        final DashboardStore.Value value = new DashboardStore.Value();
+        final ArrayList<Subscription> activeSubscriptions = new ArrayList<Subscription>();
+    }
 
-                jsonString += "\"selected_auto\":\"" + selectedAuto + "\",";
+    /**
+     * Runs on its own thread. Whenever a subscription is due, sends each of its
+     * clients the subscribed keys which changed since that client was last
+     * updated. The same bytes are sent to every client with the same
+     * subscription, version and protocol, so the cost doesn't grow with the
+     * number of clients.
+     */
+    private static void publishLoop() {
+        PublishBuffers buffers = new PublishBuffers();
 
-                jsonString += "\"selected_limelight\":\""+selectedLimelight+"\"";
+        while (true) {
+            long nextPublishNanos = System.nanoTime() + UPDATE_WAVELENGTH * 1_000_000L;
 
-                if(selectedLimelight != null)
-                    jsonString += ",\"selected_pipeline\":\""+limelights.get(selectedLimelight).getSelectedPipeline()+"\"";
+            try {
+                nextPublishNanos = publish(buffers, nextPublishNanos);
+            } catch (RuntimeException e) {
+                Log.recoverable("NarwhalDashboard", "Error publishing dashboard data: " + e.getMessage());
+                e.printStackTrace();
+            }
 
-                // jsonString += "\"buttons\":[";
-                // for (String buttonName : buttons.keySet()) {
-                // jsonString += "\"" + buttonName + "\",";
-                // }
-                // if (!buttons.isEmpty())
-                // jsonString = jsonString.substring(0, jsonString.length() - 1);
-                // jsonString += "],";
+            try {
+                Thread.sleep(Math.max(1, (nextPublishNanos - System.nanoTime()) / 1_000_000L));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
 
-                if (!pushed) {
-                    jsonString += ",\"auto_programs\":[";
-                    for (String autoName : autoPrograms.keySet()) {
-                        jsonString += "\"" + autoName + "\",";
-                    }
-                    if (!autoPrograms.isEmpty())
-                        jsonString = jsonString.substring(0, jsonString.length() - 1);
-                    jsonString += "]";
+    /**
+     * @param nextPublishNanos When to publish next if no subscription is due
+     *                         sooner
+     * @return When the next subscription is due
+     */
+    private static long publish(PublishBuffers buffers, long nextPublishNanos) {
+        if (clients.isEmpty()) {
+            subscriptions.clear();
+            return nextPublishNanos;
+        }
 
-                    jsonString += ",\"limelights\": [";
+        long now = System.nanoTime();
 
-                    //Limelight[] limes = 
+        // these go through the store so they only get sent when they change
+        put("selected_auto", selectedAuto);
 
-                    for(Limelight lime : limelights.values()) {
-                        jsonString += "\""+lime.hostname+"\",";
-                    }
-                    jsonString = jsonString.substring(0, jsonString.length()-1);
+        String currentLimelight = selectedLimelight;
+        put("selected_limelight", currentLimelight);
+
+        if (currentLimelight != null && limelights.containsKey(currentLimelight)) {
+            put("selected_pipeline", limelights.get(currentLimelight).getSelectedPipeline());
+        }
+
+        long version = data.getVersion();
+        int size = data.size();
+        int currentAutosVersion = autosVersion;
 
-                    jsonString += "]";
+        ArrayList<Subscription> activeSubscriptions = buffers.activeSubscriptions;
+        activeSubscriptions.clear();
 
-                    jsonString += ", \"limelightsOptions\": [";
+        int maxQueuedFrames = 0;
+
+        for (Map.Entry<WebSocket, ClientInformation> entry : clients.entrySet()) {
+            ClientInformation client = entry.getValue();
+            client.published = false;
+
+            client.queuedFrames = getQueuedFrames(entry.getKey());
+            maxQueuedFrames = Math.max(maxQueuedFrames, client.queuedFrames);
+
+            boolean binary = client.binaryRequested;
+            if (client.resyncRequested || binary != client.binary) {
+                client.resyncRequested = false;
+                client.binary = binary;
+                client.lastVersion = -1;
+                client.autosVersion = -1;
+                client.schemaSize = 0;
+            }
 
-                    for(Pipeline pipeline : Pipeline.values()) {
-                        jsonString += "\""+pipeline.toString()+"\",";
+            Subscription subscription = client.requestedSubscription;
+            if (subscription != client.subscription) {
+                // keys it wasn't subscribed to before haven't been sent
+                client.subscription = subscription;
+                client.lastVersion = -1;
+            }
+
+            if (!activeSubscriptions.contains(subscription)) {
+                activeSubscriptions.add(subscription);
+            }
+        }
+
+        // forget subscriptions nobody uses any more
+        subscriptions.values().retainAll(activeSubscriptions);
+
+        for (Subscription subscription : activeSubscriptions) {
+            if (subscription.isDue(now)) {
+                skipCongestedClients(subscription);
+
+                // Each client gets the keys which changed since the version it was
+                // last sent. Usually every client with the subscription is at the
+                // same version, so the delta is only serialized once per protocol.
+                // New clients start at -1 and get everything.
+                for (ClientInformation groupClient : clients.values()) {
+                    if (groupClient.published || groupClient.subscription != subscription) {
+                        continue;
+                    }
+
+                    if (groupClient.binary) {
+                        publishBinary(buffers, subscription, groupClient.lastVersion, version, size,
+                                currentAutosVersion);
+                    } else {
+                        publishJson(buffers, subscription, groupClient.lastVersion, version, size,
+                                currentAutosVersion);
                     }
+                }
+            }
+
+            if (subscription.getNextPublishNanos() - nextPublishNanos < 0) {
+                nextPublishNanos = subscription.getNextPublishNanos();
+            }
+        }
+
+        put(QUEUED_FRAMES_SLOT, maxQueuedFrames);
+        put(DROPPED_FRAMES_SLOT, droppedFrames);
+
+        return nextPublishNanos;
+    }
 
-                    jsonString = jsonString.substring(0, jsonString.length()-1);
+    private static int getQueuedFrames(WebSocket conn) {
+        if (conn instanceof WebSocketImpl) {
+            return ((WebSocketImpl) conn).outQueue.size();
+        }
 
-                    jsonString += "]";
+        return 0;
+    }
 
-                    pushed = true;
+    /**
+     * Mark clients of the subscription which are falling behind as already
+     * published, so they're left out of this update.
+     */
+    private static void skipCongestedClients(Subscription subscription) {
+        for (ClientInformation client : clients.values()) {
+            if (client.subscription != subscription) {
+                continue;
+            }
+
+            boolean congested = client.queuedFrames > MAX_QUEUED_FRAMES;
+            if (congested) {
+                client.published = true;
+                client.droppedFrames++;
+                droppedFrames++;
+
+                if (!client.congested) {
+                    Log.unusual("NarwhalDashboard", "Client " + client.id + " is falling behind ("
+                            + client.queuedFrames + " frames queued), skipping updates until it catches up.");
                 }
+            }
+            client.congested = congested;
+        }
+    }
+
+    private static void publishJson(PublishBuffers buffers, Subscription subscription, long sinceVersion,
+            long version, int size, int currentAutosVersion) {
+        JsonWriter json = buffers.json;
+
+        json.reset().beginObject();
+        boolean changed = writeChangedKeys(json, buffers.value, subscription, sinceVersion, size);
 
-                jsonString += "}";
+        // clients which already have the lists of autos and limelights get this
+        json.mark();
+        json.endObject();
+
+        boolean anyNeedAutos = false;
+        for (Map.Entry<WebSocket, ClientInformation> client : clients.entrySet()) {
+            ClientInformation info = client.getValue();
+            if (!inGroup(info, subscription, false, sinceVersion)) {
+                continue;
+            }
 
-                conn.send(jsonString);
-                
-                try {
-                    Thread.sleep(UPDATE_WAVELENGTH);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            if (info.autosVersion == currentAutosVersion) {
+                if (changed) {
+                    send(client.getKey(), buffers.textFrame, json.toByteBuffer());
                 }
+                info.lastVersion = version;
+                info.published = true;
+            } else {
+                anyNeedAutos = true;
             }
+        }
+
+        if (!anyNeedAutos) {
+            return;
+        }
 
-        })).start();
+        // ...and new clients, or all clients after pushAutos(), also get the lists
+        json.rewind();
+        writeLists(json);
+        json.endObject();
+
+        for (Map.Entry<WebSocket, ClientInformation> client : clients.entrySet()) {
+            ClientInformation info = client.getValue();
+            if (!inGroup(info, subscription, false, sinceVersion)) {
+                continue;
+            }
+
+            send(client.getKey(), buffers.textFrame, json.toByteBuffer());
+            info.autosVersion = currentAutosVersion;
+            info.lastVersion = version;
+            info.published = true;
+        }
     }
 
-    @Override
-    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
-        // Log.info("NarwhalDashboard", conn.getRemoteSocketAddress().getHostName() + "
-        // has closed its connection.");
+    private static void publishBinary(PublishBuffers buffers, Subscription subscription, long sinceVersion,
+            long version, int size, int currentAutosVersion) {
+        BinaryEncoder binary = buffers.binary;
+
+        // ids have to be in a client's schema before it gets values for them
+        for (Map.Entry<WebSocket, ClientInformation> client : clients.entrySet()) {
+            ClientInformation info = client.getValue();
+            if (!inGroup(info, subscription, true, sinceVersion) || info.schemaSize == size) {
+                continue;
+            }
+
+            binary.beginSchema();
+            for (int slot = info.schemaSize; slot < size; slot++) {
+                data.read(slot, buffers.value);
+                binary.schemaEntry(slot, buffers.value.type, data.getKey(slot));
+            }
+            send(client.getKey(), buffers.binaryFrame, binary.toByteBuffer());
+            info.schemaSize = size;
+        }
+
+        boolean changed = writeChangedValues(binary, buffers.value, subscription, sinceVersion, size);
+
+        // the lists are rare enough that they stay JSON
+        boolean anyNeedAutos = false;
+        for (ClientInformation info : clients.values()) {
+            if (inGroup(info, subscription, true, sinceVersion) && info.autosVersion != currentAutosVersion) {
+                anyNeedAutos = true;
+            }
+        }
+
+        if (anyNeedAutos) {
+            buffers.json.reset().beginObject();
+            writeLists(buffers.json);
+            buffers.json.endObject();
+        }
+
+        for (Map.Entry<WebSocket, ClientInformation> client : clients.entrySet()) {
+            ClientInformation info = client.getValue();
+            if (!inGroup(info, subscription, true, sinceVersion)) {
+                continue;
+            }
+
+            if (changed) {
+                send(client.getKey(), buffers.binaryFrame, binary.toByteBuffer());
+            }
+
+            if (info.autosVersion != currentAutosVersion) {
+                send(client.getKey(), buffers.textFrame, buffers.json.toByteBuffer());
+                info.autosVersion = currentAutosVersion;
+            }
+
+            info.lastVersion = version;
+            info.published = true;
+        }
     }
 
-    @Override
-    public void onMessage(WebSocket conn, String message) {
-        Log.info("NarwhalDashboard", message);
-        String[] parts = message.split(":");
+    private static boolean inGroup(ClientInformation info, Subscription subscription, boolean binary,
+            long sinceVersion) {
+        return !info.published && info.subscription == subscription && info.binary == binary
+                && info.lastVersion == sinceVersion;
+    }
 
-        if (parts[0].equals("selectAuto")) {
-            String programName = parts[1];
+    /**
+     * Write every subscribed key which has changed since the given version. This is the only
+     * place values get formatted as text.
+     * 
+     * @param value Scratch space for reading values out of the store
+     * @return Whether anything was written
+     */
+    private static boolean writeChangedKeys(JsonWriter json, DashboardStore.Value value, Subscription subscription,
+            long sinceVersion, int size) {
+        boolean changed = false;
 
-            if (programName.equals("null")) {
-                selectedAuto = null;
-            } else if (autoPrograms.containsKey(programName)) {
-                selectedAuto = programName;
-                Log.info("NarwhalDashboard", "Selected auto program: \"" + selectedAuto + "\"");
-            } else {
-                Log.recoverable("NarwhalDashboard", "Auto program \"" + programName + "\" does not exist.");
+        for (int slot = 0; slot < size; slot++) {
+            if (!subscription.matches(data, slot)) {
+                continue;
             }
 
-        } else if (parts[0].equals("numData")) {
-            String key = parts[1];
-            String list = parts[2];
+            data.read(slot, value);
+            if (value.version <= sinceVersion) {
+                continue;
+            }
 
-            String[] stringData = list.split(",");
-            double[] data = new double[stringData.length];
+            json.key(data.getKey(slot));
+            switch (value.type) {
+            case NUMBER:
+                json.value(value.number);
+                break;
+            case BOOLEAN:
+                json.value(value.bool);
+                break;
+            default:
+                json.value(value.string);
+                break;
+            }
+            changed = true;
+        }
 
-            for (int i = 0; i < stringData.length; i++) {
-                data[i] = Double.parseDouble(stringData[i]);
+        return changed;
+    }
+
+    /**
+     * Binary protocol version of {@link #writeChangedKeys}. Starts a new values
+     * message.
+     */
+    private static boolean writeChangedValues(BinaryEncoder binary, DashboardStore.Value value,
+            Subscription subscription, long sinceVersion, int size) {
+        binary.beginValues();
+
+        for (int slot = 0; slot < size; slot++) {
+            if (!subscription.matches(data, slot)) {
+                continue;
             }
 
-            if (numDataCallbacks.containsKey(key)) {
-                numDataCallbacks.get(key).process(data);
-            } else {
-                Log.info("NarwhalDashboard", "Recieved, but will not process, numerical data: " + key + " = " + data);
+            data.read(slot, value);
+            if (value.version <= sinceVersion) {
+                continue;
             }
-        } else if (parts[0].equals("button")) {
-            String key = parts[1];
-            boolean down = parts[2].equals("down");
 
-            if (buttons.containsKey(key)) {
-                buttons.get(key).action(down);
-            } else {
-                Log.recoverable("NarwhalDashboard", "Button \"" + parts[1] + "\" was never added.");
+            switch (value.type) {
+            case NUMBER:
+                binary.number(slot, value.number);
+                break;
+            case BOOLEAN:
+                binary.bool(slot, value.bool);
+                break;
+            default:
+                binary.string(slot, value.string);
+                break;
             }
+        }
 
-        } else if(parts[0].equals("selectLimelight")){
-                selectedLimelight = parts[1];
+        return binary.getCount() > 0;
+    }
 
-                if(selectedLimelight.equals("null")){
-                    selectedLimelight = null;
-                } else {
-                    Log.info("NarwhalDashboard", "Unable to Parse Limelight Change Request from Dashboard");
-                }
-        } else if(parts[0].equals("selectPipeline")) {
-                String pipelineStr = parts[1];
+    private static void writeLists(JsonWriter json) {
+        json.key("auto_programs").beginArray();
+        for (String autoName : autoNames) {
+            json.value(autoName);
+        }
+        json.endArray();
 
-                if(pipelineStr.equals("null")){
-                    pipelineStr = null;
-                } else if(limelights.containsKey(selectedLimelight)) {
-                    limelights.get(selectedLimelight).setPipeline(Pipeline.valueOf(pipelineStr));
-                }
-                else {
-                    Log.info("NarwhalDashboard", "Unable to Parse Pipeline Change Request from Dashboard");
-                }
-        } else {
+        json.key("limelights").beginArray();
+        for (Limelight lime : limelights.values()) {
+            json.value(lime.hostname);
+        }
+        json.endArray();
+
+        json.key("limelightsOptions").beginArray();
+        for (Pipeline pipeline : Pipeline.values()) {
+            json.value(pipeline.toString());
+        }
+        json.endArray();
+    }
+
+    private static void send(WebSocket conn, DataFrame frame, ByteBuffer payload) {
+        if (!conn.isOpen()) {
+            return;
+        }
+
+        // the payload is copied into the connection's output queue, so the buffer
+        // can be reused right away
+        frame.setPayload(payload);
+
+        try {
+            conn.sendFrame(frame);
+        } catch (WebsocketNotConnectedException e) {
+            // closed between the check and the send, onClose() will clean it up
+        }
+    }
+
+    /**
+     * Adds a command which dashboards can send, as "verb:field:field...". The
+     * callback is run on the main robot thread, from
+     * {@link #processMessages()}. Replaces any command with the same verb.
+     */
+    public static void addCommand(String verb, DashCommandCallback callback) {
+        addCommand(verb, callback, false);
+    }
+
+    /**
+     * @param immediate Whether to run the callback right away on the WebSocket
+     *                  thread instead of the main thread. Only for commands which
+     *                  just change the state of the connection.
+     */
+    private static synchronized void addCommand(String verb, DashCommandCallback callback, boolean immediate) {
+        DashCommand[] oldCommands = commands;
+
+        for (int index = 0; index < oldCommands.length; index++) {
+            if (oldCommands[index].verb.equals(verb)) {
+                DashCommand[] newCommands = oldCommands.clone();
+                newCommands[index] = new DashCommand(verb, callback, immediate);
+                commands = newCommands;
+                return;
+            }
+        }
+
+        DashCommand[] newCommands = Arrays.copyOf(oldCommands, oldCommands.length + 1);
+        newCommands[oldCommands.length] = new DashCommand(verb, callback, immediate);
+        commands = newCommands;
+    }
+
+    private static DashCommand findCommand(DashboardMessage message) {
+        for (DashCommand command : commands) {
+            if (message.fieldEquals(0, command.verb)) {
+                return command;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Runs the callbacks for every dashboard command received since the last
+     * call. Called by NarwhalRobot every loop, so that callbacks never run at the
+     * same time as robot code.
+     */
+    public static void processMessages() {
+        DashboardMessage message;
+
+        while ((message = pendingMessages.poll()) != null) {
+            try {
+                message.callback.process(message);
+            } catch (RuntimeException e) {
+                Log.recoverable("NarwhalDashboard", "Error processing message \"" + message + "\": " + e);
+            }
+
+            message.clear();
+            freeMessages.offer(message);
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        Log.debug("NarwhalDashboard", message);
+
+        DashboardMessage parsed = freeMessages.poll();
+        if (parsed == null) {
+            Log.recoverable("NarwhalDashboard", "Too many unprocessed messages, dropping \"" + message + "\"");
+            return;
+        }
+
+        parsed.set(conn, message);
+        DashCommand command = findCommand(parsed);
+
+        if (command == null) {
             Log.info("NarwhalDashboard", "Message recieved: " + message);
+        } else if (command.immediate) {
+            command.callback.process(parsed);
+        } else {
+            // there are only as many messages as the queue can hold, so this
+            // always succeeds
+            parsed.callback = command.callback;
+            pendingMessages.offer(parsed);
+            return;
+        }
+
+        parsed.clear();
+        freeMessages.offer(parsed);
+    }
+
+    /**
+     * "protocol:binary" switches this client to the binary protocol,
+     * "protocol:json" back to JSON. Either way it gets everything again.
+     */
+    private static void processProtocol(DashboardMessage message) {
+        ClientInformation client = clients.get(message.getConnection());
+        if (client != null && message.getFieldCount() > 1) {
+            client.binaryRequested = message.fieldEquals(1, "binary");
+        }
+    }
+
+    /**
+     * "subscribe:drive/*,match/*:50" asks for just those keys, 50 times a second.
+     * "subscribe" on its own goes back to everything.
+     */
+    private static void processSubscribe(DashboardMessage message) {
+        ClientInformation client = clients.get(message.getConnection());
+        if (client == null) {
+            return;
+        }
+
+        if (message.getFieldCount() < 2 || message.fieldEquals(1, "")) {
+            client.requestedSubscription = DEFAULT_SUBSCRIPTION;
+            return;
+        }
+
+        double rate = 1000.0 / UPDATE_WAVELENGTH;
+        if (message.getFieldCount() > 2) {
+            try {
+                message.parseNumbers(2);
+                rate = message.getNumber(0);
+            } catch (NumberFormatException e) {
+                Log.recoverable("NarwhalDashboard", "Invalid subscription rate \"" + message.getField(2) + "\"");
+            }
+
+            if (!(rate > 0)) {
+                rate = 1000.0 / UPDATE_WAVELENGTH;
+            }
+        }
+
+        Subscription subscription = new Subscription(message.getField(1).split(","), rate);
+        Subscription existing = subscriptions.putIfAbsent(subscription.getSpec(), subscription);
+
+        client.requestedSubscription = existing != null ? existing : subscription;
+    }
+
+    /**
+     * The client lost track of its state, send it everything again.
+     */
+    private static void processResync(DashboardMessage message) {
+        ClientInformation client = clients.get(message.getConnection());
+        if (client != null) {
+            client.resyncRequested = true;
+        }
+    }
+
+    /**
+     * "telemetry:name" downloads a telemetry recorder as CSV. It's converted on
+     * the recorder's background thread, since it can be big.
+     */
+    private static void processTelemetry(DashboardMessage message) {
+        String name = message.getField(1);
+        WebSocket conn = message.getConnection();
+
+        TelemetryRecorder recorder = name == null ? null : telemetryRecorders.get(name);
+        if (recorder == null) {
+            Log.recoverable("NarwhalDashboard", "Telemetry \"" + name + "\" was never added.");
+            return;
+        }
+
+        recorder.toCSVAsync().thenAccept(csv -> {
+            JsonWriter json = new JsonWriter(csv.length() + 64);
+            json.beginObject();
+            json.key("telemetry").value(name);
+            json.key("csv").value(csv);
+            json.endObject();
+
+            send(conn, new TextFrame(), json.toByteBuffer());
+        });
+    }
+
+    private static void processSelectAuto(DashboardMessage message) {
+        if (message.fieldEquals(1, "null")) {
+            selectedAuto = null;
+            return;
+        }
+
+        String programName = message.getField(1);
+
+        if (autoPrograms.containsKey(programName)) {
+            selectedAuto = programName;
+            Log.info("NarwhalDashboard", "Selected auto program: \"" + selectedAuto + "\"");
+        } else {
+            Log.recoverable("NarwhalDashboard", "Auto program \"" + programName + "\" does not exist.");
+        }
+    }
+
+    private static void processNumData(DashboardMessage message) {
+        String key = message.getField(1);
+        int count = message.parseNumbers(2);
+
+        NumericalDataCallback callback = numDataCallbacks.get(key);
+        if (callback == null) {
+            Log.info("NarwhalDashboard", "Recieved, but will not process, numerical data: " + message);
+            return;
+        }
+
+        // callbacks get an array of exactly the right length, reused between
+        // messages
+        double[] data = numDataArrays[count];
+        if (data == null) {
+            data = new double[count];
+            numDataArrays[count] = data;
+        }
+        System.arraycopy(message.getNumbers(), 0, data, 0, count);
+
+        callback.process(data);
+    }
+
+    private static void processButton(DashboardMessage message) {
+        String key = message.getField(1);
+        boolean down = message.fieldEquals(2, "down");
+
+        DashButtonCallback callback = buttons.get(key);
+        if (callback != null) {
+            callback.action(down);
+        } else {
+            Log.recoverable("NarwhalDashboard", "Button \"" + key + "\" was never added.");
+        }
+    }
+
+    private static void processSelectLimelight(DashboardMessage message) {
+        selectedLimelight = message.getField(1);
+
+        if (message.fieldEquals(1, "null")) {
+            selectedLimelight = null;
+        } else {
+            Log.info("NarwhalDashboard", "Unable to Parse Limelight Change Request from Dashboard");
+        }
+    }
+
+    private static void processSelectPipeline(DashboardMessage message) {
+        if (message.fieldEquals(1, "null")) {
+            return;
+        }
+
+        String currentLimelight = selectedLimelight;
+        if (currentLimelight != null && limelights.containsKey(currentLimelight)) {
+            limelights.get(currentLimelight).setPipeline(Pipeline.valueOf(message.getField(1)));
+        } else {
+            Log.info("NarwhalDashboard", "Unable to Parse Pipeline Change Request from Dashboard");
         }
-        
     }
 
     @Override
     public void onError(WebSocket conn, Exception ex) {
+
         ex.printStackTrace();
     }
 
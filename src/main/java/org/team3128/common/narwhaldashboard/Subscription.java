@@ -0,0 +1,121 @@
+package org.team3128.common.narwhaldashboard;
+
+import java.util.Arrays;
+
+/**
+ * A set of key patterns and an update rate which one or more NarwhalDashboard
+ * clients have subscribed to. Clients with the same subscription share one
+ * instance, so their updates are scheduled and serialized together.
+ *
+ * A pattern ending in "*" matches every key starting with the rest of it, so
+ * "drive/*" matches "drive/left/speed" and "*" matches everything. Any other
+ * pattern only matches that exact key.
+ *
+ * Only used by the publisher thread once created.
+ */
+class Subscription {
+    /**
+     * The fastest update rate a client can ask for, in Hz.
+     */
+    static final double MAX_RATE = 100;
+
+    private final String spec;
+
+    private final String[] patterns;
+    private final boolean[] wildcards;
+    private final long periodNanos;
+
+    private long nextPublishNanos;
+
+    // whether each store slot matches, for slots below matchedSize
+    private boolean[] matches = new boolean[64];
+    private int matchedSize = 0;
+
+    /**
+     * @param patterns Key patterns. Empty to match everything.
+     * @param rate     Update rate, in Hz
+     */
+    Subscription(String[] patterns, double rate) {
+        patterns = patterns.length == 0 ? new String[] { "*" } : patterns.clone();
+        Arrays.sort(patterns);
+
+        rate = Math.min(rate, MAX_RATE);
+        this.periodNanos = (long) (1e9 / rate);
+
+        this.patterns = new String[patterns.length];
+        this.wildcards = new boolean[patterns.length];
+
+        for (int index = 0; index < patterns.length; index++) {
+            String pattern = patterns[index];
+            wildcards[index] = pattern.endsWith("*");
+            this.patterns[index] = wildcards[index] ? pattern.substring(0, pattern.length() - 1) : pattern;
+        }
+
+        this.spec = String.join(",", patterns) + "@" + rate;
+        this.nextPublishNanos = System.nanoTime();
+    }
+
+    /**
+     * @return A string which is the same for any two subscriptions to the same
+     *         patterns at the same rate
+     */
+    String getSpec() {
+        return spec;
+    }
+
+    long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    long getNextPublishNanos() {
+        return nextPublishNanos;
+    }
+
+    /**
+     * @return Whether it's time to send this subscription's clients an update. If
+     *         so, schedules the next one.
+     */
+    boolean isDue(long now) {
+        if (now - nextPublishNanos < 0) {
+            return false;
+        }
+
+        nextPublishNanos += periodNanos;
+
+        // don't try to catch up after falling behind
+        if (now - nextPublishNanos >= 0) {
+            nextPublishNanos = now + periodNanos;
+        }
+
+        return true;
+    }
+
+    /**
+     * Whether a store slot is part of this subscription. Keys never move between
+     * slots, so each slot is only matched against the patterns once.
+     */
+    boolean matches(DashboardStore store, int slot) {
+        if (slot >= matchedSize) {
+            int size = store.size();
+            if (size > matches.length) {
+                matches = Arrays.copyOf(matches, Math.max(size, matches.length * 2));
+            }
+
+            for (; matchedSize < size; matchedSize++) {
+                matches[matchedSize] = matches(store.getKey(matchedSize));
+            }
+        }
+
+        return matches[slot];
+    }
+
+    private boolean matches(String key) {
+        for (int index = 0; index < patterns.length; index++) {
+            if (wildcards[index] ? key.startsWith(patterns[index]) : key.equals(patterns[index])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -1,31 +1,119 @@
 package org.team3128.common.utility;
 
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
 import edu.wpi.first.wpilibj.DriverStation;
 
+/**
+ * The robot-wide logger.
+ *
+ * Logging never does console or file I/O on the calling thread. Each message is
+ * put into a preallocated ring buffer, and a background thread formats and
+ * writes it to stdout and, if set, a log file. If the buffer fills up, messages
+ * are dropped and counted rather than blocking the caller.
+ *
+ * For messages logged every loop, register a category and a message template
+ * once at startup and log numbers against them, which avoids building a String
+ * at all:
+ *
+ * <pre>
+ * static final int SHOOTER = Log.category("Shooter");
+ * static final int RPM_MESSAGE = Log.template("RPM: {} setpoint: {}");
+ * ...
+ * Log.info(SHOOTER, RPM_MESSAGE, rpm, setpoint);
+ * </pre>
+ *
+ * or, slightly slower but more convenient, pass the template directly:
+ *
+ * <pre>
+ * Log.info("Shooter", "RPM: {} setpoint: {}", rpm, setpoint);
+ * </pre>
+ *
+ * Messages below the minimum level set with setMinimumLevel() cost a single
+ * branch. Use the Supplier overloads for messages which are expensive to build,
+ * so that the work is skipped entirely when the level is disabled.
+ */
 public class Log {
+	public enum Level {
+		DEBUG("Debug"), INFO("Info"), UNUSUAL("Unusual"), RECOVERABLE("Recoverable"), FATAL("Fatal");
+
+		private final String displayName;
+
+		private Level(String displayName) {
+			this.displayName = displayName;
+		}
+
+		public String getDisplayName() {
+			return displayName;
+		}
+	}
+
+	static final Level[] LEVELS = Level.values();
+
+	private static final int QUEUE_CAPACITY = 4096;
+	private static final long WRITER_IDLE_NANOS = 5_000_000;
+	private static final long FATAL_FLUSH_TIMEOUT_MS = 100;
+
+	private static final LogRecordQueue queue = new LogRecordQueue(QUEUE_CAPACITY);
+	private static final long startNanos = System.nanoTime();
+
+	// copy-on-write, so the writer thread can read them without locking
+	private static volatile String[] categories = new String[0];
+	private static volatile String[] templates = new String[0];
+
+	// per-category rate limits and deduplication. filtersById is parallel to
+	// categories, and both are only written while holding the Log class lock.
+	private static final ConcurrentHashMap<String, LogFilter> filters = new ConcurrentHashMap<String, LogFilter>();
+	private static volatile LogFilter[] filtersById = new LogFilter[0];
+	private static volatile boolean anyFilters = false;
+
+	// lookups for the string-template overloads
+	private static final ConcurrentHashMap<String, Integer> categoryIds = new ConcurrentHashMap<String, Integer>();
+	private static final ConcurrentHashMap<String, Integer> templateIds = new ConcurrentHashMap<String, Integer>();
+
+	private static volatile int minimumLevel = Level.DEBUG.ordinal();
+
+	private static volatile boolean consoleOutput = true;
+	private static volatile Writer fileOutput = null;
+
+	static {
+		Thread writerThread = new Thread(Log::writerLoop, "Log Writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
 	/**
 	 * Log a FATAL error, after which the robot cannot (properly) function. <br>
-	 * 
+	 *
 	 * @param category
 	 * @param message
 	 */
 	public static void fatal(String category, String message) {
-		log("Fatal", category, message);
+		log(Level.FATAL, category, message);
 
 		// make it show up on the DS as well
 		DriverStation.reportError("Fatal Error: " + message, true);
+
+		flush(FATAL_FLUSH_TIMEOUT_MS);
 	}
 
 	/**
 	 * Log a FATAL error due to an exception, after which the robot cannot
 	 * (properly) function. <br>
 	 * Prints your message, and the exception's name, message, and stacktrace.
-	 * 
+	 *
 	 */
 	public static void fatalException(String category, String userMessage, Exception exception) {
 		String exceptionMessage = String.format("%s -- %s: %s", userMessage, exception.getClass().getSimpleName(),
 				exception.getMessage());
-		log("Fatal", category, exceptionMessage);
+		log(Level.FATAL, category, exceptionMessage);
+		flush(FATAL_FLUSH_TIMEOUT_MS);
 
 		exception.printStackTrace();
 
@@ -36,12 +124,16 @@ public class Log {
 	/**
 	 * Log a failure which may kill one function or one thread, however the robot as
 	 * a whole can keep functioning.
-	 * 
+	 *
 	 * @param category
 	 * @param message
 	 */
 	public static void recoverable(String category, String message) {
-		log("Recoverable", category, message);
+		if (!isEnabled(Level.RECOVERABLE)) {
+			return;
+		}
+
+		log(Level.RECOVERABLE, category, message);
 
 		DriverStation.reportError("Error: " + (message == null ? "null" : message), true);
 
@@ -50,12 +142,23 @@ public class Log {
 	/**
 	 * Log something which should not happen under normal circumstances and probably
 	 * is a bug, but does not cause anything to crash.
-	 * 
+	 *
 	 * @param category
 	 * @param message
 	 */
 	public static void unusual(String category, String message) {
-		log("Unusual", category, message);
+		if (isEnabled(Level.UNUSUAL)) {
+			log(Level.UNUSUAL, category, message);
+		}
+	}
+
+	/**
+	 * Log something unusual. The message is only built if the level is enabled.
+	 */
+	public static void unusual(String category, Supplier<String> message) {
+		if (isEnabled(Level.UNUSUAL)) {
+			log(Level.UNUSUAL, category, message.get());
+		}
 	}
 
 	/**
@@ -63,21 +166,511 @@ public class Log {
 	 * indicate anything is broken.
 	 */
 	public static void info(String category, String message) {
-		log("Info", category, message);
+		if (isEnabled(Level.INFO)) {
+			log(Level.INFO, category, message);
+		}
 	}
 
+	/**
+	 * Log a semi-important message. The message is only built if the level is
+	 * enabled.
+	 */
+	public static void info(String category, Supplier<String> message) {
+		if (isEnabled(Level.INFO)) {
+			log(Level.INFO, category, message.get());
+		}
+	}
+
+	/**
+	 * Log a semi-important message. Each "{}" in the template is replaced by the
+	 * next argument when the message is written, so no String is built here.
+	 */
+	public static void info(String category, String template, double arg0) {
+		if (isEnabled(Level.INFO)) {
+			log(Level.INFO, categoryId(category), templateId(template), 1, arg0, 0, 0, 0);
+		}
+	}
+
+	public static void info(String category, String template, double arg0, double arg1) {
+		if (isEnabled(Level.INFO)) {
+			log(Level.INFO, categoryId(category), templateId(template), 2, arg0, arg1, 0, 0);
+		}
+	}
+
+	public static void info(String category, String template, double arg0, double arg1, double arg2) {
+		if (isEnabled(Level.INFO)) {
+			log(Level.INFO, categoryId(category), templateId(template), 3, arg0, arg1, arg2, 0);
+		}
+	}
+
+	public static void info(String category, String template, double arg0, double arg1, double arg2, double arg3) {
+		if (isEnabled(Level.INFO)) {
+			log(Level.INFO, categoryId(category), templateId(template), 4, arg0, arg1, arg2, arg3);
+		}
+	}
+
+
 	/**
 	 * Log a message which is not important during normal operation, but is useful
 	 * if you're trying to debug the robot.
-	 * 
+	 *
 	 * @param category
 	 * @param message
 	 */
 	public static void debug(String category, String message) {
-		log("Debug", category, message);
+		if (isEnabled(Level.DEBUG)) {
+			log(Level.DEBUG, category, message);
+		}
+	}
+
+	/**
+	 * Log a debug message. The message is only built if the level is enabled.
+	 */
+	public static void debug(String category, Supplier<String> message) {
+		if (isEnabled(Level.DEBUG)) {
+			log(Level.DEBUG, category, message.get());
+		}
+	}
+
+	/**
+	 * Log a debug message. Each "{}" in the template is replaced by the next
+	 * argument when the message is written, so no String is built here.
+	 */
+	public static void debug(String category, String template, double arg0) {
+		if (isEnabled(Level.DEBUG)) {
+			log(Level.DEBUG, categoryId(category), templateId(template), 1, arg0, 0, 0, 0);
+		}
+	}
+
+	public static void debug(String category, String template, double arg0, double arg1) {
+		if (isEnabled(Level.DEBUG)) {
+			log(Level.DEBUG, categoryId(category), templateId(template), 2, arg0, arg1, 0, 0);
+		}
+	}
+
+	public static void debug(String category, String template, double arg0, double arg1, double arg2) {
+		if (isEnabled(Level.DEBUG)) {
+			log(Level.DEBUG, categoryId(category), templateId(template), 3, arg0, arg1, arg2, 0);
+		}
+	}
+
+	public static void debug(String category, String template, double arg0, double arg1, double arg2, double arg3) {
+		if (isEnabled(Level.DEBUG)) {
+			log(Level.DEBUG, categoryId(category), templateId(template), 4, arg0, arg1, arg2, arg3);
+		}
+	}
+
+	/**
+	 * Only log messages at or above the given level. Fatal messages are always
+	 * logged. Defaults to DEBUG, which logs everything.
+	 */
+	public static void setMinimumLevel(Level level) {
+		Assert.notNull(level);
+		minimumLevel = level.ordinal();
+	}
+
+	public static Level getMinimumLevel() {
+		return LEVELS[minimumLevel];
+	}
+
+	/**
+	 * @return Whether messages at the given level will be logged. Use this to skip
+	 *         building expensive messages.
+	 */
+	public static boolean isEnabled(Level level) {
+		return level.ordinal() >= minimumLevel;
+	}
+
+	/**
+	 * Register a category for use with the numeric logging functions. Call this once
+	 * at startup, not every loop.
+	 *
+	 * @return The id of the category.
+	 */
+	public static synchronized int category(String name) {
+		return register(name, true);
+	}
+
+	/**
+	 * Register a message template for use with the numeric logging functions. Each
+	 * "{}" in the template is replaced by the next argument. Call this once at
+	 * startup, not every loop.
+	 *
+	 * @return The id of the template.
+	 */
+	public static synchronized int template(String template) {
+		return register(template, false);
+	}
+
+	private static int register(String value, boolean isCategory) {
+		Assert.notNull(value);
+
+		String[] oldValues = isCategory ? categories : templates;
+		for (int index = 0; index < oldValues.length; index++) {
+			if (oldValues[index].equals(value)) {
+				return index;
+			}
+		}
+
+		String[] newValues = new String[oldValues.length + 1];
+		System.arraycopy(oldValues, 0, newValues, 0, oldValues.length);
+		newValues[oldValues.length] = value;
+
+		// publish the arrays before the id, so no one can use an id which is out of
+		// bounds
+		if (isCategory) {
+			LogFilter[] newFilters = new LogFilter[newValues.length];
+			System.arraycopy(filtersById, 0, newFilters, 0, oldValues.length);
+			newFilters[oldValues.length] = filters.get(value);
+
+			filtersById = newFilters;
+			categories = newValues;
+			categoryIds.put(value, oldValues.length);
+		} else {
+			templates = newValues;
+			templateIds.put(value, oldValues.length);
+		}
+
+		return oldValues.length;
+	}
+
+	private static int categoryId(String name) {
+		Integer id = categoryIds.get(name);
+		return id != null ? id : category(name);
+	}
+
+	private static int templateId(String template) {
+		Integer id = templateIds.get(template);
+		return id != null ? id : template(template);
+	}
+
+	public static void info(int category, int template) {
+		if (isEnabled(Level.INFO)) {
+			log(Level.INFO, category, template, 0, 0, 0, 0, 0);
+		}
+	}
+
+	public static void info(int category, int template, double arg0) {
+		if (isEnabled(Level.INFO)) {
+			log(Level.INFO, category, template, 1, arg0, 0, 0, 0);
+		}
+	}
+
+	public static void info(int category, int template, double arg0, double arg1) {
+		if (isEnabled(Level.INFO)) {
+			log(Level.INFO, category, template, 2, arg0, arg1, 0, 0);
+		}
+	}
+
+	public static void info(int category, int template, double arg0, double arg1, double arg2) {
+		if (isEnabled(Level.INFO)) {
+			log(Level.INFO, category, template, 3, arg0, arg1, arg2, 0);
+		}
+	}
+
+	public static void info(int category, int template, double arg0, double arg1, double arg2, double arg3) {
+		if (isEnabled(Level.INFO)) {
+			log(Level.INFO, category, template, 4, arg0, arg1, arg2, arg3);
+		}
+	}
+
+	public static void debug(int category, int template) {
+		if (isEnabled(Level.DEBUG)) {
+			log(Level.DEBUG, category, template, 0, 0, 0, 0, 0);
+		}
+	}
+
+	public static void debug(int category, int template, double arg0) {
+		if (isEnabled(Level.DEBUG)) {
+			log(Level.DEBUG, category, template, 1, arg0, 0, 0, 0);
+		}
+	}
+
+	public static void debug(int category, int template, double arg0, double arg1) {
+		if (isEnabled(Level.DEBUG)) {
+			log(Level.DEBUG, category, template, 2, arg0, arg1, 0, 0);
+		}
+	}
+
+	public static void debug(int category, int template, double arg0, double arg1, double arg2) {
+		if (isEnabled(Level.DEBUG)) {
+			log(Level.DEBUG, category, template, 3, arg0, arg1, arg2, 0);
+		}
+	}
+
+	public static void debug(int category, int template, double arg0, double arg1, double arg2, double arg3) {
+		if (isEnabled(Level.DEBUG)) {
+			log(Level.DEBUG, category, template, 4, arg0, arg1, arg2, arg3);
+		}
+	}
+
+	/**
+	 * Format a template message into a String. Allocates, so only for rare
+	 * messages.
+	 */
+	static String formatTemplate(int template, int argCount, double[] args, int argOffset) {
+		StringBuilder message = new StringBuilder();
+		appendTemplate(message, templates[template], argCount, args, argOffset);
+		return message.toString();
+	}
+
+	/**
+	 * Limit how many messages a category can log. The category can log up to burst
+	 * messages at once, then messagesPerSecond on average after that. Dropped
+	 * messages are counted, and the count is logged when the next message gets
+	 * through. Fatal messages are never dropped.
+	 *
+	 * Call this at startup, before the category is used.
+	 */
+	public static void setRateLimit(String category, double messagesPerSecond, int burst) {
+		Assert.greaterThan(messagesPerSecond, 0);
+		Assert.greaterThan(burst, 0);
+
+		getFilter(category).setRateLimit(messagesPerSecond, burst);
+	}
+
+	/**
+	 * Drop messages in a category which are identical to the last one logged
+	 * with the same template, or to the last plain string message, and log how
+	 * many were dropped once anything new is logged in the category, ahead of
+	 * it. Lines which alternate every loop are each deduplicated on their own as
+	 * long as they use different templates. If nothing changes, the counts are
+	 * logged every maxSuppressSeconds so the category doesn't go silent. Fatal
+	 * messages are never dropped.
+	 *
+	 * Call this at startup, before the category is used.
+	 */
+	public static void setDeduplication(String category, double maxSuppressSeconds) {
+		Assert.greaterThan(maxSuppressSeconds, 0);
+
+		getFilter(category).setDeduplication(maxSuppressSeconds);
+	}
+
+	private static synchronized LogFilter getFilter(String category) {
+		Assert.notNull(category);
+
+		LogFilter filter = filters.get(category);
+		if (filter == null) {
+			filter = new LogFilter(category);
+			filters.put(category, filter);
+
+			String[] currentCategories = categories;
+			for (int index = 0; index < currentCategories.length; index++) {
+				if (currentCategories[index].equals(category)) {
+					LogFilter[] newFilters = filtersById.clone();
+					newFilters[index] = filter;
+					filtersById = newFilters;
+				}
+			}
+
+			anyFilters = true;
+		}
+
+		return filter;
+	}
+
+	/**
+	 * Set whether log messages are printed to stdout. Defaults to true.
+	 */
+	public static void setConsoleOutput(boolean enabled) {
+		consoleOutput = enabled;
+	}
+
+	/**
+	 * Also write log messages, with timestamps, to the given file. Pass null to
+	 * stop writing to a file.
+	 */
+	public static void setLogFile(String path) {
+		Writer newOutput = null;
+
+		if (path != null) {
+			try {
+				newOutput = new BufferedWriter(new FileWriter(path, true));
+			} catch (IOException e) {
+				recoverable("Log", "Could not open log file \"" + path + "\": " + e.getMessage());
+				return;
+			}
+		}
+
+		synchronized (queue) {
+			Writer oldOutput = fileOutput;
+			fileOutput = newOutput;
+
+			if (oldOutput != null) {
+				try {
+					oldOutput.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
 	}
 
-	private static void log(String severity, String category, String message) {
-		System.out.println(String.format("[%s] [%s] %s", severity, category, message));
+	/**
+	 * @return The number of messages which have been dropped because the log
+	 *         buffer was full.
+	 */
+	public static int getDroppedCount() {
+		return queue.getDroppedCount();
+	}
+
+	/**
+	 * Wait until every message logged so far has been written, or the timeout
+	 * passes.
+	 *
+	 * @param timeoutMillis
+	 */
+	public static void flush(long timeoutMillis) {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long target = queue.getOfferedCount();
+
+		while (writtenCount < target && System.currentTimeMillis() < deadline) {
+			LockSupport.parkNanos(1_000_000);
+		}
+	}
+
+	private static void log(Level level, String category, String message) {
+		long now = System.nanoTime();
+
+		if (anyFilters && level != Level.FATAL && category != null) {
+			LogFilter filter = filters.get(category);
+			if (filter != null && !filter.accept(now, level.ordinal(), message, -1, 0, 0, 0, 0, 0)) {
+				return;
+			}
+		}
+
+		queue.offer(now, level.ordinal(), -1, -1, category, message, 0, 0, 0, 0, 0);
+	}
+
+	private static void log(Level level, int category, int template, int argCount, double arg0, double arg1,
+			double arg2, double arg3) {
+		long now = System.nanoTime();
+
+		if (anyFilters) {
+			LogFilter filter = filtersById[category];
+			if (filter != null
+					&& !filter.accept(now, level.ordinal(), null, template, argCount, arg0, arg1, arg2, arg3)) {
+				return;
+			}
+		}
+
+		queue.offer(now, level.ordinal(), category, template, null, null, argCount, arg0, arg1, arg2, arg3);
+	}
+
+	/**
+	 * Log a message without applying the category's filters, for reporting
+	 * filtered messages.
+	 */
+	static void logUnfiltered(Level level, String category, String message) {
+		queue.offer(System.nanoTime(), level.ordinal(), -1, -1, category, message, 0, 0, 0, 0, 0);
+	}
+
+	/* ----------- Writer thread ----------------- */
+
+	// number of records taken off the queue and written out, for flush()
+	private static volatile long writtenCount = 0;
+
+	private static void writerLoop() {
+		LogRecordQueue.Record record = new LogRecordQueue.Record();
+		StringBuilder line = new StringBuilder(256);
+		int reportedDrops = 0;
+
+		while (true) {
+			boolean wroteAnything = false;
+
+			while (queue.poll(record)) {
+				line.setLength(0);
+				formatRecord(record, line);
+				write(record.timestamp, line);
+				wroteAnything = true;
+			}
+
+			int drops = queue.getDroppedCount();
+			if (drops != reportedDrops) {
+				line.setLength(0);
+				line.append("[").append(Level.UNUSUAL.getDisplayName()).append("] [Log] ")
+						.append(drops - reportedDrops).append(" messages dropped, log buffer full");
+				write(System.nanoTime(), line);
+				reportedDrops = drops;
+				wroteAnything = true;
+			}
+
+			if (wroteAnything) {
+				flushOutputs();
+				writtenCount = queue.getPolledCount();
+			}
+
+			if (queue.isEmpty()) {
+				LockSupport.parkNanos(WRITER_IDLE_NANOS);
+			}
+		}
+	}
+
+	private static void formatRecord(LogRecordQueue.Record record, StringBuilder line) {
+		line.append('[').append(LEVELS[record.level].getDisplayName()).append("] [");
+
+		if (record.categoryName != null || record.category < 0) {
+			line.append(record.categoryName).append("] ").append(record.message);
+			return;
+		}
+
+		line.append(categories[record.category]).append("] ");
+		appendTemplate(line, templates[record.template], record.argCount, record.args, 0);
+	}
+
+	private static void appendTemplate(StringBuilder line, String template, int argCount, double[] args,
+			int argOffset) {
+		int argIndex = 0;
+		int start = 0;
+		int placeholder;
+
+		while ((placeholder = template.indexOf("{}", start)) >= 0 && argIndex < argCount) {
+			line.append(template, start, placeholder);
+			appendNumber(line, args[argOffset + argIndex++]);
+			start = placeholder + 2;
+		}
+		line.append(template, start, template.length());
+	}
+
+	private static void appendNumber(StringBuilder line, double value) {
+		// print whole numbers (counts, states, ids) without a trailing ".0"
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			line.append((long) value);
+		} else {
+			line.append(value);
+		}
+	}
+
+	private static void write(long timestamp, StringBuilder line) {
+		if (consoleOutput) {
+			System.out.append(line).append('\n');
+		}
+
+		synchronized (queue) {
+			if (fileOutput != null) {
+				try {
+					fileOutput.append(String.format("%.6f ", (timestamp - startNanos) * 1e-9)).append(line)
+							.append('\n');
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private static void flushOutputs() {
+		if (consoleOutput) {
+			System.out.flush();
+		}
+
+		synchronized (queue) {
+			if (fileOutput != null) {
+				try {
+					fileOutput.flush();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
 	}
 }
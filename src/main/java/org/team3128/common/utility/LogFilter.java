@@ -0,0 +1,230 @@
+package org.team3128.common.utility;
+
+import java.util.Arrays;
+
+/**
+ * Per-category rate limiting and deduplication for Log. Configured with
+ * {@link Log#setRateLimit} and {@link Log#setDeduplication}.
+ *
+ * Deduplication works on streams of messages within the category: each
+ * template is its own stream, and all plain string messages share one. A
+ * message identical to the last one in its stream is dropped, so a subsystem
+ * which logs a few different lines every loop has each of them suppressed
+ * while it doesn't change. A message which differs from the last one in its
+ * stream is always logged, even if it matches something logged earlier, so a
+ * value going 3, 4, 3 shows all three.
+ *
+ * Repeat counts are never lost or reordered: whenever a message is logged, the
+ * counts pending for every stream are logged first, oldest first, and they are
+ * also logged every so often if the messages keep repeating, so the category
+ * never goes silent.
+ *
+ * Rate limiting is a token bucket: the category may log a burst of messages at
+ * once, and after that only a fixed number per second. Dropped messages are
+ * counted and reported when the next message gets through.
+ */
+class LogFilter {
+	// streams remembered per category. The least recently used one is forgotten
+	// when a new one starts.
+	static final int MAX_STREAMS = 8;
+
+	// stream key of plain string messages
+	private static final int STRING_STREAM = -1;
+
+	private final String category;
+
+	// deduplication. 0 disables it.
+	private long dedupWindowNanos = 0;
+
+	// the last message in each stream
+	private int streamCount = 0;
+	private final int[] streamKeys = new int[MAX_STREAMS];
+	private final int[] levels = new int[MAX_STREAMS];
+	private final String[] messages = new String[MAX_STREAMS];
+	private final int[] argCounts = new int[MAX_STREAMS];
+	private final double[][] args = new double[MAX_STREAMS][LogRecordQueue.MAX_ARGS];
+	private final long[] lastUsed = new long[MAX_STREAMS];
+
+	// dropped repeats of each stream's last message, and when the first of them
+	// was dropped, to report them in order
+	private final int[] repeats = new int[MAX_STREAMS];
+	private final long[] firstRepeat = new long[MAX_STREAMS];
+	private long sequence = 0;
+	private long lastReportNanos;
+
+	// rate limiting. 0 disables it.
+	private double tokensPerNano = 0;
+	private double burst;
+
+	private double tokens;
+	private long lastRefillNanos;
+	private int rateLimited;
+
+	LogFilter(String category) {
+		this.category = category;
+	}
+
+	synchronized void setRateLimit(double messagesPerSecond, int burst) {
+		this.tokensPerNano = messagesPerSecond * 1e-9;
+		this.burst = burst;
+		this.tokens = burst;
+		this.lastRefillNanos = System.nanoTime();
+	}
+
+	synchronized void setDeduplication(double maxSuppressSeconds) {
+		this.dedupWindowNanos = (long) (maxSuppressSeconds * 1e9);
+
+		streamCount = 0;
+		Arrays.fill(messages, null);
+		Arrays.fill(repeats, 0);
+	}
+
+	/**
+	 * Decide whether a message should be logged. May log summaries of previously
+	 * dropped messages as a side effect.
+	 *
+	 * @param message The message, or null for a template message
+	 * @return true if the message should be logged
+	 */
+	synchronized boolean accept(long now, int level, String message, int template, int argCount, double arg0,
+			double arg1, double arg2, double arg3) {
+		if (dedupWindowNanos > 0) {
+			int key = message != null ? STRING_STREAM : template;
+			int stream = findStream(key);
+			sequence++;
+
+			if (stream >= 0 && isRepeat(stream, level, message, argCount, arg0, arg1, arg2, arg3)) {
+				lastUsed[stream] = sequence;
+				if (repeats[stream] == 0) {
+					firstRepeat[stream] = sequence;
+				}
+				repeats[stream]++;
+
+				if (now - lastReportNanos >= dedupWindowNanos) {
+					reportRepeats(now);
+				}
+
+				return false;
+			}
+
+			// everything dropped so far happened before this message
+			reportRepeats(now);
+
+			if (stream < 0) {
+				stream = newStream(key);
+			}
+			remember(stream, level, message, argCount, arg0, arg1, arg2, arg3);
+		}
+
+		if (tokensPerNano > 0) {
+			tokens = Math.min(burst, tokens + (now - lastRefillNanos) * tokensPerNano);
+			lastRefillNanos = now;
+
+			if (tokens < 1) {
+				rateLimited++;
+				return false;
+			}
+
+			tokens -= 1;
+
+			if (rateLimited > 0) {
+				Log.logUnfiltered(Log.Level.UNUSUAL, category,
+						"(" + rateLimited + " messages suppressed by rate limit)");
+				rateLimited = 0;
+			}
+		}
+
+		return true;
+	}
+
+	private int findStream(int key) {
+		for (int stream = 0; stream < streamCount; stream++) {
+			if (streamKeys[stream] == key) {
+				return stream;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Start remembering a stream, in place of the least recently used one if
+	 * they're all taken. Any pending repeats have been reported already.
+	 */
+	private int newStream(int key) {
+		int stream;
+		if (streamCount < MAX_STREAMS) {
+			stream = streamCount++;
+		} else {
+			stream = 0;
+			for (int other = 1; other < MAX_STREAMS; other++) {
+				if (lastUsed[other] < lastUsed[stream]) {
+					stream = other;
+				}
+			}
+		}
+
+		streamKeys[stream] = key;
+		return stream;
+	}
+
+	private boolean isRepeat(int stream, int level, String message, int argCount, double arg0, double arg1,
+			double arg2, double arg3) {
+		if (level != levels[stream]) {
+			return false;
+		}
+
+		if (message != null) {
+			return message.equals(messages[stream]);
+		}
+
+		double[] streamArgs = args[stream];
+		return argCount == argCounts[stream] && arg0 == streamArgs[0] && arg1 == streamArgs[1]
+				&& arg2 == streamArgs[2] && arg3 == streamArgs[3];
+	}
+
+	private void remember(int stream, int level, String message, int argCount, double arg0, double arg1,
+			double arg2, double arg3) {
+		levels[stream] = level;
+		messages[stream] = message;
+		argCounts[stream] = argCount;
+
+		double[] streamArgs = args[stream];
+		streamArgs[0] = arg0;
+		streamArgs[1] = arg1;
+		streamArgs[2] = arg2;
+		streamArgs[3] = arg3;
+
+		lastUsed[stream] = sequence;
+		repeats[stream] = 0;
+	}
+
+	/**
+	 * Log the repeat counts of every stream which has any, in the order their
+	 * repeats started.
+	 */
+	private void reportRepeats(long now) {
+		lastReportNanos = now;
+
+		while (true) {
+			int oldest = -1;
+			for (int stream = 0; stream < streamCount; stream++) {
+				if (repeats[stream] > 0 && (oldest < 0 || firstRepeat[stream] < firstRepeat[oldest])) {
+					oldest = stream;
+				}
+			}
+
+			if (oldest < 0) {
+				return;
+			}
+
+			String message = messages[oldest];
+			if (message == null) {
+				message = Log.formatTemplate(streamKeys[oldest], argCounts[oldest], args[oldest], 0);
+			}
+
+			Log.logUnfiltered(Log.LEVELS[levels[oldest]], category,
+					"(repeated " + repeats[oldest] + " more times) " + message);
+			repeats[oldest] = 0;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package org.team3128.common.utility;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, preallocated, multi-producer single-consumer queue of log records,
+ * stored as parallel primitive arrays. Any thread may offer() records; only the
+ * log writer thread may poll(). Offering never blocks or allocates: if the
+ * queue is full, the record is dropped and counted.
+ */
+class LogRecordQueue {
+	public static final int MAX_ARGS = 4;
+
+	/**
+	 * Consumer-side copy of a single record. Reused by the writer thread.
+	 */
+	static class Record {
+		long timestamp;
+		int level;
+		int category;
+		int template;
+		String categoryName;
+		String message;
+		int argCount;
+		final double[] args = new double[MAX_ARGS];
+	}
+
+	private final int capacity;
+	private final int mask;
+
+	private final long[] timestamps;
+	private final byte[] levels;
+	private final int[] categories;
+	private final int[] templates;
+	private final String[] categoryNames;
+	private final String[] messages;
+	private final byte[] argCounts;
+	private final double[] args;
+
+	// slot i is free for the producer that claims position p when
+	// sequences[i] == p, and readable by the consumer when it is p + 1
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	private long head;
+
+	private final AtomicInteger dropped = new AtomicInteger();
+
+	/**
+	 * @param capacity Number of records the queue can hold. Must be a power of
+	 *                 two.
+	 */
+	LogRecordQueue(int capacity) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two, got " + capacity);
+		}
+
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+
+		timestamps = new long[capacity];
+		levels = new byte[capacity];
+		categories = new int[capacity];
+		templates = new int[capacity];
+		categoryNames = new String[capacity];
+		messages = new String[capacity];
+		argCounts = new byte[capacity];
+		args = new double[capacity * MAX_ARGS];
+
+		sequences = new AtomicLongArray(capacity);
+		for (int index = 0; index < capacity; index++) {
+			sequences.set(index, index);
+		}
+	}
+
+	/**
+	 * Add a record to the queue.
+	 *
+	 * @return false if the queue was full and the record was dropped
+	 */
+	boolean offer(long timestamp, int level, int category, int template, String categoryName, String message,
+			int argCount, double arg0, double arg1, double arg2, double arg3) {
+		long position;
+		int slot;
+
+		while (true) {
+			position = tail.get();
+			slot = (int) position & mask;
+			long sequence = sequences.get(slot);
+
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+			} else if (sequence < position) {
+				dropped.incrementAndGet();
+				return false;
+			}
+			// else another producer claimed this position, try again
+		}
+
+		timestamps[slot] = timestamp;
+		levels[slot] = (byte) level;
+		categories[slot] = category;
+		templates[slot] = template;
+		categoryNames[slot] = categoryName;
+		messages[slot] = message;
+		argCounts[slot] = (byte) argCount;
+
+		int argIndex = slot * MAX_ARGS;
+		args[argIndex] = arg0;
+		args[argIndex + 1] = arg1;
+		args[argIndex + 2] = arg2;
+		args[argIndex + 3] = arg3;
+
+		sequences.lazySet(slot, position + 1);
+		return true;
+	}
+
+	/**
+	 * Remove the oldest record from the queue and copy it into out. Must only be
+	 * called from one thread.
+	 *
+	 * @return false if the queue was empty
+	 */
+	boolean poll(Record out) {
+		int slot = (int) head & mask;
+
+		if (sequences.get(slot) != head + 1) {
+			return false;
+		}
+
+		out.timestamp = timestamps[slot];
+		out.level = levels[slot];
+		out.category = categories[slot];
+		out.template = templates[slot];
+		out.categoryName = categoryNames[slot];
+		out.message = messages[slot];
+		out.argCount = argCounts[slot];
+		System.arraycopy(args, slot * MAX_ARGS, out.args, 0, MAX_ARGS);
+
+		// don't keep strings alive any longer than needed
+		categoryNames[slot] = null;
+		messages[slot] = null;
+
+		sequences.lazySet(slot, head + capacity);
+		head++;
+		return true;
+	}
+
+	boolean isEmpty() {
+		return sequences.get((int) head & mask) != head + 1;
+	}
+
+	/**
+	 * @return The number of records successfully offered so far
+	 */
+	long getOfferedCount() {
+		return tail.get();
+	}
+
+	/**
+	 * @return The number of records polled so far. Only call from the consumer
+	 *         thread.
+	 */
+	long getPolledCount() {
+		return head;
+	}
+
+	int getDroppedCount() {
+		return dropped.get();
+	}
+}
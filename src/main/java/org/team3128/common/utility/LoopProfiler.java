@@ -0,0 +1,192 @@
+package org.team3128.common.utility;
+
+import org.team3128.common.narwhaldashboard.NarwhalDashboard;
+import org.team3128.common.utility.structure.LatencyHistogram;
+
+/**
+ * Records how long each stage of the robot main loop takes, per robot mode, into
+ * fixed-size histograms. Used by NarwhalRobot to find out which stage eats the
+ * loop budget when the robot stutters.
+ *
+ * The main loop calls beginLoop(), then mark() after each stage, then
+ * endLoop(). None of these allocate or lock. publish() formats the results for
+ * NarwhalDashboard and should be called from a slower thread.
+ */
+public class LoopProfiler {
+	public enum Stage {
+		INIT("init"),
+		PERIODIC("periodic"),
+		SCHEDULER("scheduler"),
+		LISTENERS("listeners"),
+		ROBOT_PERIODIC("robot_periodic"),
+		DASHBOARDS("dashboards"),
+		TOTAL("total");
+
+		private final String key;
+
+		private Stage(String key) {
+			this.key = key;
+		}
+
+		public String getKey() {
+			return key;
+		}
+	}
+
+	private static final Stage[] STAGES = Stage.values();
+
+	private final String[] modeNames;
+	private final LatencyHistogram[][] histograms;
+	private final int[] overruns;
+
+	// NarwhalDashboard slots for each mode, registered the first time the mode is
+	// published: p50, p99 and max for each stage, then overruns
+	private final int[][] dashboardSlots;
+
+	private final long periodMicros;
+
+	private int currentMode;
+	private long loopStartNanos;
+	private long lastMarkNanos;
+
+	private volatile boolean overrunFlagged;
+
+	/**
+	 * @param period    The main loop period, in seconds
+	 * @param modeNames Human-readable names of the robot modes, indexed the same way
+	 *                  as the mode argument to beginLoop()
+	 */
+	public LoopProfiler(double period, String... modeNames) {
+		this.periodMicros = (long) (period * 1e6);
+		this.modeNames = modeNames;
+
+		histograms = new LatencyHistogram[modeNames.length][STAGES.length];
+		for (int mode = 0; mode < modeNames.length; mode++) {
+			for (int stage = 0; stage < STAGES.length; stage++) {
+				histograms[mode][stage] = new LatencyHistogram();
+			}
+		}
+
+		overruns = new int[modeNames.length];
+		dashboardSlots = new int[modeNames.length][];
+	}
+
+	/**
+	 * Start timing one iteration of the main loop.
+	 */
+	public void beginLoop() {
+		loopStartNanos = System.nanoTime();
+		lastMarkNanos = loopStartNanos;
+	}
+
+	/**
+	 * Set the mode which subsequent marks are attributed to. Can be changed in the
+	 * middle of a loop, e.g. right after a mode transition is detected.
+	 */
+	public void setMode(int mode) {
+		currentMode = mode;
+	}
+
+	/**
+	 * Record the time since the previous mark (or beginLoop()) as the duration of
+	 * the given stage.
+	 */
+	public void mark(Stage stage) {
+		long now = System.nanoTime();
+		histograms[currentMode][stage.ordinal()].record((now - lastMarkNanos) / 1000);
+		lastMarkNanos = now;
+	}
+
+	/**
+	 * Finish timing the loop, recording its total duration and whether it overran
+	 * the period.
+	 */
+	public void endLoop() {
+		long totalMicros = (System.nanoTime() - loopStartNanos) / 1000;
+		histograms[currentMode][Stage.TOTAL.ordinal()].record(totalMicros);
+
+		if (overrunFlagged || totalMicros > periodMicros) {
+			overruns[currentMode]++;
+		}
+		overrunFlagged = false;
+	}
+
+	/**
+	 * Note that the loop has overrun its period even if it has not finished yet.
+	 * Safe to call from the watchdog thread.
+	 */
+	public void flagOverrun() {
+		overrunFlagged = true;
+	}
+
+	public int getOverrunCount(int mode) {
+		return overruns[mode];
+	}
+
+	public LatencyHistogram getHistogram(int mode, Stage stage) {
+		return histograms[mode][stage.ordinal()];
+	}
+
+	/**
+	 * Forget everything recorded so far. Should only be called from the main loop
+	 * thread.
+	 */
+	public void reset() {
+		for (int mode = 0; mode < modeNames.length; mode++) {
+			for (int stage = 0; stage < STAGES.length; stage++) {
+				histograms[mode][stage].reset();
+			}
+			overruns[mode] = 0;
+		}
+	}
+
+	/**
+	 * Push p50/p99/max (in milliseconds) of every stage, and the overrun count, to
+	 * NarwhalDashboard under "loop/[mode]/[stage]/[stat]". Modes that have never
+	 * run are skipped.
+	 */
+	public void publish() {
+		for (int mode = 0; mode < modeNames.length; mode++) {
+			if (histograms[mode][Stage.TOTAL.ordinal()].getCount() == 0) {
+				continue;
+			}
+
+			int[] slots = dashboardSlots[mode];
+			if (slots == null) {
+				slots = registerSlots(mode);
+			}
+
+			for (Stage stage : STAGES) {
+				LatencyHistogram histogram = histograms[mode][stage.ordinal()];
+				if (histogram.getCount() == 0) {
+					continue;
+				}
+
+				int slot = stage.ordinal() * 3;
+				NarwhalDashboard.put(slots[slot], histogram.getPercentile(50) / 1000.0);
+				NarwhalDashboard.put(slots[slot + 1], histogram.getPercentile(99) / 1000.0);
+				NarwhalDashboard.put(slots[slot + 2], histogram.getMax() / 1000.0);
+			}
+
+			NarwhalDashboard.put(slots[STAGES.length * 3], overruns[mode]);
+		}
+	}
+
+	private int[] registerSlots(int mode) {
+		String prefix = "loop/" + modeNames[mode] + "/";
+		int[] slots = new int[STAGES.length * 3 + 1];
+
+		for (Stage stage : STAGES) {
+			String stagePrefix = prefix + stage.getKey() + "/";
+			int slot = stage.ordinal() * 3;
+
+			slots[slot] = NarwhalDashboard.registerNumber(stagePrefix + "p50");
+			slots[slot + 1] = NarwhalDashboard.registerNumber(stagePrefix + "p99");
+			slots[slot + 2] = NarwhalDashboard.registerNumber(stagePrefix + "max");
+		}
+		slots[STAGES.length * 3] = NarwhalDashboard.registerNumber(prefix + "overruns");
+
+		dashboardSlots[mode] = slots;
+		return slots;
+	}
+}
@@ -0,0 +1,274 @@
+package org.team3128.common.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Records rows of named numbers, such as the robot's position over a match, so
+ * they can be saved or downloaded afterwards.
+ *
+ * Each column is a preallocated ring buffer of doubles, so recording a row
+ * doesn't allocate, and once the buffer is full the oldest rows are
+ * overwritten. Rows are recorded with {@link #set(int, double)} and
+ * {@link #endRow()}:
+ *
+ * <pre>
+ * recorder.set(TIME, Timer.getFPGATimestamp());
+ * recorder.set(X, pose.getX());
+ * recorder.endRow();
+ * </pre>
+ *
+ * Only one thread may record rows, but saving and reading can be done from any
+ * thread while it records. Saving is done on a background thread, and anything
+ * which was overwritten while it was being copied is left out.
+ *
+ * @author Narwhal
+ */
+public class TelemetryRecorder {
+	/**
+	 * File formats for {@link TelemetryRecorder#save(File, Format)}.
+	 */
+	public enum Format {
+		/**
+		 * A header line of column names, then one line per row.
+		 */
+		CSV,
+
+		/**
+		 * The int 0x544C4D31 ("TLM1"), the column count as an int, each column name
+		 * (as in DataOutputStream.writeUTF()), the row count as an int, then each
+		 * column's values as doubles. Big endian, as written by DataOutputStream.
+		 */
+		BINARY;
+	}
+
+	private static final int BINARY_MAGIC = 0x544C4D31;
+
+	// shared by all recorders, so saving never holds up the thread that records
+	private static final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "TelemetryRecorder");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+
+	private final String name;
+	private final String[] columnNames;
+
+	private final int capacity;
+
+	// columns[column][row % capacity]
+	private final double[][] columns;
+
+	// the row being filled in by set()
+	private final double[] pendingRow;
+
+	// number of rows ever recorded. Rows are written before this is incremented.
+	private volatile long rowCount = 0;
+
+	// rows before this were cleared
+	private volatile long firstRow = 0;
+
+	/**
+	 * @param name     Name used for logging and for downloading the data from
+	 *                 NarwhalDashboard
+	 * @param capacity Number of rows to keep. Memory use is 8 bytes per column
+	 *                 per row.
+	 * @param columns  Names of the columns
+	 */
+	public TelemetryRecorder(String name, int capacity, String... columns) {
+		Assert.greaterThan(capacity, 0);
+		Assert.greaterThan(columns.length, 0);
+
+		this.name = name;
+		this.capacity = capacity;
+		this.columnNames = columns.clone();
+
+		this.columns = new double[columns.length][capacity];
+		this.pendingRow = new double[columns.length];
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String[] getColumnNames() {
+		return columnNames.clone();
+	}
+
+	/**
+	 * Set a value in the row being recorded. Values which aren't set are copied
+	 * from the previous row.
+	 *
+	 * @param column The column's index, in the order they were passed to the
+	 *               constructor
+	 */
+	public void set(int column, double value) {
+		pendingRow[column] = value;
+	}
+
+	/**
+	 * Add the row being recorded to the end of the data.
+	 */
+	public void endRow() {
+		long row = rowCount;
+		int index = (int) (row % capacity);
+
+		for (int column = 0; column < columns.length; column++) {
+			columns[column][index] = pendingRow[column];
+		}
+
+		// volatile write, so that readers who see the new count see the row
+		rowCount = row + 1;
+	}
+
+	/**
+	 * Throw away every row recorded so far. Can be called from any thread.
+	 */
+	public void clear() {
+		firstRow = rowCount;
+	}
+
+	/**
+	 * @return The number of rows currently stored
+	 */
+	public int size() {
+		long end = rowCount;
+		return (int) (end - Math.max(firstRow, end - capacity));
+	}
+
+	/**
+	 * Copy out the stored rows, leaving out any which were overwritten while
+	 * copying.
+	 *
+	 * @return The columns, each holding the same rows
+	 */
+	private double[][] snapshot() {
+		long end = rowCount;
+		long start = Math.max(firstRow, end - capacity);
+
+		double[][] copy = new double[columns.length][(int) (end - start)];
+		for (int column = 0; column < columns.length; column++) {
+			for (long row = start; row < end; row++) {
+				copy[column][(int) (row - start)] = columns[column][(int) (row % capacity)];
+			}
+		}
+
+		// rows recorded while copying may have replaced the oldest copied rows,
+		// including the one being recorded now
+		VarHandle.loadLoadFence();
+		long overwritten = rowCount + 1 - capacity - start;
+		if (overwritten > 0) {
+			int skip = (int) Math.min(overwritten, end - start);
+			for (int column = 0; column < columns.length; column++) {
+				copy[column] = Arrays.copyOfRange(copy[column], skip, copy[column].length);
+			}
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Write the stored rows as CSV, on the calling thread.
+	 */
+	public void writeCSV(Writer writer) throws IOException {
+		double[][] data = snapshot();
+
+		writer.write(String.join(",", columnNames));
+		writer.write('\n');
+
+		int rows = data[0].length;
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < data.length; column++) {
+				if (column > 0) {
+					writer.write(',');
+				}
+				writer.write(Double.toString(data[column][row]));
+			}
+			writer.write('\n');
+		}
+
+		writer.flush();
+	}
+
+	/**
+	 * Write the stored rows in the binary format, on the calling thread.
+	 *
+	 * @see Format#BINARY
+	 */
+	public void writeBinary(DataOutputStream output) throws IOException {
+		double[][] data = snapshot();
+
+		output.writeInt(BINARY_MAGIC);
+		output.writeInt(columnNames.length);
+		for (String columnName : columnNames) {
+			output.writeUTF(columnName);
+		}
+
+		output.writeInt(data[0].length);
+		for (double[] column : data) {
+			for (double value : column) {
+				output.writeDouble(value);
+			}
+		}
+
+		output.flush();
+	}
+
+	/**
+	 * Save the stored rows to a file on a background thread. Rows recorded after
+	 * this is called may or may not be included.
+	 *
+	 * @return A future which completes once the file is written
+	 */
+	public CompletableFuture<Void> save(File file, Format format) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				if (format == Format.CSV) {
+					try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+						writeCSV(writer);
+					}
+				} else {
+					try (DataOutputStream output = new DataOutputStream(
+							new BufferedOutputStream(new FileOutputStream(file)))) {
+						writeBinary(output);
+					}
+				}
+
+				Log.info("TelemetryRecorder", "Saved \"" + name + "\" to " + file);
+			} catch (IOException e) {
+				Log.recoverable("TelemetryRecorder", "Couldn't save \"" + name + "\" to " + file + ": " + e.getMessage());
+				throw new UncheckedIOException(e);
+			}
+		}, saveExecutor);
+	}
+
+	/**
+	 * Convert the stored rows to CSV on a background thread.
+	 */
+	public CompletableFuture<String> toCSVAsync() {
+		return CompletableFuture.supplyAsync(() -> {
+			StringWriter writer = new StringWriter();
+			try {
+				writeCSV(writer);
+			} catch (IOException e) {
+				// StringWriter doesn't throw
+				throw new UncheckedIOException(e);
+			}
+			return writer.toString();
+		}, saveExecutor);
+	}
+}
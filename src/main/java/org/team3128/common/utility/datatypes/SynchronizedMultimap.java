@@ -1,23 +1,31 @@
 package org.team3128.common.utility.datatypes;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 /**
  * Our homegrown replacement for a Guava multimap.
  * 
  * Currently, this is needed to make the ControlWatcher work.
  * 
+ * Each key's values are kept in an immutable list which is replaced whenever
+ * they change, so reading is cheap and never sees a half-finished change, and a
+ * list returned by get() can be iterated while someone else adds to the map.
+ * Like a set, each value is only stored once per key.
+ * 
  * @author Jamie
  *
  * @param <Key>
  * @param <Value>
  */
 public class SynchronizedMultimap<Key, Value> {
-	ConcurrentHashMap<Key, HashSet<Value>> _map;
+	ConcurrentHashMap<Key, List<Value>> _map;
 
 	public SynchronizedMultimap() {
-		_map = new ConcurrentHashMap<Key, HashSet<Value>>();
+		_map = new ConcurrentHashMap<Key, List<Value>>();
 	}
 
 	/**
@@ -27,13 +35,21 @@ public class SynchronizedMultimap<Key, Value> {
 	 * @param value
 	 */
 	public void put(Key key, Value value) {
-		HashSet<Value> prevValues = _map.get(key);
-		if (prevValues == null) {
-			prevValues = new HashSet<Value>();
-		}
+		_map.compute(key, (k, prevValues) -> {
+			if (prevValues == null) {
+				return Collections.singletonList(value);
+			}
+
+			if (prevValues.contains(value)) {
+				return prevValues;
+			}
 
-		prevValues.add(value);
-		_map.put(key, prevValues);
+			ArrayList<Value> newValues = new ArrayList<Value>(prevValues.size() + 1);
+			newValues.addAll(prevValues);
+			newValues.add(value);
+
+			return Collections.unmodifiableList(newValues);
+		});
 	}
 
 	/**
@@ -54,10 +70,18 @@ public class SynchronizedMultimap<Key, Value> {
 	 * get a list of values for a key
 	 * 
 	 * @param key
-	 * @return
+	 * @return The values, in the order they were added, or null if there aren't
+	 *         any. The list can't be modified, and won't change.
 	 */
-	public HashSet<Value> get(Key key) {
+	public List<Value> get(Key key) {
 		return _map.get(key);
 	}
 
+	/**
+	 * run the action for every key and its list of values
+	 */
+	public void forEach(BiConsumer<Key, List<Value>> action) {
+		_map.forEach(action);
+	}
+
 }
@@ -0,0 +1,126 @@
+package org.team3128.common.utility.math;
+
+import java.util.Arrays;
+
+/**
+ * Scratch mutable geometry objects for the control loop, so temporaries don't
+ * have to be allocated every iteration or kept around as fields.
+ *
+ * Each thread gets its own pool from {@link #get()}. Objects are borrowed
+ * between a {@link #begin()} and its matching {@link #end()}, after which they
+ * are handed out again, so they must not be kept past the end() call. Blocks
+ * can be nested. Objects come out holding whatever was last written to them,
+ * so set them before reading them.
+ *
+ * The pool grows if a loop borrows more than it has, and never allocates once
+ * it is big enough.
+ *
+ * <pre>
+ * GeometryPool pool = GeometryPool.get();
+ * pool.begin();
+ * try {
+ *     MutablePose2D pose = pool.pose();
+ *     ...
+ * } finally {
+ *     pool.end();
+ * }
+ * </pre>
+ */
+public class GeometryPool {
+	private static final int INITIAL_SIZE = 8;
+
+	private static final ThreadLocal<GeometryPool> pools = ThreadLocal.withInitial(GeometryPool::new);
+
+	/**
+	 * @return The pool for the current thread
+	 */
+	public static GeometryPool get() {
+		return pools.get();
+	}
+
+	private MutableTranslation2D[] translations = new MutableTranslation2D[INITIAL_SIZE];
+	private MutableRotation2D[] rotations = new MutableRotation2D[INITIAL_SIZE];
+	private MutablePose2D[] poses = new MutablePose2D[INITIAL_SIZE];
+	private int translationsUsed, rotationsUsed, posesUsed;
+
+	// counts to go back to at each end(), one entry per nested begin()
+	private int[] marks = new int[3 * INITIAL_SIZE];
+	private int depth = 0;
+
+	private GeometryPool() {
+	}
+
+	/**
+	 * Start borrowing objects. Everything borrowed after this is returned by the
+	 * matching {@link #end()}.
+	 */
+	public void begin() {
+		if (3 * depth == marks.length) {
+			marks = Arrays.copyOf(marks, 2 * marks.length);
+		}
+
+		marks[3 * depth] = translationsUsed;
+		marks[3 * depth + 1] = rotationsUsed;
+		marks[3 * depth + 2] = posesUsed;
+		depth++;
+	}
+
+	/**
+	 * Return everything borrowed since the matching {@link #begin()}.
+	 */
+	public void end() {
+		if (depth == 0) {
+			throw new IllegalStateException("GeometryPool.end() called without begin()");
+		}
+
+		depth--;
+		translationsUsed = marks[3 * depth];
+		rotationsUsed = marks[3 * depth + 1];
+		posesUsed = marks[3 * depth + 2];
+	}
+
+	public MutableTranslation2D translation() {
+		checkBorrowing();
+
+		if (translationsUsed == translations.length) {
+			translations = Arrays.copyOf(translations, 2 * translations.length);
+		}
+		if (translations[translationsUsed] == null) {
+			translations[translationsUsed] = new MutableTranslation2D();
+		}
+
+		return translations[translationsUsed++];
+	}
+
+	public MutableRotation2D rotation() {
+		checkBorrowing();
+
+		if (rotationsUsed == rotations.length) {
+			rotations = Arrays.copyOf(rotations, 2 * rotations.length);
+		}
+		if (rotations[rotationsUsed] == null) {
+			rotations[rotationsUsed] = new MutableRotation2D();
+		}
+
+		return rotations[rotationsUsed++];
+	}
+
+	public MutablePose2D pose() {
+		checkBorrowing();
+
+		if (posesUsed == poses.length) {
+			poses = Arrays.copyOf(poses, 2 * poses.length);
+		}
+		if (poses[posesUsed] == null) {
+			poses[posesUsed] = new MutablePose2D();
+		}
+
+		return poses[posesUsed++];
+	}
+
+	private void checkBorrowing() {
+		if (depth == 0) {
+			throw new IllegalStateException("GeometryPool objects must be borrowed between begin() and end()");
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package org.team3128.common.utility.math;
+
+/**
+ * A Pose2D that is changed in place instead of returning a new object, for code
+ * that runs every control loop and shouldn't allocate.
+ *
+ * Every set method writes its result into this object and returns it, so calls
+ * can be chained. The arguments may be this object itself.
+ */
+public class MutablePose2D {
+	private final MutableTranslation2D translation = new MutableTranslation2D();
+	private final MutableRotation2D rotation = new MutableRotation2D();
+
+	public MutablePose2D() {
+	}
+
+	/**
+	 * @param angle IN DEGREES
+	 */
+	public MutablePose2D(double x, double y, double angle) {
+		set(x, y, angle);
+	}
+
+	public MutablePose2D(Pose2D other) {
+		set(other);
+	}
+
+	/**
+	 * @return The translation of this pose. Changing it changes the pose.
+	 */
+	public MutableTranslation2D getTranslation() {
+		return translation;
+	}
+
+	/**
+	 * @return The rotation of this pose. Changing it changes the pose.
+	 */
+	public MutableRotation2D getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * @param angle IN DEGREES
+	 */
+	public MutablePose2D set(double x, double y, double angle) {
+		translation.set(x, y);
+		rotation.setDegrees(angle);
+		return this;
+	}
+
+	public MutablePose2D set(Pose2D other) {
+		translation.set(other.getTranslation());
+		rotation.set(other.getRotation());
+		return this;
+	}
+
+	public MutablePose2D set(MutablePose2D other) {
+		translation.set(other.translation);
+		rotation.set(other.rotation);
+		return this;
+	}
+
+	/**
+	 * Set this pose to pose moved by a transform in pose's own frame, the same as
+	 * {@link Pose2D#transformBy(Transform2D)}.
+	 *
+	 * @param pose      The starting pose
+	 * @param transform The transform, as a pose relative to the starting pose
+	 */
+	public MutablePose2D setTransformBy(MutablePose2D pose, MutablePose2D transform) {
+		return setTransformBy(pose, transform.translation.getX(), transform.translation.getY(),
+				transform.rotation.cos(), transform.rotation.sin());
+	}
+
+	/**
+	 * Set this pose to pose moved by a transform in pose's own frame, the same as
+	 * {@link Pose2D#transformBy(Transform2D)}.
+	 */
+	public MutablePose2D setTransformBy(MutablePose2D pose, Transform2D transform) {
+		return setTransformBy(pose, transform.getTranslation().getX(), transform.getTranslation().getY(),
+				transform.getRotation().cos(), transform.getRotation().sin());
+	}
+
+	private MutablePose2D setTransformBy(MutablePose2D pose, double dx, double dy, double dcos, double dsin) {
+		double cos = pose.rotation.cos();
+		double sin = pose.rotation.sin();
+
+		translation.set(pose.translation.getX() + dx * cos - dy * sin, pose.translation.getY() + dx * sin + dy * cos);
+		rotation.set(cos * dcos - sin * dsin, sin * dcos + cos * dsin);
+		return this;
+	}
+
+	/**
+	 * Set this pose to pose as seen from origin's frame, the same as
+	 * {@link Pose2D#relativeTo(Pose2D)}.
+	 */
+	public MutablePose2D setRelativeTo(MutablePose2D pose, MutablePose2D origin) {
+		double cos = origin.rotation.cos();
+		double sin = origin.rotation.sin();
+		double dx = pose.translation.getX() - origin.translation.getX();
+		double dy = pose.translation.getY() - origin.translation.getY();
+		double poseCos = pose.rotation.cos();
+		double poseSin = pose.rotation.sin();
+
+		translation.set(dx * cos + dy * sin, -dx * sin + dy * cos);
+		rotation.set(poseCos * cos + poseSin * sin, poseSin * cos - poseCos * sin);
+		return this;
+	}
+
+	/**
+	 * Interpolate from this pose to another the same way trajectories do: the
+	 * translation moves in a straight line, and the rotation turns the shorter way
+	 * around.
+	 *
+	 * @param out        Where to write the result. May be this or other.
+	 * @param other      The pose at a percentage of 1
+	 * @param percentage How far to go from this pose to the other
+	 * @return out
+	 */
+	public MutablePose2D interpolateInto(MutablePose2D out, MutablePose2D other, double percentage) {
+		translation.interpolateInto(out.translation, other.translation, percentage);
+		rotation.interpolateInto(out.rotation, other.rotation, percentage);
+		return out;
+	}
+
+	/**
+	 * @return A new, immutable copy of this pose
+	 */
+	public Pose2D toPose2D() {
+		return new Pose2D(translation.toTranslation2D(), rotation.toRotation2D());
+	}
+
+	@Override
+	public String toString() {
+		return "Translation: " + translation + ", Rotation: " + rotation;
+	}
+}
@@ -0,0 +1,122 @@
+package org.team3128.common.utility.math;
+
+/**
+ * A Rotation2D that is changed in place instead of returning a new object, for
+ * code that runs every control loop and shouldn't allocate.
+ *
+ * Every set method writes its result into this object and returns it, so calls
+ * can be chained. The arguments may be this object itself.
+ */
+public class MutableRotation2D {
+	private double cos;
+	private double sin;
+
+	public MutableRotation2D() {
+		cos = 1;
+		sin = 0;
+	}
+
+	public MutableRotation2D(Rotation2D other) {
+		set(other);
+	}
+
+	public double cos() {
+		return cos;
+	}
+
+	public double sin() {
+		return sin;
+	}
+
+	/**
+	 * @return The rotation in radians, between -pi and pi
+	 */
+	public double getRadians() {
+		return Math.atan2(sin, cos);
+	}
+
+	/**
+	 * @return The rotation in degrees, between -180 and 180
+	 */
+	public double getDegrees() {
+		return Math.toDegrees(getRadians());
+	}
+
+	/**
+	 * Set the cos and sin directly, scaling them to a magnitude of 1.
+	 */
+	public MutableRotation2D set(double cos, double sin) {
+		double magnitude = Math.hypot(cos, sin);
+		if (magnitude > 1E-9) {
+			this.cos = cos / magnitude;
+			this.sin = sin / magnitude;
+		} else {
+			this.cos = 1;
+			this.sin = 0;
+		}
+		return this;
+	}
+
+	public MutableRotation2D set(Rotation2D other) {
+		cos = other.cos();
+		sin = other.sin();
+		return this;
+	}
+
+	public MutableRotation2D set(MutableRotation2D other) {
+		cos = other.cos;
+		sin = other.sin;
+		return this;
+	}
+
+	public MutableRotation2D setRadians(double radians) {
+		cos = Math.cos(radians);
+		sin = Math.sin(radians);
+		return this;
+	}
+
+	public MutableRotation2D setDegrees(double degrees) {
+		return setRadians(Math.toRadians(degrees));
+	}
+
+	/**
+	 * Set this rotation to a rotated by b, i.e. the sum of their angles.
+	 */
+	public MutableRotation2D setRotateBy(MutableRotation2D a, MutableRotation2D b) {
+		return set(a.cos * b.cos - a.sin * b.sin, a.sin * b.cos + a.cos * b.sin);
+	}
+
+	/**
+	 * Set this rotation to the rotation that undoes a.
+	 */
+	public MutableRotation2D setInverse(MutableRotation2D a) {
+		cos = a.cos;
+		sin = -a.sin;
+		return this;
+	}
+
+	/**
+	 * Interpolate from this rotation to another along the shorter way around.
+	 *
+	 * @param out        Where to write the result. May be this or other.
+	 * @param other      The rotation at a percentage of 1
+	 * @param percentage How far to go from this rotation to the other
+	 * @return out
+	 */
+	public MutableRotation2D interpolateInto(MutableRotation2D out, MutableRotation2D other, double percentage) {
+		double difference = Math.atan2(cos * other.sin - sin * other.cos, cos * other.cos + sin * other.sin);
+		return out.setRadians(getRadians() + difference * percentage);
+	}
+
+	/**
+	 * @return A new, immutable copy of this rotation
+	 */
+	public Rotation2D toRotation2D() {
+		return new Rotation2D(cos, sin);
+	}
+
+	@Override
+	public String toString() {
+		return "" + getDegrees();
+	}
+}
@@ -0,0 +1,110 @@
+package org.team3128.common.utility.math;
+
+/**
+ * A Translation2D that is changed in place instead of returning a new object,
+ * for code that runs every control loop and shouldn't allocate.
+ *
+ * Every set method writes its result into this object and returns it, so calls
+ * can be chained. The arguments may be this object itself.
+ */
+public class MutableTranslation2D {
+	private double x;
+	private double y;
+
+	public MutableTranslation2D() {
+		x = 0;
+		y = 0;
+	}
+
+	public MutableTranslation2D(double x, double y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	public MutableTranslation2D(Translation2D other) {
+		set(other);
+	}
+
+	public double getX() {
+		return x;
+	}
+
+	public double getY() {
+		return y;
+	}
+
+	public MutableTranslation2D set(double x, double y) {
+		this.x = x;
+		this.y = y;
+		return this;
+	}
+
+	public MutableTranslation2D set(Translation2D other) {
+		return set(other.getX(), other.getY());
+	}
+
+	public MutableTranslation2D set(MutableTranslation2D other) {
+		return set(other.x, other.y);
+	}
+
+	/**
+	 * Set this translation to a + b.
+	 */
+	public MutableTranslation2D setPlus(MutableTranslation2D a, MutableTranslation2D b) {
+		return set(a.x + b.x, a.y + b.y);
+	}
+
+	/**
+	 * Set this translation to a - b.
+	 */
+	public MutableTranslation2D setMinus(MutableTranslation2D a, MutableTranslation2D b) {
+		return set(a.x - b.x, a.y - b.y);
+	}
+
+	/**
+	 * Set this translation to a scaled by a scalar.
+	 */
+	public MutableTranslation2D setTimes(MutableTranslation2D a, double scalar) {
+		return set(a.x * scalar, a.y * scalar);
+	}
+
+	/**
+	 * Set this translation to a rotated counterclockwise about the origin.
+	 */
+	public MutableTranslation2D setRotateBy(MutableTranslation2D a, MutableRotation2D rotation) {
+		return set(a.x * rotation.cos() - a.y * rotation.sin(), a.x * rotation.sin() + a.y * rotation.cos());
+	}
+
+	public double getMagnitude() {
+		return Math.hypot(x, y);
+	}
+
+	public double getDistanceTo(MutableTranslation2D other) {
+		return Math.hypot(x - other.x, y - other.y);
+	}
+
+	/**
+	 * Linearly interpolate from this translation to another.
+	 *
+	 * @param out        Where to write the result. May be this or other.
+	 * @param other      The translation at a percentage of 1
+	 * @param percentage How far to go from this translation to the other
+	 * @return out
+	 */
+	public MutableTranslation2D interpolateInto(MutableTranslation2D out, MutableTranslation2D other,
+			double percentage) {
+		return out.set(x + (other.x - x) * percentage, y + (other.y - y) * percentage);
+	}
+
+	/**
+	 * @return A new, immutable copy of this translation
+	 */
+	public Translation2D toTranslation2D() {
+		return new Translation2D(x, y);
+	}
+
+	@Override
+	public String toString() {
+		return ("<" + x + ", " + y + ">");
+	}
+}
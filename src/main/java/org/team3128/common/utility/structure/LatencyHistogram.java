@@ -0,0 +1,126 @@
+package org.team3128.common.utility.structure;
+
+/**
+ * Fixed-size log-linear histogram of durations in microseconds. Every power of
+ * two is split into {@link #SUB_BUCKETS} linear buckets, so the relative error
+ * of a reported percentile is at most 1/{@link #SUB_BUCKETS}.
+ *
+ * Recording never allocates or locks. It is meant to have a single writer (the
+ * main loop) and any number of readers; readers may see a slightly stale
+ * snapshot, which is fine for telemetry.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 3;
+	public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/**
+	 * Largest value that gets its own bucket, ~16.7 seconds. Anything above is
+	 * clamped into the last bucket (but still reported exactly by getMax()).
+	 */
+	private static final int MAX_EXPONENT = 24;
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+	private final int[] counts = new int[BUCKET_COUNT];
+
+	private volatile int totalCount;
+	private volatile long max;
+
+	/**
+	 * Record a single duration.
+	 *
+	 * @param micros Duration in microseconds. Negative values are treated as zero.
+	 */
+	public void record(long micros) {
+		if (micros < 0) {
+			micros = 0;
+		}
+
+		counts[bucketIndex(micros)]++;
+		if (micros > max) {
+			max = micros;
+		}
+		totalCount++;
+	}
+
+	/**
+	 * @return The number of values recorded since the last reset.
+	 */
+	public int getCount() {
+		return totalCount;
+	}
+
+	/**
+	 * @return The largest value recorded since the last reset, in microseconds.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Get an upper bound for the given percentile.
+	 *
+	 * @param percentile Percentile, from 0 to 100
+	 * @return The upper edge of the bucket which contains the percentile, in
+	 *         microseconds, clamped to the largest recorded value. Zero if nothing
+	 *         has been recorded.
+	 */
+	public long getPercentile(double percentile) {
+		int total = totalCount;
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = (long) Math.ceil(total * percentile / 100.0);
+		if (target < 1) {
+			target = 1;
+		}
+
+		long seen = 0;
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			seen += counts[index];
+			if (seen >= target) {
+				return Math.min(bucketUpperBound(index), max);
+			}
+		}
+
+		return max;
+	}
+
+	/**
+	 * Forget all recorded values. Should only be called from the writer thread.
+	 */
+	public void reset() {
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			counts[index] = 0;
+		}
+		max = 0;
+		totalCount = 0;
+	}
+
+	static int bucketIndex(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKET_COUNT - 1;
+		}
+
+		int shift = exponent - SUB_BITS;
+		int subBucket = (int) (micros >>> shift) - SUB_BUCKETS;
+
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+
+		int shift = index / SUB_BUCKETS - 1;
+		int subBucket = index % SUB_BUCKETS;
+
+		return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+}
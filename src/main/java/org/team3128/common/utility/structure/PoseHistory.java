@@ -0,0 +1,98 @@
+package org.team3128.common.utility.structure;
+
+import org.team3128.common.utility.math.Pose2D;
+
+/**
+ * A timestamped history of the robot's pose, so that measurements which were
+ * taken in the past (such as a Limelight's, which arrive a pipeline latency
+ * late) can be compared against where the robot was when they were taken.
+ *
+ * Poses are added at the control rate and looked up by time with a binary
+ * search, interpolating between the poses on either side. Headings are
+ * interpolated linearly, so they should be continuous rather than wrapped to
+ * +/-180 degrees, as the NavX's getAngle() is.
+ *
+ * Thread safe.
+ */
+public class PoseHistory {
+	private static final int X = 0;
+	private static final int Y = 1;
+	private static final int HEADING = 2;
+
+	private final StateHistory history;
+
+	private final double[] pose = new double[3];
+
+	/**
+	 * @param capacity Number of poses to keep. Lookups further back than this
+	 *                 get the oldest pose.
+	 */
+	public PoseHistory(int capacity) {
+		history = new StateHistory(capacity, 3);
+	}
+
+	/**
+	 * Add the newest pose.
+	 *
+	 * @param timestamp Time of the pose in seconds, no earlier than the last one
+	 * @param heading   Heading in degrees
+	 */
+	public synchronized void add(double timestamp, double x, double y, double heading) {
+		pose[X] = x;
+		pose[Y] = y;
+		pose[HEADING] = heading;
+
+		history.add(timestamp, pose);
+	}
+
+	public synchronized void clear() {
+		history.clear();
+	}
+
+	public synchronized boolean isEmpty() {
+		return history.isEmpty();
+	}
+
+	/**
+	 * Get the robot's heading at a time. Returns 0 if there are no poses.
+	 *
+	 * @param timestamp Time in seconds
+	 * @return Heading in degrees
+	 */
+	public synchronized double getHeading(double timestamp) {
+		if (history.isEmpty()) {
+			return 0;
+		}
+
+		return history.getAt(timestamp, HEADING);
+	}
+
+	/**
+	 * Get how far the robot has turned since a time, such as when a camera frame
+	 * was captured. Returns 0 if there are no poses.
+	 *
+	 * @param timestamp Time in seconds
+	 * @return The newest heading minus the heading at that time, in degrees
+	 */
+	public synchronized double getHeadingChangeSince(double timestamp) {
+		if (history.isEmpty()) {
+			return 0;
+		}
+
+		return history.getLatest(HEADING) - history.getAt(timestamp, HEADING);
+	}
+
+	/**
+	 * Get the robot's pose at a time. Returns null if there are no poses.
+	 *
+	 * @param timestamp Time in seconds
+	 */
+	public synchronized Pose2D getPose(double timestamp) {
+		if (history.isEmpty()) {
+			return null;
+		}
+
+		return new Pose2D(history.getAt(timestamp, X), history.getAt(timestamp, Y),
+				history.getAt(timestamp, HEADING));
+	}
+}
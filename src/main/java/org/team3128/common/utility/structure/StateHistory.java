@@ -0,0 +1,169 @@
+package org.team3128.common.utility.structure;
+
+/**
+ * A fixed-size history of timestamped state vectors (e.g. x, y, theta), kept in
+ * one primitive array per state variable so that adding a state doesn't box or
+ * allocate. Once it's full, adding a state replaces the oldest one.
+ *
+ * Timestamps must be added in order. NOT thread safe.
+ */
+public class StateHistory {
+	private final int capacity;
+	private final int dimensions;
+
+	private final double[] timestamps;
+
+	// values[dimension][index % capacity]
+	private final double[][] values;
+
+	// number of states ever added
+	private long count = 0;
+
+	/**
+	 * @param capacity   Number of states to keep
+	 * @param dimensions Number of variables in each state
+	 */
+	public StateHistory(int capacity, int dimensions) {
+		if (capacity < 1 || dimensions < 1) {
+			throw new IllegalArgumentException("Capacity and dimensions must be positive");
+		}
+
+		this.capacity = capacity;
+		this.dimensions = dimensions;
+
+		timestamps = new double[capacity];
+		values = new double[dimensions][capacity];
+	}
+
+	/**
+	 * Add a state at the end of the history.
+	 *
+	 * @param timestamp Time of the state, no earlier than the last one
+	 * @param state     The state's variables. Only the first getDimensions() are
+	 *                  used.
+	 */
+	public void add(double timestamp, double[] state) {
+		int index = (int) (count % capacity);
+
+		timestamps[index] = timestamp;
+		for (int dimension = 0; dimension < dimensions; dimension++) {
+			values[dimension][index] = state[dimension];
+		}
+
+		count++;
+	}
+
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * @return The number of states stored, up to the capacity
+	 */
+	public int size() {
+		return (int) Math.min(count, capacity);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getDimensions() {
+		return dimensions;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * @return One variable of the newest state
+	 */
+	public double getLatest(int dimension) {
+		return get(0, dimension);
+	}
+
+	public double getLatestTimestamp() {
+		return getTimestamp(0);
+	}
+
+	/**
+	 * @param age       How many states back to look, where 0 is the newest
+	 * @param dimension Which variable to get
+	 */
+	public double get(int age, int dimension) {
+		return values[dimension][indexOf(age)];
+	}
+
+	public double getTimestamp(int age) {
+		return timestamps[indexOf(age)];
+	}
+
+	/**
+	 * Find the newest state at or before a time, with a binary search.
+	 *
+	 * @return Its age (0 for the newest state), or -1 if every stored state is
+	 *         after the time
+	 */
+	public int findAge(double timestamp) {
+		int size = size();
+
+		// ages increase as timestamps decrease
+		int low = 0;
+		int high = size - 1;
+		int found = -1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (getTimestamp(mid) <= timestamp) {
+				found = mid;
+				high = mid - 1;
+			} else {
+				low = mid + 1;
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Get a variable at a time, interpolating linearly between the states on
+	 * either side of it. Times outside the stored range get the oldest or newest
+	 * value.
+	 */
+	public double getAt(double timestamp, int dimension) {
+		int age = findAge(timestamp);
+
+		if (age < 0) {
+			return get(size() - 1, dimension);
+		}
+		if (age == 0) {
+			return get(0, dimension);
+		}
+
+		double before = getTimestamp(age);
+		double after = getTimestamp(age - 1);
+		double fraction = after > before ? (timestamp - before) / (after - before) : 0;
+
+		double beforeValue = get(age, dimension);
+		return beforeValue + (get(age - 1, dimension) - beforeValue) * fraction;
+	}
+
+	/**
+	 * Copy the newest state into an array.
+	 */
+	public void getLatest(double[] state) {
+		int index = indexOf(0);
+		for (int dimension = 0; dimension < dimensions; dimension++) {
+			state[dimension] = values[dimension][index];
+		}
+	}
+
+	private int indexOf(int age) {
+		if (age < 0 || age >= size()) {
+			throw new IndexOutOfBoundsException("Age " + age + " out of range for a history of " + size());
+		}
+
+		return (int) ((count - 1 - age) % capacity);
+	}
+}
@@ -0,0 +1,72 @@
+package org.team3128.common.utility.structure;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free handoff of the latest value from one writer thread to one reader
+ * thread, for passing data between loops running at different rates.
+ *
+ * Three instances of T are preallocated. The writer fills in the object
+ * returned by getWriteBuffer() and calls publish(); the reader calls
+ * getReadBuffer(), which returns the most recently published object. Neither
+ * side ever blocks or allocates, and the reader never sees a half-written
+ * object. Intermediate values are dropped if the writer is faster than the
+ * reader.
+ */
+public class TripleBuffer<T> {
+    // low two bits: index of the middle buffer, bit 2: new data available
+    private static final int INDEX_MASK = 0b011;
+    private static final int DIRTY_BIT = 0b100;
+
+    private final Object[] buffers = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    private int writeIndex = 0;
+    private int readIndex = 2;
+
+    public TripleBuffer(Supplier<T> factory) {
+        for (int index = 0; index < buffers.length; index++) {
+            buffers[index] = factory.get();
+        }
+    }
+
+    /**
+     * @return The object the writer thread should fill in before calling
+     *         publish(). Only call from the writer thread.
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) buffers[writeIndex];
+    }
+
+    /**
+     * Make the write buffer visible to the reader. Only call from the writer
+     * thread.
+     */
+    public void publish() {
+        writeIndex = middle.getAndSet(writeIndex | DIRTY_BIT) & INDEX_MASK;
+    }
+
+    /**
+     * @return Whether a value has been published since the last call to
+     *         getReadBuffer()
+     */
+    public boolean hasNewData() {
+        return (middle.get() & DIRTY_BIT) != 0;
+    }
+
+    /**
+     * @return The most recently published object. It will not be touched by the
+     *         writer until the next call to getReadBuffer(). Only call from the
+     *         reader thread.
+     */
+    @SuppressWarnings("unchecked")
+    public T getReadBuffer() {
+        if (hasNewData()) {
+            readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+        }
+
+        return (T) buffers[readIndex];
+    }
+}
@@ -5,6 +5,7 @@ import org.team3128.common.drive.DriveSignal;
 import org.team3128.common.hardware.limelight.LEDMode;
 import org.team3128.common.hardware.limelight.Pipeline;
 import org.team3128.common.hardware.limelight.Limelight;
+import org.team3128.common.hardware.limelight.LimelightFilter;
 import org.team3128.common.hardware.limelight.LimelightData;
 import org.team3128.common.hardware.limelight.LimelightKey;
 import org.team3128.common.hardware.limelight.StreamMode;
@@ -51,6 +52,7 @@ public class CmdAlignShoot implements Command {
     private double goalHorizontalOffset;
 
     private double currentHorizontalOffset;
+    private final double[] trackedOffset = new double[2];
 
     private double currentError, previousError;
     private double currentTime, previousTime;
@@ -65,6 +67,7 @@ public class CmdAlignShoot implements Command {
     private Set<Subsystem> requirements;
 
     private StateTracker stateTracker = StateTracker.getInstance();
+    private RobotTracker robotTracker = RobotTracker.getInstance();
 
     private Command hopperShoot, organize;
 
@@ -152,7 +155,7 @@ public class CmdAlignShoot implements Command {
 
                     shooter.setSetpoint(desiredRPM);
 
-                    currentHorizontalOffset = limelight.getValue(LimelightKey.HORIZONTAL_OFFSET, 5);
+                    currentHorizontalOffset = getHorizontalOffset();
 
                     previousTime = RobotController.getFPGATime();
                     previousError = goalHorizontalOffset - currentHorizontalOffset;
@@ -200,7 +203,7 @@ public class CmdAlignShoot implements Command {
                         gotDistance = true;
                     }
 
-                    currentHorizontalOffset = limelight.getValue(LimelightKey.HORIZONTAL_OFFSET, 5);
+                    currentHorizontalOffset = getHorizontalOffset();
 
                     currentTime = RobotController.getFPGATime();
                     currentError = goalHorizontalOffset - currentHorizontalOffset;
@@ -272,6 +275,21 @@ public class CmdAlignShoot implements Command {
         }
     }
 
+    /**
+     * Gets the target's smoothed horizontal offset as of now, rather than as of
+     * when the Limelight captured the frame, by taking out how far the robot has
+     * turned since then.
+     */
+    private double getHorizontalOffset() {
+        if (!limelight.getFilter().getTrackedEstimate(LimelightKey.HORIZONTAL_OFFSET, trackedOffset)) {
+            // no frames with a target to go on, so hold the last offset
+            return currentHorizontalOffset;
+        }
+
+        return trackedOffset[LimelightFilter.VALUE]
+                - robotTracker.getHeadingChangeSince(trackedOffset[LimelightFilter.CAPTURE_TIMESTAMP]);
+    }
+
     @Override
     public boolean isFinished() {
         if (hopper.isEmpty() || numBallsShot >= numBallsToShoot) {
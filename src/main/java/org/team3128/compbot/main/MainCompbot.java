@@ -21,6 +21,7 @@ import org.team3128.common.utility.units.Length;
 import org.team3128.common.vision.CmdHorizontalOffsetFeedbackDrive;
 import org.team3128.common.utility.Log;
 import org.team3128.common.utility.RobotMath;
+import org.team3128.common.utility.TelemetryRecorder;
 import org.team3128.common.utility.datatypes.PIDConstants;
 import org.team3128.common.narwhaldashboard.NarwhalDashboard;
 import org.team3128.common.listener.ListenerManager;
@@ -81,7 +82,7 @@ public class MainCompbot extends NarwhalRobot {
     static Climber climber = new Climber();
 
  
-    // RobotTracker robotTracker = RobotTracker.getInstance();
+    RobotTracker robotTracker = RobotTracker.getInstance();
 
     ExecutorService executor = Executors.newFixedThreadPool(6);
     CommandScheduler scheduler = CommandScheduler.getInstance();
@@ -97,7 +98,14 @@ public class MainCompbot extends NarwhalRobot {
 
     public double startTime = 0;
 
-    public String trackerCSV = "Time, X, Y, Theta, Xdes, Ydes";
+    // 3 minutes of rows at 50 Hz
+    public TelemetryRecorder tracker = new TelemetryRecorder("tracker", 9000, "Time", "X", "Y", "Theta", "Xdes", "Ydes");
+    private static final int TRACKER_TIME = 0;
+    private static final int TRACKER_X = 1;
+    private static final int TRACKER_Y = 2;
+    private static final int TRACKER_THETA = 3;
+    private static final int TRACKER_XDES = 4;
+    private static final int TRACKER_YDES = 5;
 
     public ArrayList<Pose2D> waypoints = new ArrayList<Pose2D>();
     public Trajectory trajectory;
@@ -155,6 +163,9 @@ public class MainCompbot extends NarwhalRobot {
 
     @Override
     protected void constructHardware() {
+        NarwhalDashboard.addTelemetry(tracker);
+        registerPeriodic("Odometry", robotTracker::updateOdometry, RobotTracker.ODOMETRY_PERIOD, 0);
+
         driveCmdRunning = new DriveCommandRunning();
 
         ahrs = drive.ahrs;
@@ -557,12 +568,13 @@ public class MainCompbot extends NarwhalRobot {
         // SmartDashboard.putNumber("Shooter Setpoint", currentShooterSetpoint);
         // SmartDashboard.putNumber("BALL COUNT", hopper.ballCount);
 
-        // trackerCSV += "\n" + String.valueOf(Timer.getFPGATimestamp() - startTime) + ","
-        //         + String.valueOf(robotTracker.getOdometry().translationMat.getX()) + ","
-        //         + String.valueOf(robotTracker.getOdometry().translationMat.getY()) + ","
-        //         + String.valueOf(robotTracker.getOdometry().rotationMat.getDegrees()) + ","
-        //         + String.valueOf(robotTracker.trajOdometry.translationMat.getX()) + ","
-        //         + String.valueOf(robotTracker.trajOdometry.translationMat.getY());
+        // tracker.set(TRACKER_TIME, Timer.getFPGATimestamp() - startTime);
+        // tracker.set(TRACKER_X, robotTracker.getOdometry().translationMat.getX());
+        // tracker.set(TRACKER_Y, robotTracker.getOdometry().translationMat.getY());
+        // tracker.set(TRACKER_THETA, robotTracker.getOdometry().rotationMat.getDegrees());
+        // tracker.set(TRACKER_XDES, robotTracker.trajOdometry.translationMat.getX());
+        // tracker.set(TRACKER_YDES, robotTracker.trajOdometry.translationMat.getY());
+        // tracker.endRow();
     }
 
     @Override
@@ -21,6 +21,7 @@ import org.team3128.common.utility.units.Length;
 import org.team3128.common.vision.CmdHorizontalOffsetFeedbackDrive;
 import org.team3128.common.utility.Log;
 import org.team3128.common.utility.RobotMath;
+import org.team3128.common.utility.TelemetryRecorder;
 import org.team3128.common.utility.datatypes.PIDConstants;
 import org.team3128.common.narwhaldashboard.NarwhalDashboard;
 import org.team3128.common.listener.ListenerManager;
@@ -81,7 +82,7 @@ public class MainDrivetrain extends NarwhalRobot {
     static Climber climber = new Climber();
 
  
-    // RobotTracker robotTracker = RobotTracker.getInstance();
+    RobotTracker robotTracker = RobotTracker.getInstance();
 
     ExecutorService executor = Executors.newFixedThreadPool(6);
     CommandScheduler scheduler = CommandScheduler.getInstance();
@@ -97,7 +98,14 @@ public class MainDrivetrain extends NarwhalRobot {
 
     public double startTime = 0;
 
-    public String trackerCSV = "Time, X, Y, Theta, Xdes, Ydes";
+    // 3 minutes of rows at 50 Hz
+    public TelemetryRecorder tracker = new TelemetryRecorder("tracker", 9000, "Time", "X", "Y", "Theta", "Xdes", "Ydes");
+    private static final int TRACKER_TIME = 0;
+    private static final int TRACKER_X = 1;
+    private static final int TRACKER_Y = 2;
+    private static final int TRACKER_THETA = 3;
+    private static final int TRACKER_XDES = 4;
+    private static final int TRACKER_YDES = 5;
 
     public ArrayList<Pose2D> waypoints = new ArrayList<Pose2D>();
     public Trajectory trajectory;
@@ -115,6 +123,8 @@ public class MainDrivetrain extends NarwhalRobot {
 
     @Override
     protected void constructHardware() {
+        NarwhalDashboard.addTelemetry(tracker);
+        registerPeriodic("Odometry", robotTracker::updateOdometry, RobotTracker.ODOMETRY_PERIOD, 0);
 
         driveCmdRunning = new DriveCommandRunning();
 
@@ -5,17 +5,27 @@ package org.team3128.compbot.subsystems;
 
 import com.ctre.phoenix.Logger;
 
+import org.team3128.common.drive.Odometry;
 import org.team3128.common.utility.Log;
 import org.team3128.common.utility.RobotMath;
 import org.team3128.common.utility.math.InterpolablePair;
+import org.team3128.common.utility.math.MutablePose2D;
 import org.team3128.common.utility.math.Pose2D;
-import org.team3128.common.utility.math.Rotation2D;
-import org.team3128.common.utility.math.Translation2D;
+import org.team3128.common.utility.structure.PoseHistory;
 
 import edu.wpi.first.wpilibj2.command.Subsystem;
 
 public class RobotTracker implements Subsystem {
 
+	// 2 seconds at the scheduler's 50 Hz
+	private static final int HISTORY_SIZE = 100;
+
+	/**
+	 * Time between odometry updates, in seconds. Pass {@link #updateOdometry()}
+	 * to NarwhalRobot.registerPeriodic() with this period.
+	 */
+	public static final double ODOMETRY_PERIOD = 1.0 / 200;
+
 	private static final RobotTracker trackingInstance = new RobotTracker();
 
 	public static RobotTracker getInstance() {
@@ -23,56 +33,92 @@ public class RobotTracker implements Subsystem {
 	}
 
 	private FalconDrive drive;
-	private Pose2D currentOdometry;
-	public Pose2D trajOdometry;
-	private double oldDistance = 0;
-	private double currentDistance;
-	private double oldTheta = 0;
-	private double currentTheta;
+	private final Odometry odometry;
+	public final MutablePose2D trajOdometry = new MutablePose2D();
+
+	private final PoseHistory poseHistory = new PoseHistory(HISTORY_SIZE);
+	private final double[] pose = new double[4];
 
 	private RobotTracker() {
 		drive = FalconDrive.getInstance();
-		currentOdometry = new Pose2D(new Translation2D(), drive.getGyroAngle());
-		trajOdometry = new Pose2D(new Translation2D(), new Rotation2D());
+		odometry = new Odometry(drive);
 
+		// Subsystem doesn't register itself like SubsystemBase does, and
+		// periodic() needs to run for the history to update
+		register();
 	}
 
 	// synchronized public Rotation2D getGyroAngle(long time) {
 	// return gyroHistory.getInterpolatedKey(time);
 	// }
 
-	synchronized public Pose2D getOdometry() {
-		return currentOdometry;
+	public Pose2D getOdometry() {
+		return odometry.getPose();
+	}
+
+	/**
+	 * Copy the latest pose into an array without allocating.
+	 *
+	 * @see Odometry#getPose(double[])
+	 */
+	public void getOdometry(double[] pose) {
+		odometry.getPose(pose);
 	}
 
-	synchronized public void resetOdometry() {
+	/**
+	 * Copy the latest pose into a MutablePose2D without allocating.
+	 */
+	public void getOdometry(MutablePose2D pose) {
+		odometry.getPose(pose);
+	}
+
+	public void resetOdometry() {
+		// also clears the history
 		drive.resetGyro();
-		currentOdometry = new Pose2D(new Translation2D(), new Rotation2D());
-		oldDistance = drive.getDistance();
+		odometry.resetPosition(0, 0);
 	}
 
 	/**
-	 * Integrates the encoders and gyro to figure out robot position. A constant
-	 * curvature is assumed (aka there is a constant ratio between the velocities of
-	 * the right and left sides of the drivetrain)
+	 * Forget the pose history. Called by FalconDrive whenever the gyro is reset,
+	 * since that makes the old headings meaningless.
 	 */
-	@Override
-	public void periodic() {
-		currentDistance = drive.getDistance();
-		currentTheta = drive.getAngle();
+	public void clearHistory() {
+		poseHistory.clear();
+	}
 
-		double deltaDistance = currentDistance - oldDistance;
+	/**
+	 * Get how far the robot has turned since a time, for correcting vision
+	 * measurements which were captured then.
+	 *
+	 * @param timestamp FPGA timestamp in seconds
+	 * @return Change in gyro angle, in degrees
+	 */
+	public double getHeadingChangeSince(double timestamp) {
+		return poseHistory.getHeadingChangeSince(timestamp);
+	}
+
+	/**
+	 * Get where the robot was at a time, interpolating between updates.
+	 *
+	 * @param timestamp FPGA timestamp in seconds
+	 * @return null if there's no history yet
+	 */
+	public Pose2D getOdometry(double timestamp) {
+		return poseHistory.getPose(timestamp);
+	}
 
-		double deltaX = deltaDistance * RobotMath.cos(currentTheta);
-		double deltaY = deltaDistance * RobotMath.sin(currentTheta);
-		synchronized (this) {
-			double currX = currentOdometry.translationMat.getX() + deltaX;
-			double currY = currentOdometry.translationMat.getY() + deltaY;
+	/**
+	 * Integrates the encoders and gyro to figure out robot position. Runs on its
+	 * own thread, faster than the main loop.
+	 */
+	public void updateOdometry() {
+		odometry.update();
+	}
 
-			currentOdometry = new Pose2D(new Translation2D(currX, currY), Rotation2D.fromDegrees(currentTheta));
-		}
-		oldDistance = currentDistance;
-		oldTheta = currentTheta;
+	@Override
+	public void periodic() {
+		odometry.getPose(pose);
+		poseHistory.add(pose[Odometry.TIMESTAMP], pose[Odometry.X], pose[Odometry.Y], pose[Odometry.HEADING]);
 	}
 
 	// /**
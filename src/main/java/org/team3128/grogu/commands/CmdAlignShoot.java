@@ -5,6 +5,7 @@ import org.team3128.common.drive.DriveSignal;
 import org.team3128.common.hardware.limelight.LEDMode;
 import org.team3128.common.hardware.limelight.Pipeline;
 import org.team3128.common.hardware.limelight.Limelight;
+import org.team3128.common.hardware.limelight.LimelightFilter;
 import org.team3128.common.hardware.limelight.LimelightData;
 import org.team3128.common.hardware.limelight.LimelightKey;
 import org.team3128.common.hardware.limelight.StreamMode;
@@ -47,6 +48,7 @@ public class CmdAlignShoot implements Command {
     private double goalHorizontalOffset;
 
     private double currentHorizontalOffset;
+    private final double[] trackedOffset = new double[2];
 
     private double currentError, previousError;
     private double currentTime, previousTime;
@@ -135,7 +137,7 @@ public class CmdAlignShoot implements Command {
 
                     SmartDashboard.putNumber("ty", initData.ty());
 
-                    currentHorizontalOffset = limelight.getValue(LimelightKey.HORIZONTAL_OFFSET, Constants.VisionConstants.SAMPLE_RATE);//5);
+                    currentHorizontalOffset = getHorizontalOffset();
 
                     previousTime = RobotController.getFPGATime();
                     previousError = goalHorizontalOffset - currentHorizontalOffset;
@@ -169,7 +171,7 @@ public class CmdAlignShoot implements Command {
                         gotDistance = true;
                     }
 
-                    currentHorizontalOffset = limelight.getValue(LimelightKey.HORIZONTAL_OFFSET, Constants.VisionConstants.SAMPLE_RATE);
+                    currentHorizontalOffset = getHorizontalOffset();
 
                     currentTime = RobotController.getFPGATime();
                     currentError = goalHorizontalOffset - currentHorizontalOffset;
@@ -209,6 +211,21 @@ public class CmdAlignShoot implements Command {
         }
     }
 
+    /**
+     * Gets the target's smoothed horizontal offset as of now, rather than as of
+     * when the Limelight captured the frame, by taking out how far the robot has
+     * turned since then.
+     */
+    private double getHorizontalOffset() {
+        if (!limelight.getFilter().getTrackedEstimate(LimelightKey.HORIZONTAL_OFFSET, trackedOffset)) {
+            // no frames with a target to go on, so hold the last offset
+            return currentHorizontalOffset;
+        }
+
+        return trackedOffset[LimelightFilter.VALUE]
+                - drive.getHeadingChangeSince(trackedOffset[LimelightFilter.CAPTURE_TIMESTAMP]);
+    }
+
     @Override
     public boolean isFinished() {
         // if (hopper.getBallCount() == 0|| numBallsShot >= numBallsToShoot) {
@@ -7,6 +7,7 @@ import org.team3128.common.drive.calibrationutility.DriveCalibrationUtility;
 import org.team3128.common.hardware.limelight.LEDMode;
 import org.team3128.common.hardware.limelight.Pipeline;
 import org.team3128.common.hardware.limelight.Limelight;
+import org.team3128.common.hardware.limelight.LimelightFilter;
 import org.team3128.common.hardware.limelight.LimelightKey;
 import org.team3128.common.hardware.limelight.StreamMode;
 import org.team3128.common.hardware.gyroscope.Gyro;
@@ -28,6 +29,10 @@ import java.util.Set;
 import java.util.HashSet;
 
 public class CmdBallPursuit implements Command {
+    private static final int AUTO_AIM_CATEGORY = Log.category("CmdAutoAim");
+    private static final int POWER_MESSAGE = Log.template("L: {}; R: {}");
+    private static final int ERROR_MESSAGE = Log.template("Error: {}");
+
     FalconDrive drive;
     AHRS gyro;
 
@@ -52,6 +57,7 @@ public class CmdBallPursuit implements Command {
     private double targetHeight;
 
     private double currentHorizontalOffset;
+    private final double[] trackedOffset = new double[2];
     private double previousVerticalAngle, approximateDistance;
 
     private double currentAngle;
@@ -136,7 +142,7 @@ public class CmdBallPursuit implements Command {
 
                 drive.setWheelPower(new DriveSignal(0.8*visionPID.kF, 0.8*visionPID.kF));
 
-                currentHorizontalOffset = ballLimelight.getValue(LimelightKey.HORIZONTAL_OFFSET, 5);
+                currentHorizontalOffset = getHorizontalOffset();
 
                 previousTime = RobotController.getFPGATime();
                 previousError = goalHorizontalOffset - currentHorizontalOffset;
@@ -166,7 +172,7 @@ public class CmdBallPursuit implements Command {
                     cmdRunning.isRunning = false;
                 }
             } else {
-                currentHorizontalOffset = ballLimelight.getValue(LimelightKey.HORIZONTAL_OFFSET, 5);
+                currentHorizontalOffset = getHorizontalOffset();
 
                 currentTime = RobotController.getFPGATime();
                 currentError = goalHorizontalOffset - currentHorizontalOffset;
@@ -216,18 +222,33 @@ public class CmdBallPursuit implements Command {
             rightPower = RobotMath.clamp(blindPID.kF - feedbackPower, -1, 1);
             leftPower = RobotMath.clamp(blindPID.kF + feedbackPower, -1, 1);
 
-            Log.info("CmdAutoAim", "L: " + leftPower + "; R: " + rightPower);
+            Log.info(AUTO_AIM_CATEGORY, POWER_MESSAGE, leftPower, rightPower);
 
             drive.setWheelPower(new DriveSignal(0.7*leftPower, 0.7*rightPower)); //TODO: remove the 0.7's once testing is done
 
             previousTime = currentTime;
             previousError = currentError;
-            Log.info("CmdAutoAim", "Error:" + currentError);
+            Log.info(AUTO_AIM_CATEGORY, ERROR_MESSAGE, currentError);
 
             break;
         }
     }
 
+    /**
+     * Gets the target's smoothed horizontal offset as of now, rather than as of
+     * when the Limelight captured the frame, by taking out how far the robot has
+     * turned since then.
+     */
+    private double getHorizontalOffset() {
+        if (!ballLimelight.getFilter().getTrackedEstimate(LimelightKey.HORIZONTAL_OFFSET, trackedOffset)) {
+            // no frames with a target to go on, so hold the last offset
+            return currentHorizontalOffset;
+        }
+
+        return trackedOffset[LimelightFilter.VALUE]
+                - drive.getHeadingChangeSince(trackedOffset[LimelightFilter.CAPTURE_TIMESTAMP]);
+    }
+
     @Override
     public boolean isFinished() {
         if (aimState == HorizontalOffsetFeedbackDriveState.BLIND) {
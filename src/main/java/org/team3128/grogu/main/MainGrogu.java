@@ -25,8 +25,12 @@ import org.team3128.common.utility.units.Length;
 import org.team3128.common.vision.CmdHorizontalOffsetFeedbackDrive;
 import org.team3128.common.utility.Log;
 import org.team3128.common.utility.RobotMath;
+import org.team3128.common.utility.TelemetryRecorder;
 import org.team3128.common.utility.datatypes.PIDConstants;
 import org.team3128.common.narwhaldashboard.NarwhalDashboard;
+import org.team3128.common.autonomous.CmdReplayInput;
+import org.team3128.common.listener.AxisHandle;
+import org.team3128.common.listener.InputRecording;
 import org.team3128.common.listener.ListenerManager;
 import org.team3128.common.listener.POVValue;
 import org.team3128.common.listener.controllers.ControllerExtreme3D;
@@ -35,6 +39,7 @@ import org.team3128.common.listener.controltypes.POV;
 import org.team3128.common.hardware.motor.LazyCANSparkMax;
 import org.team3128.common.utility.math.Pose2D;
 import org.team3128.common.utility.math.Rotation2D;
+import org.team3128.common.utility.structure.StateHistory;
 import org.team3128.common.utility.test_suite.CanDevices;
 import org.team3128.common.utility.test_suite.ErrorCatcherUtility;
 import org.team3128.grogu.subsystems.*;
@@ -57,10 +62,15 @@ import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.concurrent.*;
 
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.InstantCommand;
 
 public class MainGrogu extends NarwhalRobot {
 
@@ -78,6 +88,13 @@ public class MainGrogu extends NarwhalRobot {
     CommandScheduler scheduler = CommandScheduler.getInstance();
     Thread auto;
 
+    // the drive joystick is recorded during teleop, so it can be replayed as an auto
+    private static final File DRIVE_RECORDING_FILE = new File("/home/lvuser/drive_recording.nir");
+    // the recording before it, in case the newest one wasn't worth keeping
+    private static final File PREVIOUS_DRIVE_RECORDING_FILE = new File("/home/lvuser/drive_recording.1.nir");
+    // shorter recordings are just enabling and disabling, not driving
+    private static final double MIN_DRIVE_RECORDING_SECONDS = 5;
+
     public Joystick joystickRight, joystickLeft;
     public ListenerManager listenerLeft, listenerRight;
     public AHRS ahrs;
@@ -90,7 +107,12 @@ public class MainGrogu extends NarwhalRobot {
 
     public int reverse = -1;
 
-    public String trackerCSV = "Time, X, Y, Theta, Xdes, Ydes";
+    // 3 minutes of rows at 50 Hz
+    public TelemetryRecorder tracker = new TelemetryRecorder("tracker", 9000, "Time", "X", "Y", "Theta");
+    private static final int TRACKER_TIME = 0;
+    private static final int TRACKER_X = 1;
+    private static final int TRACKER_Y = 2;
+    private static final int TRACKER_THETA = 3;
 
     public ArrayList<Pose2D> waypoints = new ArrayList<Pose2D>();
     public Trajectory trajectory;
@@ -109,15 +131,19 @@ public class MainGrogu extends NarwhalRobot {
     static EKF ekf = new EKF(0, 0, Math.PI/2, 0, 0, 10, 10, 0.66,//0.9652,
     0.01, 1e-3, 0.01, 0.01);
 
-    ArrayList<Double> KxList = new ArrayList<Double>();
-    ArrayList<Double> KyList = new ArrayList<Double>();
-    ArrayList<Double> KthetaList = new ArrayList<Double>();
-    ArrayList<Double> KvlList = new ArrayList<Double>();
-    ArrayList<Double> KvrList = new ArrayList<Double>();
+    // EKF state estimates, last 10 seconds at 50 Hz
+    private static final int STATE_X = 0;
+    private static final int STATE_Y = 1;
+    private static final int STATE_THETA = 2;
+    private static final int STATE_VL = 3;
+    private static final int STATE_VR = 4;
+    StateHistory kinematicHistory = new StateHistory(500, 5);
+
+    private static final double[] INITIAL_STATE = { 0, 0, Math.PI / 2, 0, 0 };
 
     private double[] inputArray = new double[4];
     private double[] kinematicArray = new double[6];
-    private double[] outputArray;
+    private double[] outputArray = new double[5];
     private double currentTime, previousTime, printerTime, initTime;
 
     public static Pose2d ekfPosition;
@@ -130,6 +156,17 @@ public class MainGrogu extends NarwhalRobot {
 
     @Override
     protected void constructHardware() {
+        NarwhalDashboard.addTelemetry(tracker);
+
+
+        // these log every tick; only print when something changes, and not too often
+        Log.setDeduplication("Hopper", 5);
+        Log.setDeduplication("CmdAlignShoot", 2);
+        Log.setRateLimit("CmdAlignShoot", 10, 20);
+        Log.setDeduplication("CmdAutoAim", 2);
+        Log.setRateLimit("CmdAutoAim", 10, 20);
+        Log.setDeduplication("CmdBallPursuit", 2);
+        Log.setRateLimit("Shooter", 5, 10);
 
         //shooterLimelight.setLEDMode(LEDMode.OFF);
         //ballLimelight.setLEDMode(LEDMode.OFF);
@@ -217,11 +254,15 @@ public class MainGrogu extends NarwhalRobot {
         listenerLeft.nameControl(new Button(11), "Increment Ball Count");
         listenerLeft.nameControl(new Button(12), "Decrement Ball Count");
 
+        AxisHandle moveTurn = listenerRight.axis("MoveTurn");
+        AxisHandle moveForwards = listenerRight.axis("MoveForwards");
+        AxisHandle throttleAxis = listenerRight.axis("Throttle");
+
         listenerRight.addMultiListener(() -> {
             if (driveCmdRunning.isRunning) {
-                double horiz = 0.4  * listenerRight.getAxis("MoveTurn"); //-0.5
-                double vert = -1.0 * reverse * listenerRight.getAxis("MoveForwards"); //-1.0
-                double throttle = -1.0 * listenerRight.getAxis("Throttle"); // -1.0
+                double horiz = 0.4  * moveTurn.get(); //-0.5
+                double vert = -1.0 * reverse * moveForwards.get(); //-1.0
+                double throttle = -1.0 * throttleAxis.get(); // -1.0
 
                 drive.arcadeDrive(horiz, vert, throttle, true);
             }
@@ -357,6 +398,16 @@ public class MainGrogu extends NarwhalRobot {
 
         NarwhalDashboard.addAuto("Find ball maybe", cmdBallIntake);
 
+        if (DRIVE_RECORDING_FILE.exists()) {
+            try {
+                InputRecording driveRecording = InputRecording.load(DRIVE_RECORDING_FILE);
+                NarwhalDashboard.addAuto("Replay last teleop", new InstantCommand(() -> driveCmdRunning.isRunning = true)
+                        .andThen(new CmdReplayInput(listenerRight, driveRecording)));
+            } catch (IOException e) {
+                Log.recoverable("MainGrogu", "Couldn't load drive recording: " + e.getMessage());
+            }
+        }
+
         // cmdBallPursuit = new CmdBallPursuit(drive, hopper, ahrs, ballLimelight, driveCmdRunning);
 
         //NarwhalDashboard.addAuto("pog", cmdBallPursuit);
@@ -373,26 +424,28 @@ public class MainGrogu extends NarwhalRobot {
             inputArray[2] = drive.getRightSpeed() * 0.0254;
             inputArray[3] = currentTime-previousTime;
             // where EKF is run
-            outputArray = ekf.runFilter(inputArray);
+            ekf.runFilter(currentTime, inputArray, outputArray);
 
             
-            kinematicArray[0] = KxList.get(KxList.size()-1);
-            kinematicArray[1] = KyList.get(KyList.size()-1);
+            kinematicArray[0] = kinematicHistory.getLatest(STATE_X);
+            kinematicArray[1] = kinematicHistory.getLatest(STATE_Y);
             kinematicArray[2] = drive.getAngle() * Math.PI / 180.0;
             kinematicArray[3] = drive.getLeftSpeed() * 0.0254;
             kinematicArray[4] = drive.getRightSpeed() * 0.0254;
             kinematicArray[5] = currentTime-previousTime;
 
-            outputArray = ekf.testFunction(kinematicArray);
+            ekf.testFunction(kinematicArray, outputArray);
 
-            KxList.add(outputArray[0]);
-            KyList.add(outputArray[1]);
-            KthetaList.add(outputArray[2]);
-            KvlList.add(outputArray[3]);
-            KvrList.add(outputArray[4]);
+            kinematicHistory.add(currentTime, outputArray);
         
             //Log.info("EKF", "X: " + outputArray[0] + " Y: " + outputArray[1] + " THETA" + outputArray[2]);
             ekfPosition=new Pose2d(outputArray[0], outputArray[1], new Rotation2d(outputArray[2]));
+
+            tracker.set(TRACKER_TIME, currentTime);
+            tracker.set(TRACKER_X, outputArray[0]);
+            tracker.set(TRACKER_Y, outputArray[1]);
+            tracker.set(TRACKER_THETA, outputArray[2]);
+            tracker.endRow();
             Log.info("EKF", ekfPosition.toString());
 
 
@@ -416,13 +469,16 @@ public class MainGrogu extends NarwhalRobot {
     double currentRightSpeed;
     double currentSpeed;
     double currentDistance;
-    
+
+    private final int timeSlot = NarwhalDashboard.registerNumber("time");
+    private final int voltageSlot = NarwhalDashboard.registerNumber("voltage");
+
 
     @Override
     protected void updateDashboard() {
         // SmartDashboard.putString("hopper update count", String.valueOf(//hopper.hopper_update_count));
-        NarwhalDashboard.put("time", DriverStation.getInstance().getMatchTime());
-        NarwhalDashboard.put("voltage", RobotController.getBatteryVoltage());
+        NarwhalDashboard.put(timeSlot, DriverStation.getInstance().getMatchTime());
+        NarwhalDashboard.put(voltageSlot, RobotController.getBatteryVoltage());
 
         currentLeftSpeed = drive.getLeftSpeed();
         currentRightSpeed = drive.getRightSpeed();
@@ -441,18 +497,14 @@ public class MainGrogu extends NarwhalRobot {
         shooterLimelight.setLEDMode(LEDMode.OFF);
         Log.info("MainGrogu", "TeleopInit has started. Setting arm state to ArmState.STARTING");
         driveCmdRunning.isRunning = true;
+        listenerRight.startRecording();
 
         if (teleopKinematics){
             drive.resetGyro();
             //scheduler.resume();
 
-            KxList.add((double) 0);
-            KyList.add((double) 0);
-            KthetaList.add(Math.PI/2);
-            KvlList.add((double) 0);
-            KvrList.add((double) 0);
-
             initTime=RobotController.getFPGATime()/1000000.0;
+            kinematicHistory.add(initTime, INITIAL_STATE);
         }
 
 
@@ -470,18 +522,14 @@ public class MainGrogu extends NarwhalRobot {
         
         // cmdBallIntake = new CmdBallIntake(drive, hopper, ahrs, ballLimelight, driveCmdRunning);
 
-        // trackerCSV = "Time, X, Y, Theta, Xdes, Ydes";
+        // tracker.clear();
         // Log.info("MainAthos", "going into autonomousinit");
         // //scheduler.resume();
         // //drive.setAutoTrajectory(trajectory, false);
         // //drive.startTrajectory();
         // //scheduler.resume();
 
-        KxList.add((double) 0);
-        KyList.add((double) 0);
-        KthetaList.add(Math.PI/2);
-        KvlList.add((double) 0);
-        KvrList.add((double) 0);
+        kinematicHistory.add(RobotController.getFPGATime() / 1000000.0, INITIAL_STATE);
 
 
         // //use this for galactic search
@@ -515,20 +563,16 @@ public class MainGrogu extends NarwhalRobot {
         inputArray[3] = currentTime-previousTime;
        // where EKF is run
 
-        kinematicArray[0] = KxList.get(KxList.size()-1);
-        kinematicArray[1] = KyList.get(KyList.size()-1);
+        kinematicArray[0] = kinematicHistory.getLatest(STATE_X);
+        kinematicArray[1] = kinematicHistory.getLatest(STATE_Y);
         kinematicArray[2] = drive.getAngle() * Math.PI / 180.0;
         kinematicArray[3] = drive.getLeftSpeed() * 0.0254;
         kinematicArray[4] = drive.getRightSpeed() * 0.0254;
         kinematicArray[5] = currentTime-previousTime;
 
-        outputArray = ekf.testFunction(kinematicArray);
+        ekf.testFunction(kinematicArray, outputArray);
 
-        KxList.add(outputArray[0]);
-        KyList.add(outputArray[1]);
-        KthetaList.add(outputArray[2]);
-        KvlList.add(outputArray[3]);
-        KvrList.add(outputArray[4]);
+        kinematicHistory.add(currentTime, outputArray);
        
         //Log.info("EKF", "X: " + outputArray[0] + " Y: " + outputArray[1] + " THETA" + outputArray[2]);
         ekfPosition=new Pose2d(outputArray[0], outputArray[1], new Rotation2d(outputArray[2]));
@@ -541,6 +585,19 @@ public class MainGrogu extends NarwhalRobot {
     @Override
     protected void disabledInit() {
         shooterLimelight.setLEDMode(LEDMode.OFF);
+
+        InputRecording driveRecording = listenerRight.stopRecording();
+        if (driveRecording != null && driveRecording.getDurationMicros() / 1e6 >= MIN_DRIVE_RECORDING_SECONDS) {
+            try {
+                if (DRIVE_RECORDING_FILE.exists()) {
+                    Files.move(DRIVE_RECORDING_FILE.toPath(), PREVIOUS_DRIVE_RECORDING_FILE.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+                driveRecording.save(DRIVE_RECORDING_FILE);
+            } catch (IOException e) {
+                Log.recoverable("MainGrogu", "Couldn't save drive recording: " + e.getMessage());
+            }
+        }
     }
 
     public static void main(String... args) {
@@ -12,6 +12,7 @@ import org.team3128.common.control.trajectory.Trajectory.State;
 import org.team3128.common.drive.AutoDriveSignal;
 import org.team3128.common.drive.DriveSignal;
 import org.team3128.common.utility.math.Rotation2D;
+import org.team3128.common.utility.structure.PoseHistory;
 import org.team3128.grogu.main.MainGrogu;
 import org.team3128.common.utility.NarwhalUtility;
 
@@ -44,6 +45,9 @@ public class FalconDrive extends Drive {
 		TELEOP, RAMSETECONTROL, TURN, DONE
 	}
 
+	// 2 seconds at the scheduler's 50 Hz
+	private static final int HISTORY_SIZE = 100;
+
 	private static final FalconDrive instance = new FalconDrive();
 
 	public static FalconDrive getInstance() {
@@ -76,6 +80,8 @@ public class FalconDrive extends Drive {
 
 	public double left_setpoint, right_setpoint;
 
+	private final PoseHistory poseHistory = new PoseHistory(HISTORY_SIZE);
+
 	private FalconDrive() {
 
 		// gyroSensor = new ADXRS450_Gyro(SPI.Port.kOnboardCS0);
@@ -199,6 +205,17 @@ public class FalconDrive extends Drive {
 
 	}
 
+	/**
+	 * Get how far the robot has turned since a time, for correcting vision
+	 * measurements which were captured then.
+	 *
+	 * @param timestamp FPGA timestamp in seconds
+	 * @return Change in gyro angle, in degrees
+	 */
+	public double getHeadingChangeSince(double timestamp) {
+		return poseHistory.getHeadingChangeSince(timestamp);
+	}
+
 
 
 
@@ -399,6 +416,13 @@ public class FalconDrive extends Drive {
 
 	@Override
 	public void periodic() {
+		Pose2d pose = MainGrogu.ekfPosition;
+		if (pose != null) {
+			poseHistory.add(Timer.getFPGATimestamp(), pose.getX(), pose.getY(), getAngle());
+		} else {
+			poseHistory.add(Timer.getFPGATimestamp(), 0, 0, getAngle());
+		}
+
 		// velocityController();
 		DriveState snapDriveState;
 		synchronized (this) {
@@ -504,6 +528,8 @@ public class FalconDrive extends Drive {
 	@Override
 	public void resetGyro() {
 		ahrs.reset();
+		// the old headings are relative to the old zero
+		poseHistory.clear();
 		//Log.info("Reset Gyro", " ");
 	}
 
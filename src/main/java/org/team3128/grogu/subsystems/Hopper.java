@@ -41,6 +41,9 @@ public class Hopper implements Subsystem {
         IDLE,INTAKING,SHOOTING;
     }
 
+    private static final int LOG_CATEGORY = Log.category("Hopper");
+    private static final int BALL_COUNT_MESSAGE = Log.template("ball count: {}");
+
     public static final Hopper instance = new Hopper();
     private LazyTalonSRX ARM_MOTOR, HOPPER_MOTOR_1;
     private LazyVictorSPX BRUSH_MOTOR, INTAKE_MOTOR;
@@ -92,7 +95,7 @@ public class Hopper implements Subsystem {
 
     @Override
     public void periodic() {
-        Log.info("Hopper","ball count: " + ballCount);
+        Log.info(LOG_CATEGORY, BALL_COUNT_MESSAGE, ballCount);
         Log.info("Hopper","action state: " + actionState);
         switch(actionState) {
             case IDLE:
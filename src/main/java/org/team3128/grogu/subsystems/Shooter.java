@@ -40,6 +40,9 @@ public class Shooter extends PIDSubsystem {
         }
     }
 
+    private static final int LOG_CATEGORY = Log.category("Shooter");
+    private static final int RPM_MESSAGE = Log.template("{} RPM");
+
     public static final Shooter instance = new Shooter();
     public static LazyTalonFX LEFT_SHOOTER;
     public static LazyTalonFX RIGHT_SHOOTER;
@@ -118,7 +121,7 @@ public class Shooter extends PIDSubsystem {
         
         double accel = (value - preValue) / (time - preTime);
 
-        Log.info("Shooter",getMeasurement()+" RPM");
+        Log.info(LOG_CATEGORY, RPM_MESSAGE, value);
 
         if ((Math.abs(value - preValue) <= Constants.ShooterConstants.RPM_PLATEAU_THRESHOLD) &&(Math.abs(value - setpoint) <= Constants.ShooterConstants.RPM_THRESHOLD) && (setpoint != 0)) {
             plateauCount++;
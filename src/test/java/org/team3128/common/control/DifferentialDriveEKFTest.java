@@ -0,0 +1,193 @@
+package org.team3128.common.control;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DifferentialDriveEKFTest {
+	private static final double TRACK_WIDTH = 0.6;
+	private static final double DT = 0.02;
+
+	private static DifferentialDriveEKF newFilter() {
+		return new DifferentialDriveEKF(0, 0, Math.PI / 2, 0, 0, 2, 2, TRACK_WIDTH, DT, 0.001, 0.002, 0.002);
+	}
+
+	private static SimpleMatrixEKF newReference() {
+		return new SimpleMatrixEKF(0, 0, Math.PI / 2, 0, 0, 2, 2, TRACK_WIDTH, DT, 0.001, 0.002, 0.002);
+	}
+
+	/**
+	 * Random wheel velocities, half of them within the straight threshold of each
+	 * other and half turning.
+	 */
+	private static double[] randomVelocities(Random random) {
+		double vl = random.nextDouble() * 3;
+		double vr;
+		if (random.nextBoolean()) {
+			vr = vl + (random.nextDouble() - 0.5) * 0.002;
+		} else {
+			vr = random.nextDouble() * 3;
+		}
+		return new double[] { vl, vr };
+	}
+
+	private static void assertBitsEqual(double[] expected, double[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("element " + i, Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(actual[i]));
+		}
+	}
+
+	@Test
+	public void testFunctionMatchesReference() {
+		Random random = new Random(3128);
+		SimpleMatrixEKF reference = newReference();
+		DifferentialDriveEKF filter = newFilter();
+		double[] output = new double[5];
+
+		for (int i = 0; i < 10000; i++) {
+			double[] velocities = randomVelocities(random);
+			double[] input = { random.nextGaussian(), random.nextGaussian(), random.nextDouble() * 2 * Math.PI,
+					velocities[0], velocities[1], DT + random.nextDouble() * DT };
+
+			filter.testFunction(input, output);
+			assertBitsEqual(reference.testFunction(input), output);
+		}
+	}
+
+	@Test
+	public void runFilterMatchesReference() {
+		Random random = new Random(254);
+		double[] output = new double[5];
+
+		for (int trial = 0; trial < 50; trial++) {
+			SimpleMatrixEKF reference = newReference();
+			DifferentialDriveEKF filter = newFilter();
+			double theta = Math.PI / 2;
+
+			for (int step = 0; step < 500; step++) {
+				double[] velocities = randomVelocities(random);
+				theta += random.nextGaussian() * 0.02;
+				double[] input = { theta, velocities[0], velocities[1], DT + random.nextDouble() * DT / 2 };
+
+				filter.runFilter(input, output);
+				assertBitsEqual(reference.runFilter(input), output);
+			}
+		}
+	}
+
+	/**
+	 * A bearing added late has to end up with the same state as if it had been
+	 * there when its step first ran.
+	 */
+	@Test
+	public void lateBearingMatchesBearingOnTime() {
+		Random random = new Random(1678);
+		DifferentialDriveEKF onTime = newFilter();
+		DifferentialDriveEKF late = newFilter();
+		double[] onTimeOutput = new double[5];
+		double[] lateOutput = new double[5];
+
+		double[][] inputs = new double[40][];
+		for (int step = 0; step < inputs.length; step++) {
+			double[] velocities = randomVelocities(random);
+			inputs[step] = new double[] { Math.PI / 2 + step * 0.01, velocities[0], velocities[1], DT };
+		}
+
+		// taken partway through step 30, and seen 5 steps later
+		double bearingTime = 30.5 * DT;
+		for (int step = 0; step < inputs.length; step++) {
+			if (step == 30) {
+				assertTrue(onTime.addBearing(bearingTime, 5, 3, 0.2, 0.001));
+			}
+			if (step == 35) {
+				assertTrue(late.addBearing(bearingTime, 5, 3, 0.2, 0.001));
+			}
+
+			onTime.runFilter((step + 1) * DT, inputs[step], onTimeOutput);
+			late.runFilter((step + 1) * DT, inputs[step], lateOutput);
+		}
+
+		assertBitsEqual(onTimeOutput, lateOutput);
+
+		// and it has to have done something
+		DifferentialDriveEKF without = newFilter();
+		double[] withoutOutput = new double[5];
+		for (int step = 0; step < inputs.length; step++) {
+			without.runFilter((step + 1) * DT, inputs[step], withoutOutput);
+		}
+		assertFalse(withoutOutput[DifferentialDriveEKF.X] == lateOutput[DifferentialDriveEKF.X]);
+	}
+
+	@Test
+	public void ignoresBearingsTooOldOrInAUsedStep() {
+		DifferentialDriveEKF filter = newFilter();
+		double[] output = new double[5];
+		for (int step = 0; step < 100; step++) {
+			filter.runFilter((step + 1) * DT, new double[] { Math.PI / 2, 1, 1, DT }, output);
+		}
+
+		assertFalse("older than the history", filter.addBearing(0.5, 5, 0, 0, 0.01));
+		assertTrue(filter.addBearing(1.95, 5, 0, 0, 0.01));
+		assertFalse("same step as the last one", filter.addBearing(1.955, 5, 0, 0, 0.01));
+		assertTrue("pending for the next step", filter.addBearing(2.01, 5, 0, 0, 0.01));
+		assertFalse("already one pending", filter.addBearing(2.015, 5, 0, 0, 0.01));
+	}
+
+	/**
+	 * Not a benchmark, but prints how long a step takes next to the reference,
+	 * and checks that the filter doesn't allocate, including while replaying.
+	 */
+	@Test
+	public void stepTimeAndAllocation() {
+		int steps = 200_000;
+		double[] input = { 0.1, 1, 1.2, DT };
+		double[] output = new double[5];
+
+		DifferentialDriveEKF filter = newFilter();
+		SimpleMatrixEKF reference = newReference();
+		for (int i = 0; i < steps; i++) {
+			filter.runFilter(input, output);
+			reference.runFilter(input);
+		}
+
+		long startBytes = allocatedBytes();
+		long startTime = System.nanoTime();
+		for (int i = 0; i < steps; i++) {
+			filter.runFilter(input, output);
+		}
+		long filterTime = System.nanoTime() - startTime;
+		long filterBytes = allocatedBytes() - startBytes;
+
+		startTime = System.nanoTime();
+		for (int i = 0; i < steps; i++) {
+			reference.runFilter(input);
+		}
+		long referenceTime = System.nanoTime() - startTime;
+
+		System.out.printf("DifferentialDriveEKF: %.0f ns/step, SimpleMatrix EKF: %.0f ns/step%n",
+				(double) filterTime / steps, (double) referenceTime / steps);
+
+		// a bearing every step makes it replay a few steps each time
+		startBytes = allocatedBytes();
+		for (int i = 0; i < steps; i++) {
+			filter.runFilter(input, output);
+			filter.addBearing(filter.getTimestamp() - 2.5 * DT, 5, 0, 0, 0.01);
+		}
+		long replayBytes = allocatedBytes() - startBytes;
+
+		assertTrue("allocated " + filterBytes + " bytes in " + steps + " steps", filterBytes < steps);
+		assertTrue("allocated " + replayBytes + " bytes in " + steps + " steps with bearings", replayBytes < steps);
+	}
+
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
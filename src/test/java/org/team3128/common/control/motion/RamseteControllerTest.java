@@ -0,0 +1,104 @@
+package org.team3128.common.control.motion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.team3128.common.control.trajectory.Trajectory;
+import org.team3128.common.control.trajectory.Trajectory.State;
+import org.team3128.common.drive.AutoDriveSignal;
+import org.team3128.common.utility.math.MutablePose2D;
+import org.team3128.common.utility.math.Pose2D;
+
+public class RamseteControllerTest {
+	private static final double INCHES_PER_METER = 1 / 0.0254;
+
+	private static Trajectory curve() {
+		List<State> states = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			double time = i * 0.02;
+			states.add(new State(time, 1 + 0.5 * time, 0.5, new Pose2D(time * time, Math.sin(time), time * 20), 0.1));
+		}
+		return new Trajectory(states);
+	}
+
+	/**
+	 * Where the robot is at a time: a little off the trajectory, in inches.
+	 */
+	private static Pose2D robotPose(Trajectory trajectory, double time) {
+		Pose2D onTrajectory = trajectory.sample(time).poseMeters;
+		return new Pose2D(onTrajectory.getTranslation().getX() * INCHES_PER_METER + 3,
+				onTrajectory.getTranslation().getY() * INCHES_PER_METER - 2,
+				onTrajectory.getRotation().getDegrees() + 5);
+	}
+
+	@Test
+	public void inPlaceMatchesPose2D() {
+		Trajectory trajectory = curve();
+		RamseteController controller = new RamseteController(1.8, 0.7, false, 12);
+		State state = new State();
+		MutablePose2D desiredPose = new MutablePose2D();
+
+		for (double time = 0; time < trajectory.getTotalTimeSeconds(); time += 0.01) {
+			Pose2D robot = robotPose(trajectory, time);
+
+			AutoDriveSignal expected = controller.calculate(robot, trajectory.sample(time));
+			double expectedLeft = expected.command.leftVelocity;
+			double expectedRight = expected.command.rightVelocity;
+
+			trajectory.sample(time, state, desiredPose);
+			AutoDriveSignal actual = controller.calculate(new MutablePose2D(robot), state, desiredPose);
+
+			assertEquals(expectedLeft, actual.command.leftVelocity, 1e-9);
+			assertEquals(expectedRight, actual.command.rightVelocity, 1e-9);
+
+			assertEquals(desiredPose.getTranslation().getX() * INCHES_PER_METER,
+					controller.getDesiredPose().getTranslation().getX(), 1e-9);
+			assertEquals(desiredPose.getTranslation().getY() * INCHES_PER_METER,
+					controller.getDesiredPose().getTranslation().getY(), 1e-9);
+		}
+	}
+
+	@Test
+	public void sampleAndCalculateDoNotAllocate() {
+		Trajectory trajectory = curve();
+		RamseteController controller = new RamseteController(1.8, 0.7, false, 12);
+		State state = new State();
+		MutablePose2D desiredPose = new MutablePose2D();
+		MutablePose2D robot = new MutablePose2D();
+		int steps = 200_000;
+
+		for (int i = 0; i < steps; i++) {
+			step(trajectory, controller, (i % 1000) * 0.0041, state, desiredPose, robot);
+		}
+
+		long startBytes = allocatedBytes();
+		for (int i = 0; i < steps; i++) {
+			step(trajectory, controller, (i % 1000) * 0.0041, state, desiredPose, robot);
+		}
+		long bytes = allocatedBytes() - startBytes;
+
+		assertTrue("allocated " + bytes + " bytes in " + steps + " steps", bytes < steps);
+	}
+
+	/**
+	 * One control loop of following a trajectory, as the drives do it.
+	 */
+	private static void step(Trajectory trajectory, RamseteController controller, double time, State state,
+			MutablePose2D desiredPose, MutablePose2D robot) {
+		trajectory.sample(time, state, desiredPose);
+		robot.set(desiredPose.getTranslation().getX() * INCHES_PER_METER + 3,
+				desiredPose.getTranslation().getY() * INCHES_PER_METER - 2, desiredPose.getRotation().getDegrees() + 5);
+		controller.calculate(robot, state, desiredPose);
+	}
+
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,168 @@
+package org.team3128.common.control.trajectory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.team3128.common.control.trajectory.Trajectory.State;
+import org.team3128.common.utility.math.MutablePose2D;
+import org.team3128.common.utility.math.Pose2D;
+
+public class TrajectoryTest {
+	private static final double EPSILON = 1e-12;
+
+	/**
+	 * A curving trajectory with states every 20 ms, and a repeated state in the
+	 * middle.
+	 */
+	private static Trajectory curve() {
+		List<State> states = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			double time = i * 0.02;
+			states.add(new State(time, 1 + 0.5 * time, 0.5, new Pose2D(time * time, Math.sin(time), time * 20), 0.1));
+			if (i == 100) {
+				states.add(new State(time, 1 + 0.5 * time, 0.5, new Pose2D(time * time, Math.sin(time), time * 20),
+						0.1));
+			}
+		}
+		return new Trajectory(states);
+	}
+
+	/**
+	 * A trajectory whose heading crosses from 180 to -180 degrees between
+	 * states.
+	 */
+	private static Trajectory turningAround() {
+		List<State> states = new ArrayList<>();
+		for (int i = 0; i < 60; i++) {
+			double time = i * 0.02;
+			double heading = Math.IEEEremainder(150 + i * 3.7, 360);
+			states.add(new State(time, 2, 0.2, new Pose2D(3 + Math.cos(time), 1 + Math.sin(time), heading), 0.4));
+		}
+		return new Trajectory(states);
+	}
+
+	/**
+	 * How trajectories were sampled before they could sample in place, written
+	 * out with the immutable pose math so it doesn't share any code with
+	 * interpolateInto().
+	 */
+	private static State oldSample(Trajectory trajectory, double timeSeconds) {
+		List<State> states = trajectory.getStates();
+		if (timeSeconds <= states.get(0).timeSeconds) {
+			return states.get(0);
+		}
+		if (timeSeconds >= trajectory.getTotalTimeSeconds()) {
+			return states.get(states.size() - 1);
+		}
+
+		int low = 1;
+		while (states.get(low).timeSeconds < timeSeconds) {
+			low++;
+		}
+		State sample = states.get(low);
+		State prevSample = states.get(low - 1);
+
+		if (Math.abs(sample.timeSeconds - prevSample.timeSeconds) < 1E-9) {
+			return sample;
+		}
+		return oldInterpolate(prevSample, sample,
+				(timeSeconds - prevSample.timeSeconds) / (sample.timeSeconds - prevSample.timeSeconds));
+	}
+
+	private static State oldInterpolate(State start, State end, double i) {
+		double newT = start.timeSeconds + (end.timeSeconds - start.timeSeconds) * i;
+		double deltaT = newT - start.timeSeconds;
+
+		if (deltaT < 0) {
+			return oldInterpolate(end, start, 1 - i);
+		}
+
+		boolean reversing = start.velocityMetersPerSecond < 0
+				|| Math.abs(start.velocityMetersPerSecond) < 1E-9 && start.accelerationMetersPerSecondSq < 0;
+
+		double newV = start.velocityMetersPerSecond + (start.accelerationMetersPerSecondSq * deltaT);
+		double newS = (start.velocityMetersPerSecond * deltaT
+				+ 0.5 * start.accelerationMetersPerSecondSq * Math.pow(deltaT, 2)) * (reversing ? -1.0 : 1.0);
+
+		double t = newS / end.poseMeters.getTranslation().getDistanceTo(start.poseMeters.getTranslation());
+
+		Pose2D pose = start.poseMeters.plus(end.poseMeters.minus(start.poseMeters).times(t));
+		double curvature = start.curvatureRadPerMeter + (end.curvatureRadPerMeter - start.curvatureRadPerMeter) * t;
+
+		return new State(newT, newV, start.accelerationMetersPerSecondSq, pose, curvature);
+	}
+
+	private static void assertSampleEquals(State expected, State actual, Pose2D actualPose) {
+		assertEquals(expected.timeSeconds, actual.timeSeconds, EPSILON);
+		assertEquals(expected.velocityMetersPerSecond, actual.velocityMetersPerSecond, EPSILON);
+		assertEquals(expected.accelerationMetersPerSecondSq, actual.accelerationMetersPerSecondSq, EPSILON);
+		assertEquals(expected.curvatureRadPerMeter, actual.curvatureRadPerMeter, EPSILON);
+		assertEquals(expected.poseMeters.getTranslation().getX(), actualPose.getTranslation().getX(), EPSILON);
+		assertEquals(expected.poseMeters.getTranslation().getY(), actualPose.getTranslation().getY(), EPSILON);
+		assertEquals(expected.poseMeters.getRotation().cos(), actualPose.getRotation().cos(), EPSILON);
+		assertEquals(expected.poseMeters.getRotation().sin(), actualPose.getRotation().sin(), EPSILON);
+	}
+
+	private static void assertMatchesOldSample(Trajectory trajectory) {
+		State out = new State();
+		MutablePose2D pose = new MutablePose2D();
+
+		for (double time = -0.1; time < trajectory.getTotalTimeSeconds() + 0.1; time += 0.0041) {
+			State expected = oldSample(trajectory, time);
+
+			trajectory.sample(time, out, pose);
+			assertSampleEquals(expected, out, pose.toPose2D());
+
+			State sampled = trajectory.sample(time);
+			assertSampleEquals(expected, sampled, sampled.poseMeters);
+		}
+	}
+
+	@Test
+	public void sampleMatchesOldInterpolation() {
+		assertMatchesOldSample(curve());
+	}
+
+	@Test
+	public void sampleMatchesOldInterpolationAcrossTheWrap() {
+		Trajectory trajectory = turningAround();
+		assertMatchesOldSample(trajectory);
+
+		// partway between 179.6 and -176.7 degrees is near 180, not near 0
+		State out = new State();
+		MutablePose2D pose = new MutablePose2D();
+		trajectory.sample(0.17, out, pose);
+		assertTrue(pose.getRotation().cos() < -0.99);
+	}
+
+	@Test
+	public void sampleInPlaceDoesNotAllocate() {
+		Trajectory trajectory = curve();
+		State out = new State();
+		MutablePose2D pose = new MutablePose2D();
+		int samples = 200_000;
+
+		for (int i = 0; i < samples; i++) {
+			trajectory.sample((i % 1000) * 0.0041, out, pose);
+		}
+
+		long startBytes = allocatedBytes();
+		for (int i = 0; i < samples; i++) {
+			trajectory.sample((i % 1000) * 0.0041, out, pose);
+		}
+		long bytes = allocatedBytes() - startBytes;
+
+		assertTrue("allocated " + bytes + " bytes in " + samples + " samples", bytes < samples);
+	}
+
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,168 @@
+package org.team3128.common.listener;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class InputRecordingTest {
+	private static final int NUM_BUTTONS = 12;
+	private static final int NUM_AXES = 5;
+	private static final int NUM_POVS = 2;
+
+	/**
+	 * The controls at one point in time, as ListenerManager would pass them in.
+	 */
+	private static class Snapshot {
+		final long timestamp;
+		final long[] buttons = new long[NUM_BUTTONS / 64 + 1];
+		final double[] axes = new double[NUM_AXES];
+		final int[] povs = new int[NUM_POVS];
+
+		Snapshot(long timestamp) {
+			this.timestamp = timestamp;
+		}
+
+		Snapshot(long timestamp, Snapshot previous) {
+			this(timestamp);
+			System.arraycopy(previous.buttons, 0, buttons, 0, buttons.length);
+			System.arraycopy(previous.axes, 0, axes, 0, axes.length);
+			System.arraycopy(previous.povs, 0, povs, 0, povs.length);
+		}
+	}
+
+	/**
+	 * Snapshots where some of the controls change every time, like a driver moving
+	 * a joystick and pressing the odd button. Axes are already float precision, as
+	 * that's what gets recorded.
+	 */
+	private static List<Snapshot> driving(long seed, int count) {
+		Random random = new Random(seed);
+		List<Snapshot> snapshots = new ArrayList<>();
+
+		Snapshot snapshot = new Snapshot(1_000_000);
+		snapshots.add(snapshot);
+
+		for (int i = 1; i < count; i++) {
+			snapshot = new Snapshot(snapshot.timestamp + 10_000 + random.nextInt(20_000), snapshot);
+
+			if (random.nextInt(4) == 0) {
+				snapshot.buttons[0] ^= 1L << (1 + random.nextInt(NUM_BUTTONS));
+			}
+			// always move at least one axis, so that every snapshot is a frame
+			int movedAxis = random.nextInt(NUM_AXES);
+			for (int axis = 0; axis < NUM_AXES; axis++) {
+				if (axis == movedAxis || random.nextBoolean()) {
+					snapshot.axes[axis] = (float) (random.nextDouble() * 2 - 1);
+				}
+			}
+			if (random.nextInt(8) == 0) {
+				snapshot.povs[random.nextInt(NUM_POVS)] = random.nextInt(9);
+			}
+
+			snapshots.add(snapshot);
+		}
+
+		return snapshots;
+	}
+
+	private static InputRecording record(InputRecorder recorder, List<Snapshot> snapshots) {
+		for (Snapshot snapshot : snapshots) {
+			recorder.record(snapshot.timestamp, snapshot.buttons, snapshot.axes, snapshot.povs);
+		}
+		return recorder.finish();
+	}
+
+	private static InputRecording saveAndLoad(InputRecording recording) throws IOException {
+		File file = File.createTempFile("input_recording", ".nir");
+		try {
+			recording.save(file);
+			return InputRecording.load(file);
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Play a recording back at the times the snapshots were taken, and check that
+	 * each one comes out with the same controls.
+	 */
+	private static void assertPlaysBack(List<Snapshot> snapshots, InputRecording recording) {
+		long startTime = snapshots.get(0).timestamp;
+		InputPlayback playback = new InputPlayback(recording, startTime);
+
+		long[] buttons = new long[NUM_BUTTONS / 64 + 1];
+		double[] axes = new double[NUM_AXES];
+		int[] povs = new int[NUM_POVS];
+
+		for (Snapshot snapshot : snapshots) {
+			while (playback.advance(snapshot.timestamp)) {
+			}
+			playback.copyTo(buttons, NUM_BUTTONS, axes, povs);
+
+			assertArrayEquals(snapshot.buttons, buttons);
+			assertArrayEquals(snapshot.axes, axes, 0);
+			assertArrayEquals(snapshot.povs, povs);
+			assertEquals(snapshot.timestamp - startTime, playback.getFrameTime());
+		}
+
+		assertTrue(playback.isFinished());
+	}
+
+	@Test
+	public void roundTripsThroughAFile() throws IOException {
+		List<Snapshot> snapshots = driving(3128, 2000);
+		InputRecording recording = saveAndLoad(record(new InputRecorder(NUM_BUTTONS, NUM_AXES, NUM_POVS), snapshots));
+
+		assertEquals(snapshots.size(), recording.getFrameCount());
+		assertEquals(snapshots.get(snapshots.size() - 1).timestamp - snapshots.get(0).timestamp,
+				recording.getDurationMicros());
+		assertPlaysBack(snapshots, recording);
+	}
+
+	@Test
+	public void skipsSnapshotsWithoutChanges() throws IOException {
+		List<Snapshot> snapshots = driving(254, 10);
+		InputRecorder recorder = new InputRecorder(NUM_BUTTONS, NUM_AXES, NUM_POVS);
+
+		for (Snapshot snapshot : snapshots) {
+			recorder.record(snapshot.timestamp, snapshot.buttons, snapshot.axes, snapshot.povs);
+			recorder.record(snapshot.timestamp + 5_000, snapshot.buttons, snapshot.axes, snapshot.povs);
+		}
+		InputRecording recording = saveAndLoad(recorder.finish());
+
+		assertEquals(snapshots.size(), recording.getFrameCount());
+		assertPlaysBack(snapshots, recording);
+	}
+
+	@Test
+	public void stopsRecordingWhenFull() throws IOException {
+		List<Snapshot> snapshots = driving(1678, 2000);
+		InputRecorder recorder = new InputRecorder(NUM_BUTTONS, NUM_AXES, NUM_POVS, 4096);
+		InputRecording recording = record(recorder, snapshots);
+
+		assertTrue(recorder.isTruncated());
+		assertTrue(recording.getFrameCount() > 0);
+		assertTrue(recording.getFrameCount() < snapshots.size());
+		assertTrue(recording.length <= 4096);
+
+		// what did fit is still a complete recording, up to where it stopped
+		assertPlaysBack(snapshots.subList(0, recording.getFrameCount()), saveAndLoad(recording));
+	}
+
+	@Test
+	public void isNotTruncatedUnderTheCap() {
+		InputRecorder recorder = new InputRecorder(NUM_BUTTONS, NUM_AXES, NUM_POVS, 1024 * 1024);
+		record(recorder, driving(971, 100));
+
+		assertFalse(recorder.isTruncated());
+	}
+}
@@ -0,0 +1,278 @@
+package org.team3128.common.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.team3128.common.listener.controltypes.Axis;
+import org.team3128.common.listener.controltypes.Button;
+import org.team3128.common.listener.controltypes.POV;
+
+public class ListenerManagerTest {
+	/**
+	 * A controller whose controls the test sets directly.
+	 */
+	private static class StubController implements ControllerInput {
+		final boolean[] buttons = new boolean[13];
+		final double[] axes = new double[4];
+		final int[] povs = { -1, -1 };
+
+		@Override
+		public boolean getRawButton(int button) {
+			return buttons[button];
+		}
+
+		@Override
+		public double getRawAxis(int axis) {
+			return axes[axis];
+		}
+
+		@Override
+		public int getPOV(int pov) {
+			return povs[pov];
+		}
+
+		@Override
+		public int getButtonCount() {
+			return buttons.length - 1;
+		}
+
+		@Override
+		public int getAxisCount() {
+			return axes.length;
+		}
+
+		@Override
+		public int getPOVCount() {
+			return povs.length;
+		}
+	}
+
+	private final StubController first = new StubController();
+	private final StubController second = new StubController();
+	private long time = 0;
+
+	private ListenerManager manager;
+
+	// how many times each listener ran
+	private final int[] counts = new int[4];
+	private static final int DOWN = 0, UP = 1, GENERIC = 2, POV_CHANGES = 3;
+
+	private final List<POVValue> povValues = new ArrayList<>();
+
+	@Before
+	public void createManager() {
+		manager = new ListenerManager(() -> time, first, second);
+
+		manager.nameControl(new Button(1), "A");
+		manager.nameControl(new Button(2), "B");
+		manager.nameControl(new Axis(1), "MoveForwards");
+		manager.nameControl(new POV(0), "POV");
+	}
+
+	private void tick() {
+		time += 20_000;
+		manager.tick();
+	}
+
+	private void addCountingListeners() {
+		manager.addButtonDownListener("A", () -> counts[DOWN]++);
+		manager.addButtonUpListener("A", () -> counts[UP]++);
+		manager.addMultiListener(() -> counts[GENERIC]++, "A", "B", "MoveForwards");
+		manager.addListener("POV", (POVValue value) -> counts[POV_CHANGES]++);
+	}
+
+	@Test
+	public void buttonListenersFireOnEdges() {
+		addCountingListeners();
+
+		tick();
+		assertEquals(0, counts[DOWN]);
+
+		first.buttons[1] = true;
+		tick();
+		assertEquals(1, counts[DOWN]);
+		assertEquals(0, counts[UP]);
+		assertTrue(manager.getButton("A"));
+
+		// held down isn't another press
+		tick();
+		tick();
+		assertEquals(1, counts[DOWN]);
+		assertEquals(0, counts[UP]);
+
+		first.buttons[1] = false;
+		tick();
+		assertEquals(1, counts[DOWN]);
+		assertEquals(1, counts[UP]);
+		assertEquals(false, manager.getButton("A"));
+
+		// a press on either controller is a press
+		second.buttons[1] = true;
+		tick();
+		assertEquals(2, counts[DOWN]);
+
+		// and it stays pressed while either holds it
+		first.buttons[1] = true;
+		tick();
+		second.buttons[1] = false;
+		tick();
+		assertEquals(2, counts[DOWN]);
+		assertEquals(1, counts[UP]);
+
+		first.buttons[1] = false;
+		tick();
+		assertEquals(2, counts[UP]);
+	}
+
+	@Test
+	public void genericListenersRunOncePerTick() {
+		addCountingListeners();
+		tick();
+
+		// three of its controls change at once
+		first.buttons[1] = true;
+		first.buttons[2] = true;
+		first.axes[1] = 0.5;
+		tick();
+		assertEquals(1, counts[GENERIC]);
+
+		tick();
+		assertEquals(1, counts[GENERIC]);
+
+		first.buttons[2] = false;
+		tick();
+		assertEquals(2, counts[GENERIC]);
+	}
+
+	@Test
+	public void povListenersFireOnChange() {
+		manager.addListener("POV", (POVValue value) -> povValues.add(value));
+		tick();
+		assertEquals(0, povValues.size());
+
+		first.povs[0] = 90;
+		tick();
+		tick();
+		assertEquals(1, povValues.size());
+		assertEquals(POVValue.fromWPILibAngle(90), povValues.get(0));
+		assertEquals(POVValue.fromWPILibAngle(90), manager.getPOV("POV"));
+
+		first.povs[0] = 135;
+		tick();
+		assertEquals(2, povValues.size());
+		assertEquals(POVValue.fromWPILibAngle(135), povValues.get(1));
+
+		first.povs[0] = -1;
+		tick();
+		assertEquals(3, povValues.size());
+		assertEquals(0, povValues.get(2).getDirectionValue());
+	}
+
+	/**
+	 * With several controllers, a POV takes the value from the first one which
+	 * isn't centered, the same as axes do outside the deadzone.
+	 */
+	@Test
+	public void firstControllerTakesPrecedence() {
+		manager.addListener("POV", (POVValue value) -> povValues.add(value));
+
+		second.povs[0] = 180;
+		second.axes[1] = -0.8;
+		tick();
+		assertEquals(POVValue.fromWPILibAngle(180), manager.getPOV("POV"));
+		assertEquals(-0.8, manager.getAxis("MoveForwards"), 0);
+
+		first.povs[0] = 90;
+		first.axes[1] = 0.6;
+		tick();
+		assertEquals(POVValue.fromWPILibAngle(90), manager.getPOV("POV"));
+		assertEquals(0.6, manager.getAxis("MoveForwards"), 0);
+
+		// inside the deadzone and centered count as not in use
+		first.povs[0] = -1;
+		first.axes[1] = 0.1;
+		tick();
+		assertEquals(POVValue.fromWPILibAngle(180), manager.getPOV("POV"));
+		assertEquals(-0.8, manager.getAxis("MoveForwards"), 0);
+
+		second.povs[0] = -1;
+		second.axes[1] = 0;
+		tick();
+		assertEquals(0, manager.getPOV("POV").getDirectionValue());
+		assertEquals(0, manager.getAxis("MoveForwards"), 0);
+
+		assertEquals(4, povValues.size());
+	}
+
+	@Test
+	public void unnamedControlsAreNull() {
+		manager.nameControl(new POV(5), "Missing");
+		tick();
+
+		assertNull(manager.getPOV("Missing"));
+	}
+
+	/**
+	 * Not a benchmark, but prints how long a tick takes, and checks that ticking
+	 * doesn't allocate, including when listeners run every tick.
+	 */
+	@Test
+	public void tickTimeAndAllocation() {
+		addCountingListeners();
+		int ticks = 200_000;
+
+		for (int i = 0; i < ticks; i++) {
+			changeEverything(i);
+			tick();
+		}
+
+		long startBytes = allocatedBytes();
+		long startTime = System.nanoTime();
+		for (int i = 0; i < ticks; i++) {
+			changeEverything(i);
+			tick();
+		}
+		long tickTime = System.nanoTime() - startTime;
+		long tickBytes = allocatedBytes() - startBytes;
+
+		// and with nothing changing
+		startTime = System.nanoTime();
+		for (int i = 0; i < ticks; i++) {
+			tick();
+		}
+		long idleTime = System.nanoTime() - startTime;
+		long idleBytes = allocatedBytes() - startBytes - tickBytes;
+
+		System.out.printf("ListenerManager: %.0f ns/tick with changes, %.0f ns/tick without%n",
+				(double) tickTime / ticks, (double) idleTime / ticks);
+
+		assertTrue("allocated " + tickBytes + " bytes in " + ticks + " ticks", tickBytes < ticks);
+		assertTrue("allocated " + idleBytes + " bytes in " + ticks + " idle ticks", idleBytes < ticks);
+		assertEquals(2 * ticks, counts[DOWN] + counts[UP]);
+	}
+
+	/**
+	 * Press or release a button, move an axis and turn a POV on both controllers.
+	 */
+	private void changeEverything(int i) {
+		first.buttons[1] = (i & 1) == 0;
+		second.buttons[2] = (i & 1) != 0;
+		first.axes[1] = (i & 1) == 0 ? 0.5 : -0.5;
+		second.axes[3] = (i % 3) * 0.3;
+		first.povs[0] = (i % 8) * 45;
+		second.povs[1] = (i & 1) == 0 ? -1 : 270;
+	}
+
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
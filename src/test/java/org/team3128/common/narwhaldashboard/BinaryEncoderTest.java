@@ -0,0 +1,444 @@
+package org.team3128.common.narwhaldashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BinaryEncoderTest {
+    /**
+     * Collects everything a decoder reports, in order.
+     */
+    private static class Received implements BinaryDecoder.Listener {
+        final Map<Integer, String> schema = new LinkedHashMap<>();
+        final Map<Integer, DashboardStore.Type> schemaTypes = new LinkedHashMap<>();
+        final Map<String, Object> values = new LinkedHashMap<>();
+        int valueCount = 0;
+
+        @Override
+        public void onSchema(int id, DashboardStore.Type type, String name) {
+            schema.put(id, name);
+            schemaTypes.put(id, type);
+        }
+
+        @Override
+        public void onNumber(String key, double value) {
+            values.put(key, value);
+            valueCount++;
+        }
+
+        @Override
+        public void onBoolean(String key, boolean value) {
+            values.put(key, value);
+            valueCount++;
+        }
+
+        @Override
+        public void onString(String key, String value) {
+            values.put(key, value);
+            valueCount++;
+        }
+    }
+
+    private final BinaryEncoder encoder = new BinaryEncoder(16);
+    private final Received received = new Received();
+    private final BinaryDecoder decoder = new BinaryDecoder(received);
+
+    private void decode(ByteBuffer message) {
+        decoder.decode(message);
+    }
+
+    /**
+     * Send a schema for every slot in a store, the way the publisher does.
+     */
+    private void sendSchema(DashboardStore store) {
+        DashboardStore.Value value = new DashboardStore.Value();
+
+        encoder.beginSchema();
+        for (int slot = 0; slot < store.size(); slot++) {
+            store.read(slot, value);
+            encoder.schemaEntry(slot, value.type, store.getKey(slot));
+        }
+        decode(encoder.toByteBuffer());
+    }
+
+    /**
+     * Send the values which changed since a version, the way the publisher does.
+     */
+    private void sendValuesSince(DashboardStore store, long sinceVersion) {
+        DashboardStore.Value value = new DashboardStore.Value();
+
+        encoder.beginValues();
+        for (int slot = 0; slot < store.size(); slot++) {
+            store.read(slot, value);
+            if (value.version <= sinceVersion) {
+                continue;
+            }
+
+            switch (value.type) {
+            case NUMBER:
+                encoder.number(slot, value.number);
+                break;
+            case BOOLEAN:
+                encoder.bool(slot, value.bool);
+                break;
+            default:
+                encoder.string(slot, value.string);
+                break;
+            }
+        }
+        decode(encoder.toByteBuffer());
+    }
+
+    /**
+     * Encode a single string value and decode it again.
+     */
+    private String roundTrip(String value) {
+        encoder.beginSchema().schemaEntry(0, DashboardStore.Type.STRING, "key");
+        decode(encoder.toByteBuffer());
+
+        encoder.beginValues().string(0, value);
+        decode(encoder.toByteBuffer());
+        return (String) received.values.get("key");
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder(value.length() * count);
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    @Test
+    public void roundTripsEveryType() {
+        encoder.beginSchema()
+                .schemaEntry(0, DashboardStore.Type.NUMBER, "number")
+                .schemaEntry(1, DashboardStore.Type.BOOLEAN, "boolean")
+                .schemaEntry(2, DashboardStore.Type.STRING, "string")
+                .schemaEntry(3, DashboardStore.Type.STRING, "null");
+        assertEquals(4, encoder.getCount());
+        decode(encoder.toByteBuffer());
+
+        assertEquals("number", received.schema.get(0));
+        assertEquals(DashboardStore.Type.BOOLEAN, received.schemaTypes.get(1));
+        assertEquals("null", received.schema.get(3));
+
+        encoder.beginValues().number(0, -3128.25).bool(1, true).string(2, "hello").string(3, null);
+        decode(encoder.toByteBuffer());
+
+        assertEquals(-3128.25, (Double) received.values.get("number"), 0);
+        assertEquals(true, received.values.get("boolean"));
+        assertEquals("hello", received.values.get("string"));
+        assertNull(received.values.get("null"));
+        assertTrue(received.values.containsKey("null"));
+    }
+
+    @Test
+    public void keepsEveryDoubleExactly() {
+        double[] numbers = { 0.0, -0.0, Double.MIN_VALUE, Double.MAX_VALUE, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NaN, 1.0 / 3 };
+
+        encoder.beginSchema().schemaEntry(0, DashboardStore.Type.NUMBER, "number");
+        decode(encoder.toByteBuffer());
+
+        for (double number : numbers) {
+            encoder.beginValues().number(0, number);
+            decode(encoder.toByteBuffer());
+
+            assertEquals(Double.doubleToRawLongBits(number),
+                    Double.doubleToRawLongBits((Double) received.values.get("number")));
+        }
+    }
+
+    @Test
+    public void valuesCanChangeType() {
+        encoder.beginSchema().schemaEntry(0, DashboardStore.Type.NUMBER, "key");
+        decode(encoder.toByteBuffer());
+
+        encoder.beginValues().bool(0, false);
+        decode(encoder.toByteBuffer());
+        assertEquals(false, received.values.get("key"));
+
+        encoder.beginValues().string(0, "now a string");
+        decode(encoder.toByteBuffer());
+        assertEquals("now a string", received.values.get("key"));
+    }
+
+    @Test
+    public void sendsOnlyChangesSinceAVersion() {
+        DashboardStore store = new DashboardStore(16);
+        int speed = store.getSlot("speed", DashboardStore.Type.NUMBER);
+        int enabled = store.getSlot("enabled", DashboardStore.Type.BOOLEAN);
+        int mode = store.getSlot("mode", DashboardStore.Type.STRING);
+
+        store.setNumber(speed, 1.5);
+        store.setBoolean(enabled, true);
+        store.setString(mode, "auto");
+
+        sendSchema(store);
+        sendValuesSince(store, -1);
+        assertEquals(3, received.valueCount);
+        assertEquals(1.5, (Double) received.values.get("speed"), 0);
+        assertEquals(true, received.values.get("enabled"));
+        assertEquals("auto", received.values.get("mode"));
+
+        long version = store.getVersion();
+
+        // setting a key to the value it already has isn't a change
+        store.setNumber(speed, 1.5);
+        store.setString(mode, "teleop");
+        received.valueCount = 0;
+        sendValuesSince(store, version);
+
+        assertEquals(1, encoder.getCount());
+        assertEquals(1, received.valueCount);
+        assertEquals("teleop", received.values.get("mode"));
+
+        // nothing at all changed
+        version = store.getVersion();
+        received.valueCount = 0;
+        sendValuesSince(store, version);
+
+        assertEquals(0, encoder.getCount());
+        assertEquals(0, received.valueCount);
+    }
+
+    @Test
+    public void decodesEmptyMessages() {
+        encoder.beginSchema();
+        decode(encoder.toByteBuffer());
+        encoder.beginValues();
+        ByteBuffer message = encoder.toByteBuffer();
+
+        assertEquals(3, message.remaining());
+        decode(message);
+
+        assertTrue(received.schema.isEmpty());
+        assertEquals(0, received.valueCount);
+    }
+
+    @Test
+    public void roundTripsLargeSnapshots() {
+        int keys = 5000;
+
+        encoder.beginSchema();
+        for (int id = 0; id < keys; id++) {
+            encoder.schemaEntry(id, DashboardStore.Type.values()[id % 3], "subsystem/" + id);
+        }
+        decode(encoder.toByteBuffer());
+
+        encoder.beginValues();
+        for (int id = 0; id < keys; id++) {
+            switch (id % 3) {
+            case 0:
+                encoder.number(id, id * 0.5);
+                break;
+            case 1:
+                encoder.bool(id, id % 2 == 0);
+                break;
+            default:
+                encoder.string(id, "value " + id);
+                break;
+            }
+        }
+        assertEquals(keys, encoder.getCount());
+        decode(encoder.toByteBuffer());
+
+        assertEquals(keys, received.valueCount);
+        for (int id = 0; id < keys; id++) {
+            assertEquals("subsystem/" + id, decoder.getName(id));
+
+            Object value = received.values.get("subsystem/" + id);
+            switch (id % 3) {
+            case 0:
+                assertEquals(id * 0.5, (Double) value, 0);
+                break;
+            case 1:
+                assertEquals(id % 2 == 0, value);
+                break;
+            default:
+                assertEquals("value " + id, value);
+                break;
+            }
+        }
+    }
+
+    @Test
+    public void roundTripsNonAsciiStrings() {
+        String[] strings = { "", "\u00E9", "h\u00E9llo w\u00F6rld", "\u65E5\u672C\u8A9E", "\u03A9\u03BC\u03AD\u03B3\u03B1", "robot \uD83E\uDD16 emoji \uD83D\uDE80", "\u0000nul", "\u07FF\u0800\uFFFF",
+                new String(Character.toChars(0x10FFFF)) };
+
+        for (String string : strings) {
+            assertEquals(string, roundTrip(string));
+        }
+    }
+
+    @Test
+    public void encodesUnpairedSurrogatesLikeGetBytes() {
+        String[] strings = { "\uD83E", "a\uDD16b", "\uD83Ex", "x\uDD16\uD83E" };
+
+        for (String string : strings) {
+            String expected = new String(string.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+            assertEquals(expected, roundTrip(string));
+        }
+    }
+
+    @Test
+    public void cutsLongStringsAtACharacterBoundary() {
+        int max = BinaryEncoder.MAX_STRING_LENGTH;
+
+        // exactly fits
+        String ascii = repeat("a", max);
+        assertEquals(ascii, roundTrip(ascii));
+
+        // one byte too many
+        assertEquals(ascii, roundTrip(ascii + "b"));
+
+        // a two byte character which would straddle the limit is left out whole
+        String nearlyFull = repeat("a", max - 1);
+        assertEquals(nearlyFull, roundTrip(nearlyFull + "\u00E9"));
+
+        // three and four byte characters whose sizes don't divide the limit
+        String threeByte = repeat("\u8A9E", max / 3 + 1);
+        assertEquals(threeByte.substring(0, max / 3), roundTrip(threeByte));
+
+        String fourByte = repeat("\uD83E\uDD16", max / 4 + 1);
+        assertEquals(fourByte.substring(0, 2 * (max / 4)), roundTrip(fourByte));
+
+        // and whatever comes after a cut string is still read correctly
+        encoder.beginSchema().schemaEntry(0, DashboardStore.Type.STRING, "long")
+                .schemaEntry(1, DashboardStore.Type.NUMBER, "after");
+        decode(encoder.toByteBuffer());
+
+        encoder.beginValues().string(0, repeat("\u00E9", max)).number(1, 254);
+        decode(encoder.toByteBuffer());
+
+        assertEquals(repeat("\u00E9", max / 2), received.values.get("long"));
+        assertEquals(254.0, (Double) received.values.get("after"), 0);
+    }
+
+    /**
+     * A snapshot of the keys the robot code puts, with values like the ones it
+     * sends during a match.
+     */
+    private static DashboardStore representativeSnapshot() {
+        String[] numbers = { "time", "voltage", "ball_count", "tyav", "avg_w", "avg_wb", "prev_wb", "avg_ffpmL",
+                "avg_ffpmR", "left_scalar", "right_scalar", "left_max_speed", "right_max_speed", "l_f", "r_f",
+                "l_v_p", "l_v_i", "l_v_d", "r_v_p", "r_v_i", "r_v_d", "l_mp_p", "l_mp_i", "l_mp_d", "r_mp_p",
+                "r_mp_i", "r_mp_d", "vision_p", "vision_i", "vision_d", "wheel_circumference" };
+        String[] strings = { "align_status", "shooting_state", "ErrorCatcherCAN", "ErrorCatcherEncoder",
+                "ErrorCatcherLimelight", "ErrorCatcherMovement", "ErrorCatcherBridge" };
+        String[] booleans = { "intake_down", "hopper_full", "shooter_ready", "limelight_connected" };
+
+        Random random = new Random(3128);
+        DashboardStore store = new DashboardStore(64);
+
+        for (String key : numbers) {
+            store.setNumber(store.getSlot(key, DashboardStore.Type.NUMBER), random.nextDouble() * 100);
+        }
+        for (String key : strings) {
+            String status = key.startsWith("ErrorCatcher") ? "OK" : "feedback";
+            store.setString(store.getSlot(key, DashboardStore.Type.STRING), status);
+        }
+        for (String key : booleans) {
+            store.setBoolean(store.getSlot(key, DashboardStore.Type.BOOLEAN), random.nextBoolean());
+        }
+
+        return store;
+    }
+
+    /**
+     * Write every value in a store as JSON, the way the publisher does for
+     * clients which don't use the binary protocol.
+     */
+    private static void writeJson(JsonWriter json, DashboardStore store, DashboardStore.Value value) {
+        json.reset().beginObject();
+        for (int slot = 0; slot < store.size(); slot++) {
+            store.read(slot, value);
+            json.key(store.getKey(slot));
+
+            switch (value.type) {
+            case NUMBER:
+                json.value(value.number);
+                break;
+            case BOOLEAN:
+                json.value(value.bool);
+                break;
+            default:
+                json.value(value.string);
+                break;
+            }
+        }
+        json.endObject();
+    }
+
+    private static void writeBinary(BinaryEncoder binary, DashboardStore store, DashboardStore.Value value) {
+        binary.beginValues();
+        for (int slot = 0; slot < store.size(); slot++) {
+            store.read(slot, value);
+
+            switch (value.type) {
+            case NUMBER:
+                binary.number(slot, value.number);
+                break;
+            case BOOLEAN:
+                binary.bool(slot, value.bool);
+                break;
+            default:
+                binary.string(slot, value.string);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Not a benchmark, but prints how long encoding the same snapshot takes as
+     * JSON and as binary, and how big each is.
+     */
+    @Test
+    public void encodingTimeNextToJson() {
+        DashboardStore store = representativeSnapshot();
+        DashboardStore.Value value = new DashboardStore.Value();
+        JsonWriter json = new JsonWriter(256);
+        BinaryEncoder binary = new BinaryEncoder(256);
+        int snapshots = 200_000;
+
+        for (int i = 0; i < snapshots; i++) {
+            writeJson(json, store, value);
+            writeBinary(binary, store, value);
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < snapshots; i++) {
+            writeJson(json, store, value);
+        }
+        long jsonTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < snapshots; i++) {
+            writeBinary(binary, store, value);
+        }
+        long binaryTime = System.nanoTime() - startTime;
+
+        int jsonBytes = json.toByteBuffer().remaining();
+        ByteBuffer message = binary.toByteBuffer();
+        int binaryBytes = message.remaining();
+
+        System.out.printf("%d keys: JSON %.0f ns, %d bytes; binary %.0f ns, %d bytes%n", store.size(),
+                (double) jsonTime / snapshots, jsonBytes, (double) binaryTime / snapshots, binaryBytes);
+
+        // both have to hold the whole snapshot
+        sendSchema(store);
+        decode(message);
+        assertEquals(store.size(), received.valueCount);
+        assertTrue(binaryBytes < jsonBytes);
+    }
+}
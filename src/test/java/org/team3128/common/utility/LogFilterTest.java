@@ -0,0 +1,160 @@
+package org.team3128.common.utility;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LogFilterTest {
+	private static final int BALL_COUNT = Log.template("ball count: {}");
+	private static final int POWER = Log.template("L: {}; R: {}");
+
+	private File logFile;
+
+	@Before
+	public void openLog() throws IOException {
+		logFile = File.createTempFile("LogFilterTest", ".log");
+		Log.setConsoleOutput(false);
+		Log.setLogFile(logFile.getPath());
+	}
+
+	@After
+	public void closeLog() {
+		Log.setLogFile(null);
+		Log.setConsoleOutput(true);
+		logFile.delete();
+	}
+
+	/**
+	 * Each category keeps its filter for good, so every test gets its own.
+	 */
+	private static int dedupCategory(String name) {
+		int category = Log.category(name);
+		Log.setDeduplication(name, 60);
+		return category;
+	}
+
+	/**
+	 * The messages written in a category since the log was opened, without
+	 * timestamps or levels.
+	 */
+	private List<String> written(String category) throws IOException {
+		Log.flush(1000);
+
+		String prefix = "[" + category + "] ";
+		List<String> messages = new ArrayList<>();
+		for (String line : Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8)) {
+			int start = line.indexOf(prefix);
+			if (start >= 0) {
+				messages.add(line.substring(start + prefix.length()));
+			}
+		}
+		return messages;
+	}
+
+	/**
+	 * Two lines logged every loop, the way Hopper does, are each dropped while
+	 * they don't change.
+	 */
+	@Test
+	public void deduplicatesInterleavedLines() throws IOException {
+		int category = dedupCategory("Interleaved");
+
+		for (int loop = 0; loop < 10; loop++) {
+			Log.info(category, BALL_COUNT, 3);
+			Log.info("Interleaved", "action state: IDLE");
+		}
+
+		Log.info(category, BALL_COUNT, 4);
+		Log.info("Interleaved", "action state: IDLE");
+		Log.info(category, BALL_COUNT, 3);
+		Log.info("Interleaved", "action state: SHOOTING");
+
+		assertEquals(Arrays.asList(
+				"ball count: 3",
+				"action state: IDLE",
+				"(repeated 9 more times) ball count: 3",
+				"(repeated 9 more times) action state: IDLE",
+				"ball count: 4",
+				"(repeated 1 more times) action state: IDLE",
+				"ball count: 3",
+				"action state: SHOOTING"), written("Interleaved"));
+	}
+
+	/**
+	 * Pending counts come out in the order their repeats started, ahead of the
+	 * message which flushed them.
+	 */
+	@Test
+	public void reportsRepeatsInOrder() throws IOException {
+		int category = dedupCategory("InOrder");
+
+		Log.info(category, POWER, 0.5, 0.5);
+		Log.info(category, BALL_COUNT, 1);
+		Log.info(category, BALL_COUNT, 1);
+		Log.info(category, POWER, 0.5, 0.5);
+		Log.info(category, POWER, 0.5, 0.5);
+		Log.info(category, BALL_COUNT, 2);
+
+		assertEquals(Arrays.asList(
+				"L: 0.5; R: 0.5",
+				"ball count: 1",
+				"(repeated 1 more times) ball count: 1",
+				"(repeated 2 more times) L: 0.5; R: 0.5",
+				"ball count: 2"), written("InOrder"));
+	}
+
+	/**
+	 * A value going back to what it was before is a change, not a repeat.
+	 */
+	@Test
+	public void logsValuesWhichChangeBack() throws IOException {
+		int category = dedupCategory("ChangeBack");
+
+		Log.info(category, BALL_COUNT, 3);
+		Log.info(category, BALL_COUNT, 4);
+		Log.info(category, BALL_COUNT, 3);
+		Log.info("ChangeBack", "state: A");
+		Log.info("ChangeBack", "state: B");
+		Log.info("ChangeBack", "state: A");
+
+		assertEquals(Arrays.asList(
+				"ball count: 3",
+				"ball count: 4",
+				"ball count: 3",
+				"state: A",
+				"state: B",
+				"state: A"), written("ChangeBack"));
+	}
+
+	/**
+	 * With more lines than the filter remembers, the oldest is forgotten and
+	 * its count is still reported.
+	 */
+	@Test
+	public void reportsForgottenStreams() throws IOException {
+		int category = dedupCategory("Forgotten");
+
+		Log.info(category, BALL_COUNT, 1);
+		Log.info(category, BALL_COUNT, 1);
+		for (int stream = 0; stream < LogFilter.MAX_STREAMS; stream++) {
+			Log.info(category, Log.template("stream " + stream + ": {}"), stream);
+		}
+		Log.info(category, BALL_COUNT, 1);
+
+		List<String> written = written("Forgotten");
+		assertEquals("ball count: 1", written.get(0));
+		assertEquals("(repeated 1 more times) ball count: 1", written.get(1));
+		assertEquals("ball count: 1", written.get(written.size() - 1));
+		assertEquals(LogFilter.MAX_STREAMS + 3, written.size());
+	}
+}